@@ -34,4 +34,19 @@ public class NumberUtils {
             return defaultValue;
         }
     }
+
+    public static double toDouble(final String str) {
+        return toDouble(str, 0.0d);
+    }
+
+    public static double toDouble(final String str, final double defaultValue) {
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(str);
+        } catch (final NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
 }
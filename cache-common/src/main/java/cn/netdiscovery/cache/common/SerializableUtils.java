@@ -1,6 +1,7 @@
 package cn.netdiscovery.cache.common;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
@@ -29,6 +30,16 @@ public class SerializableUtils {
         return gson.fromJson(json, typeToken.getType());
     }
 
+    public static <T> T fromJson(JsonElement json, Type type) {
+
+        return gson.fromJson(json,type);
+    }
+
+    public static JsonElement toJsonTree(String json) {
+
+        return gson.fromJson(json, JsonElement.class);
+    }
+
     public static String toJson(Object data){
 
         if (data instanceof String) {
@@ -0,0 +1,74 @@
+package cn.netdiscovery.cache.utils;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import redis.clients.util.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较原来的Hash方式(toJson、getBytes、Redis的MurmurHash、每次创建long[])和BitmapHashUtils的直接编码
+ * 运行 gradle :cache-core:jmh，比较结果中的gc.alloc.rate.norm(每次调用分配的字节数)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BitmapHashBenchmark {
+
+    @Param({"string", "long", "bytes"})
+    private String type;
+
+    private Object value;
+    private final long[] offsets = new long[8];
+
+    @Setup
+    public void setup() {
+
+        switch (type) {
+            case "long":
+                value = 1234567890123L;
+                break;
+            case "bytes":
+                value = "user:1234567890".getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                value = "user:1234567890";
+                break;
+        }
+    }
+
+    @Benchmark
+    public long[] legacy() {
+
+        long[] result = new long[8];
+        byte[] bytes = SerializableUtils.toJson(value).getBytes(StandardCharsets.UTF_8);
+        int hash1 = MurmurHash.hash(bytes, 0);
+        int hash2 = MurmurHash.hash(bytes, hash1);
+        for (int i = 0; i < 8; ++i) {
+            result[i] = Math.abs((hash1 + i * hash2) % (1L << 32));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long[] getBitOffsets() {
+
+        BitmapHashUtils.getBitOffsets(value, offsets);
+        return offsets;
+    }
+
+    @Benchmark
+    public long[] murmur3() {
+
+        BitmapHashUtils.murmur3(value, 1L << 27, 16, offsets);
+        return offsets;
+    }
+}
@@ -1,511 +1,440 @@
 package cn.netdiscovery.cache;
 
-import cn.netdiscovery.cache.common.BooleanUtils;
-import cn.netdiscovery.cache.common.NumberUtils;
-import cn.netdiscovery.cache.common.SerializableUtils;
-import cn.netdiscovery.cache.config.Configuration;
-import cn.netdiscovery.cache.config.Constant;
-import cn.netdiscovery.cache.redis.IRedisService;
-import cn.netdiscovery.cache.redis.cluster.CacheRedisClusterService;
-import cn.netdiscovery.cache.redis.sentinel.CacheRedisSentinelService;
-import cn.netdiscovery.cache.redis.shard.CacheRedisShardService;
-import cn.netdiscovery.cache.redis.standalone.CacheRedisStandaloneService;
-import com.google.gson.reflect.TypeToken;
-import com.safframework.rxcache.RxCache;
-import com.safframework.rxcache.domain.Record;
-import com.safframework.rxcache.memory.CaffeineImpl;
-import com.safframework.rxcache.memory.GuavaCacheImpl;
-import com.safframework.rxcache.memory.Memory;
-import com.safframework.rxcache.memory.impl.FIFOMemoryImpl;
-import com.safframework.rxcache.memory.impl.LFUMemoryImpl;
-import com.safframework.rxcache.memory.impl.LRUMemoryImpl;
-import com.safframework.tony.common.utils.Preconditions;
-import lombok.extern.slf4j.Slf4j;
+import cn.netdiscovery.cache.bloom.IBloomFilter;
+import cn.netdiscovery.cache.stats.CacheStatsSnapshot;
 import redis.clients.jedis.BitOP;
 
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by tony on 2019-01-15.
  */
-@Slf4j
 public class Cache {
 
-    private static boolean RXCACHE_ENABLE;
+    private static final CacheRegion defaultRegion = CacheRegion.getDefaultRegion();
 
-    private static RxCache rxCache;
-    private static IRedisService redis;
-
-    static {
-
-        try {
-            RXCACHE_ENABLE = BooleanUtils.toBoolean(Configuration.getConfig(Constant.CACHE_RXCACHE_ENABLE,String.class));
-
-            if (RXCACHE_ENABLE) {
-
-                String memType = Configuration.getConfig(Constant.CACHE_RXCACHE_MEMORY_TYPE,String.class);
-                long maxSize = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_RXCACHE_MEMORY_MAXSIZE,String.class),100);
-                Memory memory = null;
-                switch (memType) {
-                    case Constant.FIFO:
-                        memory = new FIFOMemoryImpl(maxSize);
-                        break;
-
-                    case Constant.LRU:
-                        memory = new LRUMemoryImpl(maxSize);
-                        break;
-
-                    case Constant.LFU:
-                        memory = new LFUMemoryImpl(maxSize);
-                        break;
+    private Cache() {
+        throw new UnsupportedOperationException();
+    }
 
-                    case Constant.CAFFEINE:
-                        memory = new CaffeineImpl(maxSize);
-                        break;
+    /**
+     * 获取配置中的缓存区域，不存在时返回null
+     */
+    public static CacheRegion region(String name) {
+        return CacheRegion.getRegion(name);
+    }
 
-                    case Constant.GUAVA:
-                        memory = new GuavaCacheImpl(maxSize);
-                        break;
+    /**
+     * 所有区域的统计，key为区域的名称
+     */
+    public static Map<String, CacheStatsSnapshot> getAllStats() {
+        Map<String, CacheStatsSnapshot> stats = new TreeMap<>();
+        for (String name:CacheRegion.getRegionNames()) {
+            stats.put(name, CacheRegion.getRegion(name).getStats());
+        }
+        return stats;
+    }
 
-                    default:
-                        break;
-                }
+    /**
+     * 清零所有区域的统计
+     */
+    public static void resetAllStats() {
+        for (String name:CacheRegion.getRegionNames()) {
+            CacheRegion.getRegion(name).resetStats();
+        }
+    }
 
-                RxCache.config(new RxCache.Builder().memory(memory));
-                rxCache = RxCache.getRxCache();
+    /**
+     * 所有区域的一级缓存是否都已经预热完成
+     */
+    public static boolean isWarm() {
+        for (String name:CacheRegion.getRegionNames()) {
+            if (!CacheRegion.getRegion(name).isWarm()) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            String redisCacheType = Configuration.getConfig(Constant.CACHE_REDIS_TYPE,String.class);
-            switch (redisCacheType) {
-
-                case Constant.STANDALONE:
-                    redis = new CacheRedisStandaloneService();
-                    break;
-
-                case Constant.SHARD:
-                    redis = new CacheRedisShardService();
-                    break;
-
-                case Constant.CLUSTER:
-                    redis = new CacheRedisClusterService();
-                    break;
-
-                case Constant.SENTINEL:
-                    redis = new CacheRedisSentinelService();
-                    break;
-
-                default:
-                    break;
+    /**
+     * 等待所有区域预热完成，超时返回false
+     */
+    public static boolean awaitWarm(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (String name:CacheRegion.getRegionNames()) {
+            if (!CacheRegion.getRegion(name).awaitWarm(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
             }
-        } catch (ClassCastException e) {
-            log.error(e.getMessage());
         }
+        return true;
     }
 
-    private Cache() {
-        throw new UnsupportedOperationException();
+    public static <T> String set(String key, T value) {
+        return defaultRegion.set(key, value);
     }
 
-    public static <T> String set(String key, T value) {
+    public static <T> String set(String key, T value, int seconds) {
+        return defaultRegion.set(key, value, seconds);
+    }
 
-        if (RXCACHE_ENABLE) {
-            rxCache.save(key, SerializableUtils.toJson(value));
-        }
-        return redis.set(key, value);
+    /**
+     * 批量写入，每个key的过期时间分别加上随机抖动，一次批量写入Redis之后更新一级缓存并通知其他节点
+     * 开启异步写回时逐个放入写回队列
+     */
+    public static <T> String mset(Map<String, T> values, int seconds) {
+        return defaultRegion.mset(values, seconds);
     }
 
-    public static <T> String set(String key, T value, int seconds) {
+    /**
+     * 注册提前刷新时使用的数据源，key以prefix开头时使用loader刷新，并以seconds作为过期时间写入Redis
+     * 没有匹配的loader时从Redis重新读取，prefix和传给loader的key都不包含区域的前缀
+     */
+    public static <T> void registerLoader(String prefix, int seconds, CacheLoader<T> loader) {
+        defaultRegion.registerLoader(prefix, seconds, loader);
+    }
 
-        if (RXCACHE_ENABLE) {
-            rxCache.save(key, SerializableUtils.toJson(value),seconds*1000);
-        }
-        return redis.set(key, value, seconds);
+    public static void unregisterLoader(String prefix) {
+        defaultRegion.unregisterLoader(prefix);
     }
 
     public static <T> Long setnx(String key, T value) {
-        return redis.setnx(key, value);
+        return defaultRegion.setnx(key, value);
     }
 
     public static <T> Long setnx(String key, T value, int seconds) {
-        return redis.setnx(key, value, seconds);
+        return defaultRegion.setnx(key, value, seconds);
     }
 
     public static <T> T get(String key, Type type) {
+        return defaultRegion.get(key, type);
+    }
 
-        if (RXCACHE_ENABLE) {
-            Record<T> record = rxCache.get(key,type);
-
-            if (record!=null && !record.isExpired()) {
-
-                return record.getData();
-            }
-        }
-
-        String value = redis.get(key);
-        if (RXCACHE_ENABLE && Preconditions.isNotBlank(value)) {
-            rxCache.save(key, value);
-        }
-        return SerializableUtils.fromJson(value, type);
+    /**
+     * 批量读取，一级缓存中没有的key通过一次批量读取从Redis获取并回设一级缓存
+     * 结果和keys一一对应，不存在的key对应null
+     */
+    public static <T> List<T> mget(List<String> keys, Type type) {
+        return defaultRegion.mget(keys, type);
     }
 
     public static Long incr(String key, Integer value, int seconds) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.incr(key, value, seconds);
+        return defaultRegion.incr(key, value, seconds);
     }
 
     public static Long incr(String key, Integer value) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.incr(key, value);
+        return defaultRegion.incr(key, value);
     }
 
     public static Long decr(String key, Integer value) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.decr(key, value);
+        return defaultRegion.decr(key, value);
     }
 
     public static Long decr(String key, Integer value, int seconds) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.decr(key, value, seconds);
+        return defaultRegion.decr(key, value, seconds);
     }
 
     public static Long expire(String key, int seconds) {
-        return redis.expire(key, seconds);
+        return defaultRegion.expire(key, seconds);
     }
 
     public static Long persist(String key) {
-        return redis.persist(key);
+        return defaultRegion.persist(key);
     }
 
     public static boolean exist(String key) {
-        //redis数据类型太多，判断是否存在之后无法回设内存
-        return redis.exist(key);
+        return defaultRegion.exist(key);
     }
 
     public static Long del(String key) {
-        if (RXCACHE_ENABLE) {
-            rxCache.remove(key);
-        }
-        return redis.del(key);
+        return defaultRegion.del(key);
     }
 
     public static void del(String... keys) {
-        if (RXCACHE_ENABLE) {
-            rxCache.remove(keys);
-        }
-        redis.del(keys);
+        defaultRegion.del(keys);
     }
 
     public static <T> Long lpush(String key, T value) {
-        return redis.lpush(key, value);
+        return defaultRegion.lpush(key, value);
     }
 
     public static <T> Long lpush(String key, T value, int seconds) {
-        return redis.lpush(key, value, seconds);
+        return defaultRegion.lpush(key, value, seconds);
     }
 
     public static <T> Long lpush(String key, List<T> values) {
-        return redis.lpush(key, values);
+        return defaultRegion.lpush(key, values);
     }
 
     public static <T> Long lpush(String key, List<T> values, int seconds) {
-        return redis.lpush(key, values, seconds);
+        return defaultRegion.lpush(key, values, seconds);
     }
 
     public static <T> Long rpush(String key, T value) {
-        return redis.rpush(key, value);
+        return defaultRegion.rpush(key, value);
     }
 
     public static <T> Long rpush(String key, T value, int seconds) {
-        return redis.rpush(key, value, seconds);
+        return defaultRegion.rpush(key, value, seconds);
     }
 
     public static <T> Long rpush(String key, List<T> values) {
-        return redis.rpush(key, values);
+        return defaultRegion.rpush(key, values);
     }
 
     public static <T> Long rpush(String key, List<T> values, int seconds) {
-        return redis.rpush(key, values, seconds);
+        return defaultRegion.rpush(key, values, seconds);
     }
 
     public static List<String> lrange(String key) {
-        return redis.lrange(key);
+        return defaultRegion.lrange(key);
     }
 
     public static <T> List<T> lrange(String key, Class<T> c) {
-        return redis.lrange(key, c);
+        return defaultRegion.lrange(key, c);
     }
 
     public static List<String> lrange(String key, long end) {
-        return redis.lrange(key, end);
+        return defaultRegion.lrange(key, end);
     }
 
     public static <T> List<T> lrange(String key, long end, Class<T> c) {
-        return redis.lrange(key, end, c);
+        return defaultRegion.lrange(key, end, c);
     }
 
     public static List<String> lrange(String key, long start, long end) {
-        return redis.lrange(key, start, end);
+        return defaultRegion.lrange(key, start, end);
     }
 
     public static <T> List<T> lrange(String key, long start, long end, Class<T> c) {
-        return redis.lrange(key, start, end, c);
+        return defaultRegion.lrange(key, start, end, c);
     }
 
     public static List<String> lrangePage(String key, int pageNo, int pageSize) {
-        return redis.lrangePage(key, pageNo, pageSize);
+        return defaultRegion.lrangePage(key, pageNo, pageSize);
     }
 
     public static <T> List<T> lrangePage(String key, int pageNo, int pageSize, Class<T> c) {
-        return redis.lrangePage(key, pageNo, pageSize, c);
+        return defaultRegion.lrangePage(key, pageNo, pageSize, c);
     }
 
     public static String lindex(String key, int index) {
-        return redis.lindex(key, index);
+        return defaultRegion.lindex(key, index);
     }
 
     public static <T> T lindex(String key, int index, Class<T> c) {
-        return redis.lindex(key, index, c);
+        return defaultRegion.lindex(key, index, c);
     }
 
     public static Long llen(String key) {
-        return redis.llen(key);
+        return defaultRegion.llen(key);
     }
 
     public static void lclear(String key) {
-        redis.lclear(key);
+        defaultRegion.lclear(key);
     }
 
     public static Long lrem(String key, String value) {
-        return redis.lrem(key, value);
+        return defaultRegion.lrem(key, value);
     }
 
     public static <T> Long lrem(String key, T value) {
-        return redis.lrem(key, value);
+        return defaultRegion.lrem(key, value);
     }
 
     public static Long lrem(String key, long count, String value) {
-        return redis.lrem(key, count, value);
+        return defaultRegion.lrem(key, count, value);
     }
 
     public static <T> Long lrem(String key, long count, T value) {
-        return redis.lrem(key, count, value);
+        return defaultRegion.lrem(key, count, value);
     }
 
     public static String ltrim(String key, long start, long end) {
-        return redis.ltrim(key, start, end);
+        return defaultRegion.ltrim(key, start, end);
     }
 
     public static String lpop(String key) {
-        return redis.lpop(key);
+        return defaultRegion.lpop(key);
     }
 
     public static String rpop(String key) {
-        return redis.rpop(key);
+        return defaultRegion.rpop(key);
     }
 
     public static Long sadd(String key, String... values) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.sadd(key, values);
+        return defaultRegion.sadd(key, values);
     }
 
     public static Long sadd(String key, int seconds, String... values) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.sadd(key, seconds, values);
+        return defaultRegion.sadd(key, seconds, values);
     }
 
     public static boolean sismember(String key, String value) {
-        return redis.sismember(key, value);
+        return defaultRegion.sismember(key, value);
     }
 
     public static Set<String> smembers(String key) {
-        if (RXCACHE_ENABLE) {
-            Record<String> record = rxCache.get(key,String.class);
-            String value = record!=null?record.getData():null;
-            if (Preconditions.isNotBlank(value)) {
-                return SerializableUtils.fromJson(value, new TypeToken<Set<String>>() {});
-            }
-        }
-
-        Set<String> set = redis.smembers(key);
-        if (RXCACHE_ENABLE && Preconditions.isNotBlank(set)) {
-            rxCache.save(key, SerializableUtils.toJson(set));
-        }
-        return set;
+        return defaultRegion.smembers(key);
     }
 
     public static <T> Long hset(String key, String field, T value) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.hset(key, field, value);
+        return defaultRegion.hset(key, field, value);
     }
 
     public static String hmset(String key, String... values) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.hmset(key, values);
+        return defaultRegion.hmset(key, values);
     }
 
     public static <T> Long hset(String key, String field, T value, int seconds) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.hset(key, field, value, seconds);
+        return defaultRegion.hset(key, field, value, seconds);
     }
 
     public static String hmset(String key, int seconds, String... values) {
-        if (RXCACHE_ENABLE) {//清除内存中的数据，防止脏读
-            rxCache.remove(key);
-        }
-        return redis.hmset(key, seconds, values);
+        return defaultRegion.hmset(key, seconds, values);
     }
 
     public static String hget(String key, String field) {
-        if (RXCACHE_ENABLE) {
-            Record<String> record = rxCache.get(key,String.class);
-            String value = record!=null?record.getData():null;
-            if (Preconditions.isNotBlank(value)) {
-                Map<String, String> map = SerializableUtils.fromJson(value, new TypeToken<Map<String, String>>() {});
-                if (map != null && map.containsKey(field)) {
-                    return map.get(field);
-                }
-            }
-        }
+        return defaultRegion.hget(key, field);
+    }
 
-        String value = redis.hget(key, field);
-        if (RXCACHE_ENABLE && Preconditions.isNotBlank(value)) {
-            rxCache.save(key, SerializableUtils.toJson(redis.hgetAll(key)));
-        }
-        return value;
+    public static List<String> hmget(String key, String... fields) {
+        return defaultRegion.hmget(key, fields);
     }
 
     public static Long hincr(String key, String field, Integer value) {
-        return redis.hincr(key, field, value);
+        return defaultRegion.hincr(key, field, value);
     }
 
     public static Long hdecr(String key, String field, Integer value) {
-        return redis.hdecr(key, field, value);
+        return defaultRegion.hdecr(key, field, value);
     }
 
     public static Map<String, String> hgetAll(String key) {
-
-        if (RXCACHE_ENABLE) {
-            Record<String> record = rxCache.get(key,String.class);
-            String value = record!=null?record.getData():null;
-            Map<String, String> map = SerializableUtils.fromJson(value, new TypeToken<Map<String, String>>() {});
-            if (Preconditions.isNotBlank(map)) {
-                return map;
-            }
-        }
-
-        Map<String, String> map = redis.hgetAll(key);
-        if (RXCACHE_ENABLE && Preconditions.isNotBlank(map)) {
-            rxCache.save(key, SerializableUtils.toJson(map));
-        }
-        return map;
+        return defaultRegion.hgetAll(key);
     }
 
     public static Long pfadd(String key, String value) {
-        return redis.pfadd(key, value);
+        return defaultRegion.pfadd(key, value);
     }
 
     public static Long pfcount(String key) {
-        return redis.pfcount(key);
+        return defaultRegion.pfcount(key);
     }
 
     public static boolean setbit(String key, long offset, boolean value) {
-        return redis.setbit(key, offset, value);
+        return defaultRegion.setbit(key, offset, value);
     }
 
     public static boolean setbit(String key, long offset, String value) {
-        return redis.setbit(key, offset, value);
+        return defaultRegion.setbit(key, offset, value);
     }
 
     public static boolean getbit(String key, long offset) {
-        return redis.getbit(key, offset);
+        return defaultRegion.getbit(key, offset);
     }
 
     public static Long bitcount(String key) {
-        return redis.bitcount(key);
+        return defaultRegion.bitcount(key);
     }
 
     public static Long bitcount(String key, long start, long end) {
-        return redis.bitcount(key, start, end);
+        return defaultRegion.bitcount(key, start, end);
     }
 
     public static Long bitop(BitOP op, String destKey, String... srcKeys) {
-        return redis.bitop(op, destKey, srcKeys);
+        return defaultRegion.bitop(op, destKey, srcKeys);
     }
 
     public static List<Long> bitfield(String key, String... arguments) {
-        return redis.bitfield(key, arguments);
+        return defaultRegion.bitfield(key, arguments);
     }
 
     public static Long bitpos(String key, boolean value) {
-        return redis.bitpos(key, value);
+        return defaultRegion.bitpos(key, value);
     }
 
     public static Long bitpos(String key, boolean value, long start, long end) {
-        return redis.bitpos(key, value, start, end);
+        return defaultRegion.bitpos(key, value, start, end);
     }
 
     public static <T> boolean bloomadd(String key, T value) {
-
-        boolean bloomadd = redis.bloomadd(key, value);
-        if (RXCACHE_ENABLE && bloomadd) {
-            String valueStr = SerializableUtils.toJson(value);
-            rxCache.save(key + valueStr, true);
-        }
-        return bloomadd;
+        return defaultRegion.bloomadd(key, value);
     }
 
     public static <T> boolean bloomcontains(String key, T value) {
+        return defaultRegion.bloomcontains(key, value);
+    }
 
-        Boolean bloomcontains;
-        if (RXCACHE_ENABLE) {
-            String valueStr = SerializableUtils.toJson(value);
+    public static <T> List<Boolean> bloomaddAll(String key, Collection<T> values) {
+        return defaultRegion.bloomaddAll(key, values);
+    }
 
-            Record<Boolean> record = rxCache.get(key + valueStr,Boolean.class);
-            bloomcontains = record!=null?record.getData():false;
-            if (BooleanUtils.isTrue(bloomcontains)) {
-                return bloomcontains;
-            }
+    public static <T> List<Boolean> bloomcontainsAll(String key, Collection<T> values) {
+        return defaultRegion.bloomcontainsAll(key, values);
+    }
 
-            bloomcontains = redis.bloomcontains(key, value);
-            if (bloomcontains) {
-                rxCache.save(key + valueStr, bloomcontains);
-            }
-            return bloomcontains;
-        } else {
-            return redis.bloomcontains(key, value);
-        }
+    public static IBloomFilter bloomFilter(String name, long expectedInsertions, double fpp) {
+        return defaultRegion.bloomFilter(name, expectedInsertions, fpp);
+    }
+
+    public static IBloomFilter scalableBloomFilter(String name, long initialCapacity, double fpp) {
+        return defaultRegion.scalableBloomFilter(name, initialCapacity, fpp);
+    }
+
+    public static IBloomFilter getBloomFilter(String name) {
+        return defaultRegion.getBloomFilter(name);
     }
 
     public static Long pfadd(String key, String value, int seconds) {
-        return redis.pfadd(key, value, seconds);
+        return defaultRegion.pfadd(key, value, seconds);
     }
 
     public static boolean tryDistributedLock(String lockKey, String requestId, int expireTime) {
-        return redis.tryDistributedLock(lockKey, requestId, expireTime);
+        return defaultRegion.tryDistributedLock(lockKey, requestId, expireTime);
     }
 
     public static boolean releaseDistributedLock(String lockKey, String requestId) {
-        return redis.releaseDistributedLock(lockKey, requestId);
+        return defaultRegion.releaseDistributedLock(lockKey, requestId);
+    }
+
+    /**
+     * Redis中不存在的key在一级缓存中命中的次数，也就是节省的Redis读取次数
+     */
+    public static long getNegativeHits() {
+        return defaultRegion.getNegativeHits();
+    }
+
+    /**
+     * 访问频率最高的key以及估算的访问次数，没有开启准入过滤时返回空的map
+     */
+    public static Map<String, Integer> getHotKeys() {
+        return defaultRegion.getHotKeys();
+    }
+
+    /**
+     * 一级缓存当前的总权重，堆外内存时返回占用的字节数，没有设置cache.rxcache.memory.maxBytes时返回-1
+     */
+    public static long getWeightedSize() {
+        return defaultRegion.getWeightedSize();
+    }
+
+    /**
+     * 当前的统计：按操作统计的一级缓存、磁盘缓存和Redis的命中次数，回设和失效的次数，反序列化和读取Redis的耗时
+     */
+    public static CacheStatsSnapshot getStats() {
+        return defaultRegion.getStats();
+    }
+
+    /**
+     * 清零所有的统计，调整一级缓存的配置之后重新统计
+     */
+    public static void resetStats() {
+        defaultRegion.resetStats();
     }
 }
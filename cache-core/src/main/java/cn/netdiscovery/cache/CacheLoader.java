@@ -0,0 +1,13 @@
+package cn.netdiscovery.cache;
+
+/**
+ * 提前刷新一级缓存时使用的数据源，返回的值会重新写入Redis和一级缓存
+ */
+@FunctionalInterface
+public interface CacheLoader<T> {
+
+    /**
+     * 返回null表示不刷新
+     */
+    T load(String key);
+}
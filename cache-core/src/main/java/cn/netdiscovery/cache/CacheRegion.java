@@ -0,0 +1,1995 @@
+package cn.netdiscovery.cache;
+
+import cn.netdiscovery.cache.common.BooleanUtils;
+import cn.netdiscovery.cache.common.NumberUtils;
+import cn.netdiscovery.cache.common.SerializableUtils;
+import cn.netdiscovery.cache.bloom.BloomFilter;
+import cn.netdiscovery.cache.bloom.BloomMirror;
+import cn.netdiscovery.cache.bloom.IBloomFilter;
+import cn.netdiscovery.cache.bloom.ScalableBloomFilter;
+import cn.netdiscovery.cache.config.Configuration;
+import cn.netdiscovery.cache.config.Constant;
+import cn.netdiscovery.cache.disk.DiskCache;
+import cn.netdiscovery.cache.invalidation.InvalidationBus;
+import cn.netdiscovery.cache.invalidation.InvalidationListener;
+import cn.netdiscovery.cache.local.AdmissionFilter;
+import cn.netdiscovery.cache.local.CopyPolicy;
+import cn.netdiscovery.cache.local.HashValue;
+import cn.netdiscovery.cache.local.ListValue;
+import cn.netdiscovery.cache.local.LocalCache;
+import cn.netdiscovery.cache.local.LocalValue;
+import cn.netdiscovery.cache.local.NegativeCache;
+import cn.netdiscovery.cache.local.OffHeapMemory;
+import cn.netdiscovery.cache.local.RefreshAhead;
+import cn.netdiscovery.cache.local.SetValue;
+import cn.netdiscovery.cache.local.SingleFlight;
+import cn.netdiscovery.cache.local.Weigher;
+import cn.netdiscovery.cache.local.WeightedMemory;
+import cn.netdiscovery.cache.local.XFetch;
+import cn.netdiscovery.cache.redis.IRedisService;
+import cn.netdiscovery.cache.redis.TtlValue;
+import cn.netdiscovery.cache.redis.cluster.CacheRedisClusterService;
+import cn.netdiscovery.cache.redis.sentinel.CacheRedisSentinelService;
+import cn.netdiscovery.cache.redis.shard.CacheRedisShardService;
+import cn.netdiscovery.cache.redis.standalone.CacheRedisStandaloneService;
+import cn.netdiscovery.cache.stats.CacheStats;
+import cn.netdiscovery.cache.stats.CacheStatsSnapshot;
+import cn.netdiscovery.cache.utils.BitmapHashUtils;
+import cn.netdiscovery.cache.warmup.CacheWarmer;
+import cn.netdiscovery.cache.writebehind.WriteBehindQueue;
+import com.safframework.rxcache.RxCache;
+import com.safframework.rxcache.memory.CaffeineImpl;
+import com.safframework.rxcache.memory.GuavaCacheImpl;
+import com.safframework.rxcache.memory.Memory;
+import com.safframework.rxcache.memory.impl.FIFOMemoryImpl;
+import com.safframework.rxcache.memory.impl.LFUMemoryImpl;
+import com.safframework.rxcache.memory.impl.LRUMemoryImpl;
+import com.safframework.tony.common.utils.Preconditions;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.BitOP;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 缓存区域，每个区域有独立的一级缓存(内存类型、容量、默认过期时间、是否开启)和key前缀，所有区域共用同一个IRedisService
+ * 区域的配置为cache.regions.<name>.*，例如cache.regions.session.rxcache.memory.type，没有配置的项使用全局的配置
+ * 默认区域直接使用全局的配置，没有key前缀，Cache中的静态方法都委托给默认区域
+ */
+@Slf4j
+public class CacheRegion {
+
+    public static final String DEFAULT_REGION = "default";
+
+    private static IRedisService redis;
+    private static InvalidationBus invalidationBus;
+    private static SingleFlight singleFlight;
+    private static RefreshAhead refreshAhead;
+    private static DiskCache diskCache;
+    private static Map<String, BloomMirror> bloomMirrors;
+    private static boolean bloomMirrorStrict;
+    private static long bloomMirrorMaxBytes;
+    private static int bloomMirrorRefreshPages;
+    private static ScheduledExecutorService bloomMirrorScheduler;
+    private static long diskMaxTtlMillis;
+
+    private static final Map<String, CacheRegion> regions = new ConcurrentHashMap<>();
+    private static CacheRegion defaultRegion;
+
+    private final String name;
+    private final String keyPrefix;
+    private final int defaultSeconds;
+    private final int ttlJitterPercent;
+    private final CacheStats stats;
+    private final long bloomShardBits;
+
+    private boolean rxcacheEnable;
+    private int hashMaxFields;
+    private boolean listEnable;
+    private int listMaxSize;
+
+    private LocalCache localCache;
+    private WeightedMemory weightedMemory;
+    private OffHeapMemory offHeapMemory;
+    private AdmissionFilter admissionFilter;
+    private WriteBehindQueue writeBehind;
+    private XFetch xfetch;
+    private long xfetchDeltaMillis;
+    private CacheWarmer warmer;
+
+    private final Map<String, Loader> loaders = new ConcurrentHashMap<>();
+    private final Map<String, IBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    static {
+
+        try {
+            String redisCacheType = Configuration.getConfig(Constant.CACHE_REDIS_TYPE,String.class);
+            switch (redisCacheType) {
+
+                case Constant.STANDALONE:
+                    redis = new CacheRedisStandaloneService();
+                    break;
+
+                case Constant.SHARD:
+                    redis = new CacheRedisShardService();
+                    break;
+
+                case Constant.CLUSTER:
+                    redis = new CacheRedisClusterService();
+                    break;
+
+                case Constant.SENTINEL:
+                    redis = new CacheRedisSentinelService();
+                    break;
+
+                default:
+                    break;
+            }
+
+            //一级缓存中的数据快要过期时在后台用注册的loader提前刷新
+            if (BooleanUtils.toBoolean(Configuration.getConfig(Constant.CACHE_RXCACHE_REFRESH_ENABLE,String.class))) {
+                double ratio = NumberUtils.toDouble(Configuration.getConfig(Constant.CACHE_RXCACHE_REFRESH_RATIO,String.class),0.8);
+                int threads = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_RXCACHE_REFRESH_THREADS,String.class),2);
+                int queueSize = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_RXCACHE_REFRESH_QUEUE_SIZE,String.class),1000);
+                refreshAhead = new RefreshAhead(ratio, threads, queueSize);
+            }
+
+            //一级缓存和Redis之间的磁盘缓存，重启之后仍然有效，key带有区域的前缀，所有区域共用
+            if (BooleanUtils.toBoolean(Configuration.getConfig(Constant.CACHE_DISK_ENABLE,String.class))) {
+                //必须配置cache.disk.path，不使用java.io.tmpdir这种所有用户共享、路径可以预测的目录
+                String path = Configuration.getConfig(Constant.CACHE_DISK_PATH,String.class);
+                int segmentSize = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_DISK_SEGMENT_SIZE,String.class),64 * 1024 * 1024);
+                int maxSegments = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_DISK_MAX_SEGMENTS,String.class),16);
+                diskMaxTtlMillis = NumberUtils.toLong(Configuration.getConfig(Constant.CACHE_DISK_TTL_MAX_MILLIS,String.class),10 * 60 * 1000);
+                //目录被同一台机器上的其他进程占用或者属于其他用户时不使用磁盘缓存，多个进程需要配置不同的cache.disk.path
+                if (Preconditions.isBlank(path)) {
+                    log.error("disk cache disabled, {} is not configured", Constant.CACHE_DISK_PATH);
+                } else {
+                    try {
+                        diskCache = new DiskCache(path, segmentSize, maxSegments);
+                        Runtime.getRuntime().addShutdownHook(new Thread(diskCache::close, "cache-disk-close"));
+                    } catch (IOException e) {
+                        log.error("disk cache error, path: {}", path, e);
+                    }
+                }
+            }
+
+            //BloomFilter的Bitmap在本地保存一份镜像，定时从Redis增量刷新
+            //只适合按元素数量创建的BloomFilter(BloomFilter/ScalableBloomFilter)，bloomadd的Bitmap接近512M，超过max.bytes时不做镜像
+            if (redis != null && BooleanUtils.toBoolean(Configuration.getConfig(Constant.CACHE_BLOOM_MIRROR_ENABLE,String.class))) {
+                bloomMirrors = new ConcurrentHashMap<>();
+                //默认镜像中不存在时再到Redis中确认，关闭之后镜像刷新之前其他节点新增的值会被判断为不存在
+                String strict = Configuration.getConfig(Constant.CACHE_BLOOM_MIRROR_STRICT,String.class);
+                bloomMirrorStrict = Preconditions.isBlank(strict) || BooleanUtils.toBoolean(strict);
+                bloomMirrorMaxBytes = NumberUtils.toLong(Configuration.getConfig(Constant.CACHE_BLOOM_MIRROR_MAX_BYTES,String.class),64L * 1024 * 1024);
+                long refreshMillis = NumberUtils.toLong(Configuration.getConfig(Constant.CACHE_BLOOM_MIRROR_REFRESH_MILLIS,String.class),5000);
+                //每次刷新最多用BITCOUNT检查的页数(每页64K)，默认64页即4M
+                bloomMirrorRefreshPages = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_BLOOM_MIRROR_REFRESH_PAGES,String.class),64);
+                bloomMirrorScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "cache-bloom-mirror");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                bloomMirrorScheduler.scheduleWithFixedDelay(() -> bloomMirrors.values().forEach(CacheRegion::refreshBloomMirror),
+                        refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+            }
+
+            //同一个key并发未命中时只有一个线程去Redis读取
+            if (BooleanUtils.toBoolean(Configuration.getConfig(Constant.CACHE_SINGLEFLIGHT_ENABLE,String.class))) {
+                long timeoutMillis = NumberUtils.toLong(Configuration.getConfig(Constant.CACHE_SINGLEFLIGHT_TIMEOUT_MILLIS,String.class),1000);
+                singleFlight = new SingleFlight(timeoutMillis);
+            }
+        } catch (ClassCastException e) {
+            log.error(e.getMessage());
+        }
+
+        defaultRegion = new CacheRegion(DEFAULT_REGION);
+        regions.put(DEFAULT_REGION, defaultRegion);
+        for (String name:regionNames()) {
+            regions.put(name, new CacheRegion(name));
+        }
+
+        //多个节点之间通过Redis的发布订阅同步一级缓存的失效，消息中的key带有区域的前缀，收到之后清除所有区域
+        boolean rxcacheEnable = regions.values().stream().anyMatch(region -> region.rxcacheEnable);
+        if (rxcacheEnable && redis != null
+                && BooleanUtils.toBoolean(Configuration.getConfig(Constant.CACHE_INVALIDATION_ENABLE,String.class))) {
+
+            String channel = Configuration.getConfig(Constant.CACHE_INVALIDATION_CHANNEL,String.class);
+            if (Preconditions.isBlank(channel)) {
+                channel = Constant.DEFAULT_INVALIDATION_CHANNEL;
+            }
+            int batchSize = NumberUtils.toInt(Configuration.getConfig(Constant.CACHE_INVALIDATION_BATCH_SIZE,String.class),100);
+            long batchMillis = NumberUtils.toLong(Configuration.getConfig(Constant.CACHE_INVALIDATION_BATCH_MILLIS,String.class),10);
+
+            invalidationBus = new InvalidationBus(redis, channel, batchSize, batchMillis, new InvalidationListener() {
+
+                @Override
+                public void invalidate(String... keys) {
+                    for (CacheRegion region:regions.values()) {
+                        if (region.rxcacheEnable) {
+                            region.localCache.remove(keys);
+                        }
+                    }
+                    if (diskCache != null) {
+                        diskCache.remove(keys);
+                    }
+                }
+
+                @Override
+                public void invalidateAll() {
+                    for (CacheRegion region:regions.values()) {
+                        if (region.rxcacheEnable) {
+                            region.localCache.clear();
+                        }
+                    }
+                    if (diskCache != null) {
+                        diskCache.clear();
+                    }
+                }
+            });
+            //关闭之前先写回各个区域的异步写入队列，写回之后的失效通知才能发布出去
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (CacheRegion region:regions.values()) {
+                    if (region.writeBehind != null) {
+                        region.writeBehind.close();
+                    }
+                }
+                invalidationBus.close();
+            }, "cache-invalidation-close"));
+        }
+
+        //订阅了失效通知之后再开始预热，预热期间其他节点的写入也能使一级缓存失效
+        for (CacheRegion region:regions.values()) {
+            if (region.warmer != null) {
+                region.warmer.start();
+            }
+        }
+    }
+
+    private CacheRegion(String name) {
+
+        this.name = name;
+        boolean isDefault = DEFAULT_REGION.equals(name);
+        //命名区域没有单独配置前缀时在全局前缀后面加上区域名，避免和默认区域以及其他区域的key冲突
+        String globalPrefix = Configuration.getConfig(Constant.CACHE_KEY_PREFIX,String.class);
+        String regionPrefix = isDefault ? null : Configuration.getConfig(Constant.CACHE_REGIONS + "." + name + ".key.prefix",String.class);
+        if (isDefault) {
+            this.keyPrefix = globalPrefix != null ? globalPrefix : "";
+        } else {
+            this.keyPrefix = regionPrefix != null ? regionPrefix : (globalPrefix != null ? globalPrefix : "") + name + ":";
+        }
+        this.defaultSeconds = NumberUtils.toInt(config(Constant.CACHE_TTL_SECONDS),0);
+        this.ttlJitterPercent = NumberUtils.toInt(config(Constant.CACHE_TTL_JITTER_PERCENT),0);
+        //计数始终开启，耗时统计默认开启
+        String latencyEnable = config(Constant.CACHE_STATS_LATENCY_ENABLE);
+        this.stats = new CacheStats(name, latencyEnable == null || BooleanUtils.toBoolean(latencyEnable));
+        //命名BloomFilter的子Bitmap默认最大为2的27次方(16M)
+        this.bloomShardBits = NumberUtils.toLong(config(Constant.CACHE_BLOOM_SHARD_BITS),1L << 27);
+
+        try {
+            rxcacheEnable = BooleanUtils.toBoolean(config(Constant.CACHE_RXCACHE_ENABLE));
+
+            if (rxcacheEnable) {
+
+                String memType = config(Constant.CACHE_RXCACHE_MEMORY_TYPE);
+                long maxSize = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_MEMORY_MAXSIZE),100);
+                Memory memory = null;
+                switch (memType) {
+                    case Constant.FIFO:
+                        memory = new FIFOMemoryImpl(maxSize);
+                        break;
+
+                    case Constant.LRU:
+                        memory = new LRUMemoryImpl(maxSize);
+                        break;
+
+                    case Constant.LFU:
+                        memory = new LFUMemoryImpl(maxSize);
+                        break;
+
+                    case Constant.CAFFEINE:
+                        memory = new CaffeineImpl(maxSize);
+                        break;
+
+                    case Constant.GUAVA:
+                        memory = new GuavaCacheImpl(maxSize);
+                        break;
+
+                    case Constant.OFFHEAP:
+                        long capacity = NumberUtils.toLong(config(Constant.CACHE_RXCACHE_MEMORY_MAXBYTES),256L * 1024 * 1024);
+                        int blockSize = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_OFFHEAP_BLOCK_SIZE),4 * 1024 * 1024);
+                        int segments = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_OFFHEAP_SEGMENTS),16);
+                        offHeapMemory = new OffHeapMemory(capacity, blockSize, segments);
+                        memory = offHeapMemory;
+                        break;
+
+                    default:
+                        break;
+                }
+
+                //按权重限制一级缓存的大小，对所有类型的memory都生效
+                long maxBytes = NumberUtils.toLong(config(Constant.CACHE_RXCACHE_MEMORY_MAXBYTES),0);
+                if (memory != null && maxBytes > 0 && offHeapMemory == null) {
+                    Weigher weigher = Weigher.DEFAULT;
+                    String weigherClass = config(Constant.CACHE_RXCACHE_MEMORY_WEIGHER);
+                    if (Preconditions.isNotBlank(weigherClass)) {
+                        try {
+                            weigher = (Weigher) Class.forName(weigherClass).newInstance();
+                        } catch (ReflectiveOperationException e) {
+                            log.error("weigher error, class: {}", weigherClass, e);
+                        }
+                    }
+                    weightedMemory = new WeightedMemory(memory, maxBytes, weigher, !Constant.FIFO.equals(memType));
+                    memory = weightedMemory;
+                }
+
+                //每个区域使用自己的RxCache实例，默认区域同时作为RxCache的全局实例
+                RxCache.Builder builder = new RxCache.Builder().memory(memory);
+                RxCache rxCache;
+                if (isDefault) {
+                    RxCache.config(builder);
+                    rxCache = RxCache.getRxCache();
+                } else {
+                    rxCache = builder.build();
+                }
+
+                //object模式下一级缓存保存反序列化之后的对象，命中时不再解析json
+                boolean objectMode = Constant.OBJECT.equals(config(Constant.CACHE_RXCACHE_VALUE_MODE));
+                CopyPolicy copyPolicy = CopyPolicy.parse(config(Constant.CACHE_RXCACHE_VALUE_COPY));
+                long maxTtlMillis = NumberUtils.toLong(config(Constant.CACHE_RXCACHE_TTL_MAX_MILLIS),0);
+
+                //Redis中不存在的key单独记录，有自己的过期时间和容量
+                NegativeCache negativeCache = null;
+                if (BooleanUtils.toBoolean(config(Constant.CACHE_RXCACHE_NEGATIVE_ENABLE))) {
+                    long negativeMaxSize = NumberUtils.toLong(config(Constant.CACHE_RXCACHE_NEGATIVE_MAXSIZE),10000);
+                    long negativeTtlMillis = NumberUtils.toLong(config(Constant.CACHE_RXCACHE_NEGATIVE_TTL_MILLIS),5000);
+                    negativeCache = new NegativeCache(negativeMaxSize, negativeTtlMillis);
+                }
+                int generationStripes = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_GENERATION_STRIPES),4096);
+                localCache = new LocalCache(rxCache, objectMode, copyPolicy, maxTtlMillis, negativeCache, offHeapMemory != null, weightedMemory, generationStripes, stats);
+
+                hashMaxFields = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_HASH_MAX_FIELDS),1000);
+                listEnable = BooleanUtils.toBoolean(config(Constant.CACHE_RXCACHE_LIST_ENABLE));
+                listMaxSize = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_LIST_MAX_SIZE),10000);
+
+                //只有访问次数足够多的key才写入一级缓存
+                if (BooleanUtils.toBoolean(config(Constant.CACHE_RXCACHE_ADMISSION_ENABLE))) {
+                    int sketchSize = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_ADMISSION_SIZE),(int) Math.min(maxSize * 10, 1 << 20));
+                    int threshold = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_ADMISSION_THRESHOLD),2);
+                    int topN = NumberUtils.toInt(config(Constant.CACHE_RXCACHE_ADMISSION_TOPN),100);
+                    admissionFilter = new AdmissionFilter(sketchSize, threshold, topN);
+                }
+
+                //注册了loader的key命中时按XFetch的概率提前重新加载
+                if (BooleanUtils.toBoolean(config(Constant.CACHE_RXCACHE_XFETCH_ENABLE))) {
+                    double beta = NumberUtils.toDouble(config(Constant.CACHE_RXCACHE_XFETCH_BETA),1.0);
+                    xfetchDeltaMillis = NumberUtils.toLong(config(Constant.CACHE_RXCACHE_XFETCH_DELTA_MILLIS),100);
+                    xfetch = new XFetch(beta);
+                }
+            }
+
+            //允许丢失少量数据的key异步批量写回Redis
+            if (redis != null && BooleanUtils.toBoolean(config(Constant.CACHE_WRITEBEHIND_ENABLE))) {
+                int batchSize = NumberUtils.toInt(config(Constant.CACHE_WRITEBEHIND_BATCH_SIZE),100);
+                long flushMillis = NumberUtils.toLong(config(Constant.CACHE_WRITEBEHIND_FLUSH_MILLIS),100);
+                writeBehind = new WriteBehindQueue(redis, name, batchSize, flushMillis, CacheRegion::publish);
+                Runtime.getRuntime().addShutdownHook(new Thread(writeBehind::close, "cache-write-behind-close"));
+            }
+
+            //启动之后按pattern从Redis预热一级缓存
+            if (rxcacheEnable && redis != null && BooleanUtils.toBoolean(config(Constant.CACHE_WARMUP_ENABLE))) {
+                int threads = NumberUtils.toInt(config(Constant.CACHE_WARMUP_THREADS),4);
+                int batchSize = NumberUtils.toInt(config(Constant.CACHE_WARMUP_BATCH_SIZE),100);
+                int scanCount = NumberUtils.toInt(config(Constant.CACHE_WARMUP_SCAN_COUNT),1000);
+                long maxMillis = NumberUtils.toLong(config(Constant.CACHE_WARMUP_MAX_MILLIS),30000);
+                long maxBytes = NumberUtils.toLong(config(Constant.CACHE_WARMUP_MAX_BYTES),64L * 1024 * 1024);
+                warmer = new CacheWarmer(redis, localCache, name, warmupPatterns(Constant.CACHE_WARMUP_PATTERNS), warmupPatterns(Constant.CACHE_WARMUP_HASH_PATTERNS),
+                        threads, batchSize, scanCount, maxMillis, maxBytes, hashMaxFields);
+            }
+        } catch (ClassCastException e) {
+            log.error("region: {}, {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 默认区域，使用全局的配置
+     */
+    public static CacheRegion getDefaultRegion() {
+        return defaultRegion;
+    }
+
+    /**
+     * 获取配置中的区域，不存在时返回null
+     */
+    public static CacheRegion getRegion(String name) {
+        return regions.get(name);
+    }
+
+    public static Set<String> getRegionNames() {
+        return Collections.unmodifiableSet(regions.keySet());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * 一级缓存是否已经预热完成，没有开启预热时返回true，可以用于判断节点是否可以接入流量
+     */
+    public boolean isWarm() {
+        return warmer == null || warmer.isDone();
+    }
+
+    /**
+     * 等待预热完成，超时返回false
+     */
+    public boolean awaitWarm(long timeout, TimeUnit unit) throws InterruptedException {
+        return warmer == null || warmer.awaitDone(timeout, unit);
+    }
+
+    /**
+     * 预热的进度，没有开启预热时返回null
+     */
+    public CacheWarmer getWarmer() {
+        return warmer;
+    }
+
+    public <T> String set(String key, T value) {
+
+        return store(cacheKey(key), value, defaultSeconds);
+    }
+
+    public <T> String set(String key, T value, int seconds) {
+
+        return store(cacheKey(key), value, seconds);
+    }
+
+    /**
+     * 批量写入，每个key的过期时间分别加上随机抖动，一次批量写入Redis之后更新一级缓存并通知其他节点
+     * 开启异步写回时逐个放入写回队列
+     */
+    public <T> String mset(Map<String, T> values, int seconds) {
+
+        if (Preconditions.isBlank(values)) {
+            return null;
+        }
+
+        if (writeBehind != null) {
+            values.forEach((key, value) -> store(cacheKey(key), value, seconds));
+            return Constant.OK;
+        }
+
+        Map<String, T> cacheValues = new LinkedHashMap<>();
+        Map<String, Integer> expires = new HashMap<>();
+        values.forEach((key, value) -> {
+            String cacheKey = cacheKey(key);
+            cacheValues.put(cacheKey, value);
+            int expire = jitter(seconds);
+            if (expire > 0) {
+                expires.put(cacheKey, expire);
+            }
+        });
+
+        String result = redis.mset(cacheValues, expires);
+        String[] cacheKeys = cacheValues.keySet().toArray(new String[0]);
+        if (result == null) {
+            invalidate(cacheKeys);
+            return null;
+        }
+
+        if (rxcacheEnable) {
+            cacheValues.forEach((cacheKey, value) -> {
+                if (admit(cacheKey)) {
+                    localCache.put(cacheKey, value, expires.getOrDefault(cacheKey, 0) * 1000L);
+                } else {
+                    localCache.remove(cacheKey);
+                }
+            });
+        }
+        if (diskCache != null) {
+            diskCache.remove(cacheKeys);
+        }
+        publish(cacheKeys);
+        return result;
+    }
+
+    /**
+     * 注册提前刷新时使用的数据源，key以prefix开头时使用loader刷新，并以seconds作为过期时间写入Redis
+     * 没有匹配的loader时从Redis重新读取，prefix和传给loader的key都不包含区域的前缀
+     */
+    public <T> void registerLoader(String prefix, int seconds, CacheLoader<T> loader) {
+
+        loaders.put(prefix, new Loader(seconds, loader));
+    }
+
+    public void unregisterLoader(String prefix) {
+
+        loaders.remove(prefix);
+    }
+
+    public <T> Long setnx(String key, T value) {
+        if (defaultSeconds > 0) {
+            return setnx(key, value, defaultSeconds);
+        }
+        String cacheKey = cacheKey(key);
+        Long result = redis.setnx(cacheKey, value);
+        if (result != null && result > 0) {
+            invalidate(cacheKey);
+        }
+        return result;
+    }
+
+    public <T> Long setnx(String key, T value, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.setnx(cacheKey, value, jitter(seconds));
+        if (result != null && result > 0) {
+            invalidate(cacheKey);
+        }
+        return result;
+    }
+
+    public <T> T get(String key, Type type) {
+
+        String cacheKey = cacheKey(key);
+        if (rxcacheEnable) {
+            record(cacheKey);
+            LocalValue localValue = localCache.getValue(cacheKey);
+            if (localValue != null) {
+                stats.l1Hit("get");
+                //没有匹配的loader时从Redis重新读取只会得到同样的剩余过期时间，不提前刷新，由一级缓存正常过期
+                if (refreshAhead != null && refreshAhead.shouldRefresh(localValue) && findLoader(key) != null) {
+                    refreshAhead.refresh(cacheKey, () -> refresh(cacheKey));
+                } else if (xfetch != null) {
+                    localValue = xfetch(cacheKey, localValue);
+                }
+                return decode(localValue, type);
+            }
+            if (localCache.isMissing(cacheKey)) {
+                stats.l1Hit("get");
+                return null;
+            }
+            stats.l1Miss("get");
+        }
+
+        //还没有写回Redis的值
+        String value = writeBehind != null ? writeBehind.get(cacheKey) : null;
+        if (value == null && rxcacheEnable && diskCache != null) {
+            value = loadFromDisk(cacheKey);
+        }
+        if (value == null) {
+            value = loadFromRedis(cacheKey);
+        }
+        return decode(value, type);
+    }
+
+    /**
+     * 批量读取，一级缓存中没有的key通过一次批量读取从Redis获取并回设一级缓存
+     * 结果和keys一一对应，不存在的key对应null
+     */
+    public <T> List<T> mget(List<String> keys, Type type) {
+
+        if (Preconditions.isBlank(keys)) {
+            return Collections.emptyList();
+        }
+
+        List<T> result = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        List<Integer> missing = new ArrayList<>();
+        List<String> missingKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String cacheKey = cacheKey(keys.get(i));
+            if (rxcacheEnable) {
+                record(cacheKey);
+                LocalValue localValue = localCache.getValue(cacheKey);
+                if (localValue != null) {
+                    stats.l1Hit("mget");
+                    result.set(i, decode(localValue, type));
+                    continue;
+                }
+                if (localCache.isMissing(cacheKey)) {
+                    stats.l1Hit("mget");
+                    continue;
+                }
+                stats.l1Miss("mget");
+            }
+            String value = writeBehind != null ? writeBehind.get(cacheKey) : null;
+            if (value != null) {
+                result.set(i, decode(value, type));
+                continue;
+            }
+            missing.add(i);
+            missingKeys.add(cacheKey);
+        }
+
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+
+        if (!rxcacheEnable) {
+            long start = stats.startTimer();
+            List<String> values = redis.mget(missingKeys);
+            stats.recordRedis("mget", start);
+            for (int i = 0; values != null && i < values.size(); i++) {
+                recordRedis("mget", values.get(i) != null);
+                result.set(missing.get(i), decode(values.get(i), type));
+            }
+            return result;
+        }
+
+        long[] generations = new long[missingKeys.size()];
+        for (int i = 0; i < missingKeys.size(); i++) {
+            generations[i] = localCache.generation(missingKeys.get(i));
+        }
+        long start = stats.startTimer();
+        List<TtlValue<String>> ttlValues = redis.mgetWithTtl(missingKeys);
+        stats.recordRedis("mget", start);
+        for (int i = 0; ttlValues != null && i < ttlValues.size(); i++) {
+            String cacheKey = missingKeys.get(i);
+            TtlValue<String> ttlValue = ttlValues.get(i);
+            recordRedis("mget", ttlValue.exists());
+            if (!ttlValue.exists()) {
+                localCache.putMissing(cacheKey, generations[i]);
+                continue;
+            }
+            String json = ttlValue.getValue();
+            long expireMillis = LocalCache.expireMillis(ttlValue.getTtlMillis());
+            if (Preconditions.isNotBlank(json) && expireMillis >= 0) {
+                fill(cacheKey, json, expireMillis, generations[i]);
+            }
+            result.set(missing.get(i), decode(json, type));
+        }
+        return result;
+    }
+
+    private String loadFromRedis(String key) {
+
+        return load("get:" + key, () -> {
+            if (!rxcacheEnable) {
+                long start = stats.startTimer();
+                String value = redis.get(key);
+                stats.recordRedis("get", start);
+                recordRedis("get", value != null);
+                return value;
+            }
+
+            //回设一级缓存时带上Redis中剩余的过期时间，避免一级缓存比Redis中的key存活得更久
+            long generation = localCache.generation(key);
+            long start = stats.startTimer();
+            TtlValue<String> ttlValue = redis.getWithTtl(key);
+            stats.recordRedis("get", start);
+            if (ttlValue == null) {
+                return null;
+            }
+            recordRedis("get", ttlValue.exists());
+            if (!ttlValue.exists()) {
+                localCache.putMissing(key, generation);
+                return null;
+            }
+            String json = ttlValue.getValue();
+            long expireMillis = LocalCache.expireMillis(ttlValue.getTtlMillis());
+            if (Preconditions.isNotBlank(json) && expireMillis >= 0) {
+                fill(key, json, expireMillis, generation);
+            }
+            return json;
+        });
+    }
+
+    /**
+     * 一级缓存未命中时先读取磁盘缓存，命中之后回设一级缓存
+     */
+    private String loadFromDisk(String key) {
+
+        long generation = localCache.generation(key);
+        DiskCache.Entry entry = diskCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        stats.diskHit("get");
+
+        long expireMillis = entry.getExpireAt() > 0 ? Math.max(1, entry.getExpireAt() - System.currentTimeMillis()) : 0;
+        if (admit(key)) {
+            localCache.putJson(key, entry.getValue(), expireMillis, generation);
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * 把从Redis中读取到的值回设到一级缓存和磁盘缓存，generation是读取Redis之前的版本号
+     */
+    private void fill(String key, String json, long expireMillis, long generation) {
+
+        if (admit(key)) {
+            localCache.putJson(key, json, expireMillis, generation);
+        }
+        if (diskCache != null && localCache.generation(key) == generation) {
+            long now = System.currentTimeMillis();
+            long expireAt = expireMillis > 0 ? now + expireMillis : 0;
+            //磁盘上的数据重启之后收不到失效通知，限制最长的存活时间
+            if (diskMaxTtlMillis > 0 && (expireAt == 0 || expireAt > now + diskMaxTtlMillis)) {
+                expireAt = now + diskMaxTtlMillis;
+            }
+            diskCache.put(key, json, expireAt);
+            if (localCache.generation(key) != generation) {
+                diskCache.remove(key);
+            }
+        }
+    }
+
+    public Long incr(String key, Integer value, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.incr(cacheKey, value, seconds);
+        invalidate(cacheKey);
+        return result;
+    }
+
+    public Long incr(String key, Integer value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.incr(cacheKey, value);
+        invalidate(cacheKey);
+        return result;
+    }
+
+    public Long decr(String key, Integer value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.decr(cacheKey, value);
+        invalidate(cacheKey);
+        return result;
+    }
+
+    public Long decr(String key, Integer value, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.decr(cacheKey, value, seconds);
+        invalidate(cacheKey);
+        return result;
+    }
+
+    public Long expire(String key, int seconds) {
+        String cacheKey = cacheKey(key);
+        flushWriteBehind(cacheKey);
+        Long result = redis.expire(cacheKey, seconds);
+        //一级缓存中记录的过期时间已经和Redis不一致
+        if (result != null) {
+            invalidate(cacheKey);
+        }
+        return result;
+    }
+
+    public Long persist(String key) {
+        String cacheKey = cacheKey(key);
+        flushWriteBehind(cacheKey);
+        Long result = redis.persist(cacheKey);
+        if (result != null) {
+            invalidate(cacheKey);
+        }
+        return result;
+    }
+
+    public boolean exist(String key) {
+        String cacheKey = cacheKey(key);
+        //redis数据类型太多，判断是否存在之后无法回设内存，只根据一级缓存中已有的数据判断存在，其余情况都查询Redis
+        if (rxcacheEnable) {
+            Boolean exists = localCache.exists(cacheKey);
+            if (exists != null) {
+                return exists;
+            }
+        }
+        if (writeBehind != null && writeBehind.get(cacheKey) != null) {
+            return true;
+        }
+        return redis.exist(cacheKey);
+    }
+
+    public Long del(String key) {
+        String cacheKey = cacheKey(key);
+        discardWriteBehind(cacheKey);
+        Long result = redis.del(cacheKey);
+        invalidate(cacheKey);
+        return result;
+    }
+
+    public void del(String... keys) {
+        String[] cacheKeys = cacheKeys(keys);
+        discardWriteBehind(cacheKeys);
+        redis.del(cacheKeys);
+        invalidate(cacheKeys);
+    }
+
+    public <T> Long lpush(String key, T value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lpush(cacheKey, value);
+        updateList(cacheKey, result != null, list -> list.lpush(SerializableUtils.toJson(value)) == result);
+        return result;
+    }
+
+    public <T> Long lpush(String key, T value, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lpush(cacheKey, value, seconds);
+        //重新设置了过期时间，一级缓存中的过期时间已经不准确
+        updateList(cacheKey, false, null);
+        return result;
+    }
+
+    public <T> Long lpush(String key, List<T> values) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lpush(cacheKey, values);
+        updateList(cacheKey, result != null, list -> list.lpush(toJsonArray(values)) == result);
+        return result;
+    }
+
+    public <T> Long lpush(String key, List<T> values, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lpush(cacheKey, values, seconds);
+        updateList(cacheKey, false, null);
+        return result;
+    }
+
+    public <T> Long rpush(String key, T value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.rpush(cacheKey, value);
+        updateList(cacheKey, result != null, list -> list.rpush(SerializableUtils.toJson(value)) == result);
+        return result;
+    }
+
+    public <T> Long rpush(String key, T value, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.rpush(cacheKey, value, seconds);
+        updateList(cacheKey, false, null);
+        return result;
+    }
+
+    public <T> Long rpush(String key, List<T> values) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.rpush(cacheKey, values);
+        updateList(cacheKey, result != null, list -> list.rpush(toJsonArray(values)) == result);
+        return result;
+    }
+
+    public <T> Long rpush(String key, List<T> values, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.rpush(cacheKey, values, seconds);
+        updateList(cacheKey, false, null);
+        return result;
+    }
+
+    public List<String> lrange(String key) {
+        String cacheKey = cacheKey(key);
+        ListValue list = getList(cacheKey);
+        return list != null ? list.range(0, -1) : redis.lrange(cacheKey);
+    }
+
+    public <T> List<T> lrange(String key, Class<T> c) {
+        String cacheKey = cacheKey(key);
+        ListValue list = c != null ? getList(cacheKey) : null;
+        return list != null ? fromJsonList(list.range(0, -1), c) : redis.lrange(cacheKey, c);
+    }
+
+    public List<String> lrange(String key, long end) {
+        String cacheKey = cacheKey(key);
+        ListValue list = end >= 0 ? getList(cacheKey) : null;
+        return list != null ? list.range(0, end) : redis.lrange(cacheKey, end);
+    }
+
+    public <T> List<T> lrange(String key, long end, Class<T> c) {
+        String cacheKey = cacheKey(key);
+        ListValue list = end >= 0 && c != null ? getList(cacheKey) : null;
+        return list != null ? fromJsonList(list.range(0, end), c) : redis.lrange(cacheKey, end, c);
+    }
+
+    public List<String> lrange(String key, long start, long end) {
+        String cacheKey = cacheKey(key);
+        ListValue list = start >= 0 && end >= 0 ? getList(cacheKey) : null;
+        return list != null ? list.range(start, end) : redis.lrange(cacheKey, start, end);
+    }
+
+    public <T> List<T> lrange(String key, long start, long end, Class<T> c) {
+        String cacheKey = cacheKey(key);
+        ListValue list = start >= 0 && end >= 0 && c != null ? getList(cacheKey) : null;
+        return list != null ? fromJsonList(list.range(start, end), c) : redis.lrange(cacheKey, start, end, c);
+    }
+
+    public List<String> lrangePage(String key, int pageNo, int pageSize) {
+        String cacheKey = cacheKey(key);
+        ListValue list = pageNo >= 0 && pageSize >= 0 ? getList(cacheKey) : null;
+        return list != null ? list.range(pageNo * pageSize, (pageNo + 1) * pageSize) : redis.lrangePage(cacheKey, pageNo, pageSize);
+    }
+
+    public <T> List<T> lrangePage(String key, int pageNo, int pageSize, Class<T> c) {
+        String cacheKey = cacheKey(key);
+        ListValue list = pageNo >= 0 && pageSize >= 0 && c != null ? getList(cacheKey) : null;
+        return list != null ? fromJsonList(list.range(pageNo * pageSize, (pageNo + 1) * pageSize), c) : redis.lrangePage(cacheKey, pageNo, pageSize, c);
+    }
+
+    public String lindex(String key, int index) {
+        String cacheKey = cacheKey(key);
+        ListValue list = index >= 0 ? getList(cacheKey) : null;
+        return list != null ? list.index(index) : redis.lindex(cacheKey, index);
+    }
+
+    public <T> T lindex(String key, int index, Class<T> c) {
+        String cacheKey = cacheKey(key);
+        ListValue list = index >= 0 && c != null ? getList(cacheKey) : null;
+        if (list == null) {
+            return redis.lindex(cacheKey, index, c);
+        }
+        String value = list.index(index);
+        return c == String.class ? (T) value : SerializableUtils.fromJson(value, c);
+    }
+
+    public Long llen(String key) {
+        String cacheKey = cacheKey(key);
+        ListValue list = getList(cacheKey);
+        return list != null ? (long) list.size() : redis.llen(cacheKey);
+    }
+
+    public void lclear(String key) {
+        String cacheKey = cacheKey(key);
+        redis.lclear(cacheKey);
+        updateList(cacheKey, false, null);
+    }
+
+    public Long lrem(String key, String value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lrem(cacheKey, value);
+        updateList(cacheKey, result != null, list -> list.lrem(0, value) == result);
+        return result;
+    }
+
+    public <T> Long lrem(String key, T value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lrem(cacheKey, value);
+        updateList(cacheKey, result != null, list -> list.lrem(0, SerializableUtils.toJson(value)) == result);
+        return result;
+    }
+
+    public Long lrem(String key, long count, String value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lrem(cacheKey, count, value);
+        updateList(cacheKey, result != null, list -> list.lrem(count, value) == result);
+        return result;
+    }
+
+    public <T> Long lrem(String key, long count, T value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.lrem(cacheKey, count, value);
+        updateList(cacheKey, result != null, list -> list.lrem(count, SerializableUtils.toJson(value)) == result);
+        return result;
+    }
+
+    public String ltrim(String key, long start, long end) {
+        String cacheKey = cacheKey(key);
+        String result = redis.ltrim(cacheKey, start, end);
+        updateList(cacheKey, result != null, list -> {
+            list.ltrim(start, end);
+            return true;
+        });
+        return result;
+    }
+
+    public String lpop(String key) {
+        String cacheKey = cacheKey(key);
+        String result = redis.lpop(cacheKey);
+        updateList(cacheKey, result != null, list -> result.equals(list.lpop()));
+        return result;
+    }
+
+    public String rpop(String key) {
+        String cacheKey = cacheKey(key);
+        String result = redis.rpop(cacheKey);
+        updateList(cacheKey, result != null, list -> result.equals(list.rpop()));
+        return result;
+    }
+
+    public Long sadd(String key, String... values) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.sadd(cacheKey, values);
+        if (rxcacheEnable && result != null) {
+            //Redis返回的新增数量和一级缓存中的不一致时清除
+            localCache.updateSet(cacheKey, set -> set.add(values) == result);
+            publish(cacheKey);
+        } else {
+            invalidate(cacheKey);
+        }
+        return result;
+    }
+
+    public Long sadd(String key, int seconds, String... values) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.sadd(cacheKey, seconds, values);
+        invalidate(cacheKey);
+        return result;
+    }
+
+    public boolean sismember(String key, String value) {
+        String cacheKey = cacheKey(key);
+        if (rxcacheEnable) {
+            record(cacheKey);
+            SetValue set = localCache.getSet(cacheKey);
+            if (set != null) {
+                stats.l1Hit("sismember");
+                return set.contains(value);
+            }
+            if (localCache.isMissing(cacheKey)) {
+                stats.l1Hit("sismember");
+                return false;
+            }
+            stats.l1Miss("sismember");
+        }
+        long start = stats.startTimer();
+        boolean result = redis.sismember(cacheKey, value);
+        stats.recordRedis("sismember", start);
+        recordRedis("sismember", result);
+        return result;
+    }
+
+    public Set<String> smembers(String key) {
+        String cacheKey = cacheKey(key);
+        if (rxcacheEnable) {
+            record(cacheKey);
+            SetValue set = localCache.getSet(cacheKey);
+            if (set != null) {
+                stats.l1Hit("smembers");
+                return set.toSet();
+            }
+            if (localCache.isMissing(cacheKey)) {
+                stats.l1Hit("smembers");
+                return Collections.emptySet();
+            }
+            stats.l1Miss("smembers");
+        }
+
+        Set<String> set = load("smembers:" + cacheKey, () -> {
+            if (!rxcacheEnable) {
+                long start = stats.startTimer();
+                Set<String> members = redis.smembers(cacheKey);
+                stats.recordRedis("smembers", start);
+                recordRedis("smembers", Preconditions.isNotBlank(members));
+                return members;
+            }
+
+            long generation = localCache.generation(cacheKey);
+            long start = stats.startTimer();
+            TtlValue<Set<String>> ttlValue = redis.smembersWithTtl(cacheKey);
+            stats.recordRedis("smembers", start);
+            if (ttlValue == null) {
+                return Collections.emptySet();
+            }
+            recordRedis("smembers", ttlValue.exists());
+            if (!ttlValue.exists()) {
+                localCache.putMissing(cacheKey, generation);
+                return Collections.emptySet();
+            }
+            Set<String> members = ttlValue.getValue();
+            long expireMillis = LocalCache.expireMillis(ttlValue.getTtlMillis());
+            if (Preconditions.isNotBlank(members) && expireMillis >= 0 && admit(cacheKey)) {
+                localCache.putSet(cacheKey, new SetValue(members), expireMillis, generation);
+            }
+            return members;
+        });
+        //合并加载时多个调用者拿到的是同一个对象，返回副本
+        return singleFlight != null && set != null ? new HashSet<>(set) : set;
+    }
+
+    public <T> Long hset(String key, String field, T value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.hset(cacheKey, field, value);
+        updateHash(cacheKey, result != null, field, SerializableUtils.toJson(value));
+        return result;
+    }
+
+    public String hmset(String key, String... values) {
+        String cacheKey = cacheKey(key);
+        String result = redis.hmset(cacheKey, values);
+        updateHash(cacheKey, result != null, values);
+        return result;
+    }
+
+    public <T> Long hset(String key, String field, T value, int seconds) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.hset(cacheKey, field, value, seconds);
+        //重新设置了过期时间，一级缓存中的过期时间已经不准确
+        updateHash(cacheKey, result != null && seconds == 0, field, SerializableUtils.toJson(value));
+        return result;
+    }
+
+    public String hmset(String key, int seconds, String... values) {
+        String cacheKey = cacheKey(key);
+        String result = redis.hmset(cacheKey, seconds, values);
+        updateHash(cacheKey, result != null && seconds == 0, values);
+        return result;
+    }
+
+    public String hget(String key, String field) {
+        String cacheKey = cacheKey(key);
+        if (rxcacheEnable) {
+            record(cacheKey);
+            HashValue hash = localCache.getHash(cacheKey);
+            if (hash != null) {
+                String value = hash.get(field);
+                if (value != null || hash.isComplete()) {
+                    stats.l1Hit("hget");
+                    return value;
+                }
+            } else if (localCache.isMissing(cacheKey)) {
+                stats.l1Hit("hget");
+                return null;
+            }
+            stats.l1Miss("hget");
+        }
+
+        return load("hget:" + cacheKey + ":" + field, () -> {
+            if (!rxcacheEnable) {
+                long start = stats.startTimer();
+                String value = redis.hget(cacheKey, field);
+                stats.recordRedis("hget", start);
+                recordRedis("hget", value != null);
+                return value;
+            }
+            return loadHashFields("hget", cacheKey, field).get(field);
+        });
+    }
+
+    public List<String> hmget(String key, String... fields) {
+        String cacheKey = cacheKey(key);
+        if (!rxcacheEnable || fields == null || fields.length == 0) {
+            return redis.hmget(cacheKey, fields);
+        }
+
+        record(cacheKey);
+
+        HashValue hash = localCache.getHash(cacheKey);
+        if (hash == null && localCache.isMissing(cacheKey)) {
+            stats.l1Hit("hmget");
+            return new ArrayList<>(Collections.nCopies(fields.length, null));
+        }
+
+        List<String> values = new ArrayList<>(fields.length);
+        List<String> missing = new ArrayList<>();
+        for (String field:fields) {
+            String value = hash != null ? hash.get(field) : null;
+            if (value == null && (hash == null || !hash.isComplete())) {
+                missing.add(field);
+            }
+            values.add(value);
+        }
+
+        if (missing.isEmpty()) {
+            stats.l1Hit("hmget");
+        } else {
+            stats.l1Miss("hmget");
+            Map<String, String> loaded = loadHashFields("hmget", cacheKey, missing.toArray(new String[0]));
+            for (int i = 0; i < fields.length; i++) {
+                if (values.get(i) == null) {
+                    values.set(i, loaded.get(fields[i]));
+                }
+            }
+        }
+        return values;
+    }
+
+    public Long hincr(String key, String field, Integer value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.hincr(cacheKey, field, value);
+        //出错时也可能返回0，这种情况下无法确定Redis中的值
+        updateHash(cacheKey, result != null && result != 0, field, String.valueOf(result));
+        return result;
+    }
+
+    public Long hdecr(String key, String field, Integer value) {
+        String cacheKey = cacheKey(key);
+        Long result = redis.hdecr(cacheKey, field, value);
+        updateHash(cacheKey, result != null && result != 0, field, String.valueOf(result));
+        return result;
+    }
+
+    public Map<String, String> hgetAll(String key) {
+
+        String cacheKey = cacheKey(key);
+        if (rxcacheEnable) {
+            record(cacheKey);
+            HashValue hash = localCache.getHash(cacheKey);
+            if (hash != null && hash.isComplete() && hash.size() > 0) {
+                stats.l1Hit("hgetAll");
+                return hash.toMap();
+            }
+            if (hash == null && localCache.isMissing(cacheKey)) {
+                stats.l1Hit("hgetAll");
+                return Collections.emptyMap();
+            }
+            stats.l1Miss("hgetAll");
+        }
+
+        Map<String, String> map = loadHash(cacheKey);
+        return singleFlight != null && map != null ? new HashMap<>(map) : map;
+    }
+
+    public Long pfadd(String key, String value) {
+        return redis.pfadd(cacheKey(key), value);
+    }
+
+    public Long pfcount(String key) {
+        return redis.pfcount(cacheKey(key));
+    }
+
+    public boolean setbit(String key, long offset, boolean value) {
+        return redis.setbit(cacheKey(key), offset, value);
+    }
+
+    public boolean setbit(String key, long offset, String value) {
+        return redis.setbit(cacheKey(key), offset, value);
+    }
+
+    public boolean getbit(String key, long offset) {
+        return redis.getbit(cacheKey(key), offset);
+    }
+
+    public Long bitcount(String key) {
+        return redis.bitcount(cacheKey(key));
+    }
+
+    public Long bitcount(String key, long start, long end) {
+        return redis.bitcount(cacheKey(key), start, end);
+    }
+
+    public Long bitop(BitOP op, String destKey, String... srcKeys) {
+        return redis.bitop(op, cacheKey(destKey), cacheKeys(srcKeys));
+    }
+
+    public List<Long> bitfield(String key, String... arguments) {
+        return redis.bitfield(cacheKey(key), arguments);
+    }
+
+    public Long bitpos(String key, boolean value) {
+        return redis.bitpos(cacheKey(key), value);
+    }
+
+    public Long bitpos(String key, boolean value, long start, long end) {
+        return redis.bitpos(cacheKey(key), value, start, end);
+    }
+
+    public <T> boolean bloomadd(String key, T value) {
+
+        String cacheKey = cacheKey(key);
+        boolean bloomadd = redis.bloomadd(cacheKey, value);
+        if (bloomadd) {
+            bloomAdded(cacheKey, bloomMirror(cacheKey), value);
+        }
+        return bloomadd;
+    }
+
+    /**
+     * 批量添加到BloomFilter中，结果和values一一对应，Redis出错时返回null
+     */
+    public <T> List<Boolean> bloomaddAll(String key, Collection<T> values) {
+
+        String cacheKey = cacheKey(key);
+        List<Boolean> bloomadd = redis.bloomaddAll(cacheKey, values);
+        if (bloomadd == null) {
+            return null;
+        }
+
+        BloomMirror mirror = bloomMirror(cacheKey);
+        int i = 0;
+        for (T value:values) {
+            if (bloomadd.get(i++)) {
+                bloomAdded(cacheKey, mirror, value);
+            }
+        }
+        return bloomadd;
+    }
+
+    public <T> boolean bloomcontains(String key, T value) {
+
+        String cacheKey = cacheKey(key);
+        BloomMirror mirror = value != null ? bloomMirror(cacheKey) : null;
+        if (mirror != null) {
+            long[] offsets = BitmapHashUtils.getBitOffsets(value);
+            if (mirror.contains(offsets)) {
+                return true;
+            }
+            if (!bloomMirrorStrict) {
+                return false;
+            }
+
+            //本地镜像可能还没有同步其他节点新增的数据，再到Redis中确认
+            boolean bloomcontains = redis.bloomcontains(cacheKey, value);
+            if (bloomcontains) {
+                mirror.set(offsets);
+            }
+            return bloomcontains;
+        }
+
+        Boolean bloomcontains;
+        if (rxcacheEnable) {
+            String valueStr = SerializableUtils.toJson(value);
+
+            bloomcontains = localCache.get(cacheKey + valueStr, Boolean.class);
+            if (BooleanUtils.isTrue(bloomcontains)) {
+                return bloomcontains;
+            }
+
+            bloomcontains = redis.bloomcontains(cacheKey, value);
+            if (bloomcontains) {
+                localCache.put(cacheKey + valueStr, bloomcontains, 0);
+            }
+            return bloomcontains;
+        } else {
+            return redis.bloomcontains(cacheKey, value);
+        }
+    }
+
+    /**
+     * 批量判断是否在BloomFilter中存在，本地镜像或者一级缓存能确定的值不再访问Redis，
+     * 其余的值通过一次(每cache.redis.batch.size个值)网络往返到Redis中判断，结果和values一一对应，Redis出错时返回null
+     */
+    public <T> List<Boolean> bloomcontainsAll(String key, Collection<T> values) {
+
+        if (values == null) {
+            return null;
+        }
+
+        String cacheKey = cacheKey(key);
+        BloomMirror mirror = bloomMirror(cacheKey);
+        List<Boolean> bloomcontains = new ArrayList<>(values.size());
+        List<T> misses = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (T value:values) {
+            boolean contains = false;
+            boolean remote = value != null;
+            if (value != null && mirror != null) {
+                contains = mirror.contains(BitmapHashUtils.getBitOffsets(value));
+                remote = !contains && bloomMirrorStrict;
+            } else if (value != null && rxcacheEnable) {
+                contains = BooleanUtils.isTrue(localCache.get(cacheKey + SerializableUtils.toJson(value), Boolean.class));
+                remote = !contains;
+            }
+            if (remote) {
+                indexes.add(bloomcontains.size());
+                misses.add(value);
+            }
+            bloomcontains.add(contains);
+        }
+        if (misses.isEmpty()) {
+            return bloomcontains;
+        }
+
+        List<Boolean> result = redis.bloomcontainsAll(cacheKey, misses);
+        if (result == null) {
+            return null;
+        }
+        for (int i = 0; i < misses.size(); i++) {
+            if (result.get(i)) {
+                bloomcontains.set(indexes.get(i), true);
+                bloomAdded(cacheKey, mirror, misses.get(i));
+            }
+        }
+        return bloomcontains;
+    }
+
+    /**
+     * 创建命名的BloomFilter，根据预期的元素数量和误判率计算Bitmap的大小和Hash次数，超过cache.bloom.shard.bits时拆分成多个子Bitmap
+     * Redis中的key为区域的前缀加上name，同名的BloomFilter只创建一次，之后返回已经创建的
+     * @param expectedInsertions 预期的元素数量
+     * @param fpp 误判率
+     */
+    public IBloomFilter bloomFilter(String name, long expectedInsertions, double fpp) {
+        return bloomFilters.computeIfAbsent(name, n -> new BloomFilter(redis, cacheKey(n), expectedInsertions, fpp, bloomShardBits));
+    }
+
+    /**
+     * 创建命名的可以增长的BloomFilter，元素数量超过容量时增加新的阶段，总误判率不超过fpp
+     * @param initialCapacity 第一个阶段的容量
+     * @param fpp 误判率
+     */
+    public IBloomFilter scalableBloomFilter(String name, long initialCapacity, double fpp) {
+        return bloomFilters.computeIfAbsent(name, n -> new ScalableBloomFilter(redis, cacheKey(n), initialCapacity, fpp, bloomShardBits));
+    }
+
+    /**
+     * 获取命名的BloomFilter，还没有创建时按照cache.bloom.filter.<name>.expected.insertions、fpp(默认0.01)、scalable的配置创建，没有配置时返回null
+     */
+    public IBloomFilter getBloomFilter(String name) {
+
+        IBloomFilter filter = bloomFilters.get(name);
+        if (filter != null) {
+            return filter;
+        }
+
+        String prefix = Constant.CACHE_BLOOM_FILTER + "." + name + ".";
+        long expectedInsertions = NumberUtils.toLong(config(prefix + "expected.insertions"),0);
+        if (expectedInsertions <= 0) {
+            return null;
+        }
+        double fpp = NumberUtils.toDouble(config(prefix + "fpp"),0.01);
+        return BooleanUtils.toBoolean(config(prefix + "scalable"))
+                ? scalableBloomFilter(name, expectedInsertions, fpp)
+                : bloomFilter(name, expectedInsertions, fpp);
+    }
+
+    /**
+     * 值已经在Redis的BloomFilter中，同步到本地镜像，没有镜像时记录到一级缓存
+     */
+    private <T> void bloomAdded(String cacheKey, BloomMirror mirror, T value) {
+
+        if (value == null) {
+            return;
+        }
+
+        if (mirror != null) {
+            mirror.set(BitmapHashUtils.getBitOffsets(value));
+        } else if (rxcacheEnable) {
+            localCache.put(cacheKey + SerializableUtils.toJson(value), true, 0);
+        }
+    }
+
+    /**
+     * 开启BloomFilter本地镜像时返回key对应的镜像，无法使用镜像时返回null
+     * 第一次使用时只创建镜像，由镜像的刷新线程从Redis加载，加载完成之前返回null，调用者直接访问Redis
+     */
+    private static BloomMirror bloomMirror(String key) {
+
+        if (bloomMirrors == null || Preconditions.isBlank(key)) {
+            return null;
+        }
+
+        BloomMirror mirror = bloomMirrors.get(key);
+        if (mirror == null) {
+            BloomMirror created = new BloomMirror(redis, key, bloomMirrorMaxBytes, bloomMirrorRefreshPages);
+            mirror = bloomMirrors.putIfAbsent(key, created);
+            if (mirror == null) {
+                //每个key只加载一次，和定时刷新在同一个线程中执行
+                bloomMirrorScheduler.execute(() -> refreshBloomMirror(created));
+                return null;
+            }
+        }
+        return mirror.isAvailable() ? mirror : null;
+    }
+
+    private static void refreshBloomMirror(BloomMirror mirror) {
+
+        try {
+            mirror.refresh();
+        } catch (Exception e) {
+            log.error("bloom mirror refresh error", e);
+        }
+    }
+
+    public Long pfadd(String key, String value, int seconds) {
+        return redis.pfadd(cacheKey(key), value, seconds);
+    }
+
+    public boolean tryDistributedLock(String lockKey, String requestId, int expireTime) {
+        return redis.tryDistributedLock(cacheKey(lockKey), requestId, expireTime);
+    }
+
+    public boolean releaseDistributedLock(String lockKey, String requestId) {
+        return redis.releaseDistributedLock(cacheKey(lockKey), requestId);
+    }
+
+    /**
+     * Redis中不存在的key在一级缓存中命中的次数，也就是节省的Redis读取次数
+     */
+    public long getNegativeHits() {
+
+        return rxcacheEnable ? localCache.getMissingHits() : 0;
+    }
+
+    /**
+     * 访问频率最高的key以及估算的访问次数，没有开启准入过滤时返回空的map
+     */
+    public Map<String, Integer> getHotKeys() {
+
+        return admissionFilter != null ? admissionFilter.getHotKeys() : Collections.emptyMap();
+    }
+
+    /**
+     * 一级缓存当前的总权重，堆外内存时返回占用的字节数，没有设置cache.rxcache.memory.maxBytes时返回-1
+     */
+    public long getWeightedSize() {
+
+        if (offHeapMemory != null) {
+            return offHeapMemory.getUsedBytes();
+        }
+        return weightedMemory != null ? weightedMemory.getWeightedSize() : -1;
+    }
+
+    /**
+     * 当前的统计：按操作统计的一级缓存、磁盘缓存和Redis的命中次数，回设和失效的次数，反序列化和读取Redis的耗时
+     */
+    public CacheStatsSnapshot getStats() {
+
+        return stats.snapshot();
+    }
+
+    /**
+     * 清零所有的统计，调整一级缓存的配置之后重新统计
+     */
+    public void resetStats() {
+
+        stats.reset();
+    }
+
+    /**
+     * 使用带有区域前缀的key写入一级缓存和Redis，开启异步写回时放入写回队列，写回Redis之后再通知其他节点
+     */
+    private <T> String store(String key, T value, int seconds) {
+
+        seconds = jitter(seconds);
+        String result = writeBehind != null ? writeBehind.add(key, value, seconds) : redis.set(key, value, seconds);
+        //写入失败或者无法确定结果时不能把新值放到一级缓存中
+        if (result == null) {
+            invalidate(key);
+            return null;
+        }
+        //先写Redis再更新一级缓存，写入Redis之前开始的回设会因为版本号变化而放弃
+        if (rxcacheEnable) {
+            if (admit(key)) {
+                localCache.put(key, value, seconds*1000L);
+            } else {
+                localCache.remove(key);
+            }
+        }
+        if (diskCache != null) {
+            diskCache.remove(key);
+        }
+        if (writeBehind == null) {
+            publish(key);
+        }
+        return result;
+    }
+
+    /**
+     * 使用注册的loader重新加载一级缓存中的key并写入Redis，loader已经被移除时不做处理
+     */
+    private void refresh(String key) {
+
+        String loaderKey = key.substring(keyPrefix.length());
+        Loader loader = findLoader(loaderKey);
+        if (loader == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Object value = loader.loader.load(loaderKey);
+        loader.record(System.currentTimeMillis() - start);
+        if (value != null) {
+            store(key, value, loader.seconds);
+        }
+    }
+
+    /**
+     * XFetch判断需要提前加载时使用loader重新加载，开启了提前刷新时在后台加载，否则由当前线程加载并返回新的值
+     * 没有匹配的loader时不做处理，由一级缓存正常过期
+     */
+    private LocalValue xfetch(String key, LocalValue value) {
+
+        Loader loader = findLoader(key.substring(keyPrefix.length()));
+        if (loader == null || !xfetch.shouldRecompute(value, loader.getLoadMillis(xfetchDeltaMillis))) {
+            return value;
+        }
+
+        if (refreshAhead != null) {
+            refreshAhead.refresh(key, () -> refresh(key));
+            return value;
+        }
+        refresh(key);
+        LocalValue refreshed = localCache.getValue(key);
+        return refreshed != null ? refreshed : value;
+    }
+
+    /**
+     * 过期时间加上随机的抖动(0到ttlJitterPercent%)，一级缓存和Redis使用同一个过期时间，避免同时写入的大量key在同一时刻过期
+     */
+    private int jitter(int seconds) {
+
+        if (ttlJitterPercent <= 0 || seconds <= 0) {
+            return seconds;
+        }
+        int range = (int) Math.min(Integer.MAX_VALUE - seconds, (long) seconds * ttlJitterPercent / 100);
+        return range > 0 ? seconds + ThreadLocalRandom.current().nextInt(range + 1) : seconds;
+    }
+
+    /**
+     * 匹配最长的前缀
+     */
+    private Loader findLoader(String key) {
+
+        Loader result = null;
+        int length = -1;
+        for (Map.Entry<String, Loader> entry:loaders.entrySet()) {
+            String prefix = entry.getKey();
+            if (key.startsWith(prefix) && prefix.length() > length) {
+                result = entry.getValue();
+                length = prefix.length();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从Redis读取整个hash并回设一级缓存
+     */
+    private Map<String, String> loadHash(String key) {
+
+        return load("hgetAll:" + key, () -> {
+            if (!rxcacheEnable) {
+                long start = stats.startTimer();
+                Map<String, String> map = redis.hgetAll(key);
+                stats.recordRedis("hgetAll", start);
+                recordRedis("hgetAll", Preconditions.isNotBlank(map));
+                return map;
+            }
+
+            long generation = localCache.generation(key);
+            long start = stats.startTimer();
+            TtlValue<Map<String, String>> ttlValue = redis.hgetAllWithTtl(key);
+            stats.recordRedis("hgetAll", start);
+            if (ttlValue == null) {
+                return Collections.emptyMap();
+            }
+            recordRedis("hgetAll", ttlValue.exists());
+            if (!ttlValue.exists()) {
+                localCache.putMissing(key, generation);
+                return Collections.emptyMap();
+            }
+            Map<String, String> map = ttlValue.getValue();
+            long expireMillis = LocalCache.expireMillis(ttlValue.getTtlMillis());
+            //field太多的hash只按field缓存
+            if (Preconditions.isNotBlank(map) && expireMillis >= 0 && map.size() <= hashMaxFields && admit(key)) {
+                localCache.putHash(key, map, expireMillis, generation);
+            }
+            return map;
+        });
+    }
+
+    /**
+     * 使用HMGET从Redis读取hash的部分field并回设一级缓存，返回存在的field，operation是统计时使用的操作名称
+     */
+    private Map<String, String> loadHashFields(String operation, String key, String... fields) {
+
+        Map<String, String> map = new HashMap<>();
+        long generation = localCache.generation(key);
+        long start = stats.startTimer();
+        TtlValue<List<String>> ttlValue = redis.hmgetWithTtl(key, fields);
+        stats.recordRedis(operation, start);
+        if (ttlValue == null || ttlValue.getValue() == null) {
+            return map;
+        }
+        recordRedis(operation, ttlValue.exists());
+        if (!ttlValue.exists()) {
+            localCache.putMissing(key, generation);
+            return map;
+        }
+
+        List<String> values = ttlValue.getValue();
+        for (int i = 0; i < fields.length && i < values.size(); i++) {
+            if (values.get(i) != null) {
+                map.put(fields[i], values.get(i));
+            }
+        }
+
+        long expireMillis = LocalCache.expireMillis(ttlValue.getTtlMillis());
+        if (!map.isEmpty() && expireMillis >= 0 && admit(key)) {
+            localCache.putHashFields(key, map, expireMillis, generation);
+        }
+        return map;
+    }
+
+    /**
+     * 写入Redis成功之后直接更新一级缓存中已有的field，再通知其他节点；写入失败时清除整个hash
+     */
+    private void updateHash(String key, boolean success, String... fieldsAndValues) {
+
+        if (!success) {
+            invalidate(key);
+            return;
+        }
+
+        if (rxcacheEnable) {
+            localCache.updateHash(key, fieldsAndValues);
+        }
+        publish(key);
+    }
+
+    /**
+     * 从一级缓存中获取List，一级缓存中没有时从Redis读取整个List并回设
+     * 没有开启List的一级缓存、List的长度超过listMaxSize或者读取Redis出错时返回null，由调用者直接访问Redis
+     */
+    private ListValue getList(String key) {
+
+        if (!rxcacheEnable || !listEnable) {
+            return null;
+        }
+
+        record(key);
+        ListValue list = localCache.getList(key);
+        if (list != null) {
+            stats.l1Hit("lrange");
+            return list;
+        }
+        if (localCache.isMissing(key)) {
+            stats.l1Hit("lrange");
+            return new ListValue(Collections.emptyList());
+        }
+        stats.l1Miss("lrange");
+
+        return load("lrange:" + key, () -> {
+            long generation = localCache.generation(key);
+            long start = stats.startTimer();
+            TtlValue<List<String>> ttlValue = redis.lrangeWithTtl(key, listMaxSize);
+            stats.recordRedis("lrange", start);
+            if (ttlValue == null) {
+                return null;
+            }
+            recordRedis("lrange", ttlValue.exists());
+            if (!ttlValue.exists()) {
+                localCache.putMissing(key, generation);
+                return new ListValue(Collections.emptyList());
+            }
+            //太长的List不读取也不放到一级缓存中，由调用者直接到Redis中读取需要的部分
+            if (ttlValue.getValue() == null) {
+                return null;
+            }
+
+            ListValue value = new ListValue(ttlValue.getValue());
+            long expireMillis = LocalCache.expireMillis(ttlValue.getTtlMillis());
+            if (expireMillis >= 0 && admit(key)) {
+                localCache.putList(key, value, expireMillis, generation);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * 写入Redis之后更新一级缓存中的List并通知其他节点，写入失败或者无法确定结果时清除这个key
+     */
+    private void updateList(String key, boolean success, Predicate<ListValue> update) {
+
+        if (!rxcacheEnable || !listEnable) {
+            return;
+        }
+
+        if (!success) {
+            invalidate(key);
+            return;
+        }
+        localCache.updateList(key, update);
+        publish(key);
+    }
+
+    private static <T> String[] toJsonArray(List<T> values) {
+
+        String[] strings = new String[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            strings[i] = SerializableUtils.toJson(values.get(i));
+        }
+        return strings;
+    }
+
+    private static <T> List<T> fromJsonList(List<String> strings, Class<T> c) {
+
+        if (c == String.class) {
+            return (List<T>) strings;
+        }
+        List<T> list = new ArrayList<>(strings.size());
+        strings.forEach(s -> list.add(SerializableUtils.fromJson(s, c)));
+        return list;
+    }
+
+    /**
+     * 开启准入过滤时记录key的一次访问
+     */
+    private void record(String key) {
+
+        if (admissionFilter != null) {
+            admissionFilter.record(key);
+        }
+    }
+
+    /**
+     * key是否可以写入一级缓存，没有开启准入过滤时总是可以写入
+     */
+    private boolean admit(String key) {
+
+        return admissionFilter == null || admissionFilter.admit(key);
+    }
+
+    private <T> T decode(LocalValue value, Type type) {
+
+        long start = stats.startTimer();
+        T result = localCache.decode(value, type);
+        stats.recordDeserialize(start);
+        return result;
+    }
+
+    private <T> T decode(String json, Type type) {
+
+        if (type == String.class || json == null) {
+            return (T) json;
+        }
+        long start = stats.startTimer();
+        T result = SerializableUtils.fromJson(json, type);
+        stats.recordDeserialize(start);
+        return result;
+    }
+
+    private void recordRedis(String operation, boolean exists) {
+
+        if (exists) {
+            stats.redisHit(operation);
+        } else {
+            stats.redisMiss(operation);
+        }
+    }
+
+    /**
+     * 开启合并加载时，同一个key同时只会执行一次loader
+     */
+    private static <T> T load(String key, Supplier<T> loader) {
+
+        return singleFlight != null ? singleFlight.execute(key, loader) : loader.get();
+    }
+
+    /**
+     * 修改过期时间之前先把队列中还没有写回的值写入Redis，否则修改的是旧值，之后invalidate也会丢弃队列中的值
+     */
+    private void flushWriteBehind(String key) {
+
+        if (writeBehind != null && writeBehind.get(key) != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * 删除之前丢弃队列中还没有写回的值，并等待正在写回的批次完成，否则写回可能在删除之后重新创建这个key
+     */
+    private void discardWriteBehind(String... keys) {
+
+        if (writeBehind != null) {
+            writeBehind.remove(keys);
+        }
+    }
+
+    /**
+     * 写入Redis之后清除本地的一级缓存，并通知其他节点
+     */
+    private void invalidate(String... keys) {
+
+        if (writeBehind != null) {
+            writeBehind.remove(keys);
+        }
+        if (rxcacheEnable) {//清除内存中的数据，防止脏读
+            localCache.remove(keys);
+            if (diskCache != null) {
+                diskCache.remove(keys);
+            }
+            publish(keys);
+        }
+    }
+
+    /**
+     * 只通知其他节点，本地的一级缓存已经是最新的值
+     */
+    private static void publish(String... keys) {
+
+        if (invalidationBus != null) {
+            invalidationBus.publish(keys);
+        }
+    }
+
+    /**
+     * key加上区域的前缀之后才是Redis和一级缓存中实际使用的key
+     */
+    private String cacheKey(String key) {
+
+        return keyPrefix.isEmpty() ? key : keyPrefix + key;
+    }
+
+    private String[] cacheKeys(String... keys) {
+
+        if (keyPrefix.isEmpty()) {
+            return keys;
+        }
+        String[] cacheKeys = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            cacheKeys[i] = keyPrefix + keys[i];
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * 读取区域的配置，例如cache.rxcache.enable对应cache.regions.<name>.rxcache.enable，没有配置时使用全局的配置
+     */
+    private String config(String key) {
+
+        if (!DEFAULT_REGION.equals(name)) {
+            String value = Configuration.getConfig(Constant.CACHE_REGIONS + "." + name + key.substring(key.indexOf('.')),String.class);
+            if (value != null) {
+                return value;
+            }
+        }
+        return Configuration.getConfig(key,String.class);
+    }
+
+    /**
+     * 逗号分隔的pattern，加上区域的前缀
+     */
+    private List<String> warmupPatterns(String key) {
+
+        List<String> patterns = new ArrayList<>();
+        String value = config(key);
+        if (Preconditions.isNotBlank(value)) {
+            for (String pattern:value.split(",")) {
+                if (Preconditions.isNotBlank(pattern.trim())) {
+                    patterns.add(keyPrefix + pattern.trim());
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * 从cache.regions.<name>.*的配置中找出所有的区域
+     */
+    private static Set<String> regionNames() {
+
+        Set<String> names = new LinkedHashSet<>();
+        String prefix = Constant.CACHE_REGIONS + ".";
+        for (String key:Configuration.keys()) {
+            if (key.startsWith(prefix)) {
+                int index = key.indexOf('.', prefix.length());
+                if (index > prefix.length()) {
+                    names.add(key.substring(prefix.length(), index));
+                }
+            }
+        }
+        names.remove(DEFAULT_REGION);
+        return names;
+    }
+
+    private static class Loader {
+
+        private final int seconds;
+        private final CacheLoader<?> loader;
+        private volatile long loadMillis;
+
+        private Loader(int seconds, CacheLoader<?> loader) {
+            this.seconds = seconds;
+            this.loader = loader;
+        }
+
+        /**
+         * 记录一次加载的耗时，按指数移动平均计算
+         */
+        private void record(long millis) {
+            long current = loadMillis;
+            loadMillis = current == 0 ? Math.max(1, millis) : (current * 7 + millis) / 8;
+        }
+
+        /**
+         * 加载一次的平均耗时，还没有加载过时返回defaultMillis
+         */
+        private long getLoadMillis(long defaultMillis) {
+            return loadMillis > 0 ? loadMillis : defaultMillis;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package cn.netdiscovery.cache.bloom;
+
+import cn.netdiscovery.cache.redis.IRedisService;
+import cn.netdiscovery.cache.utils.BitmapHashUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * 根据预期的元素数量和误判率计算Bitmap大小和Hash次数的BloomFilter，小的BloomFilter不会再使用2的32次方(512M)的稀疏Bitmap
+ * Bitmap超过maxShardBits时拆分成多个子Bitmap(key为name:序号)，集群模式下分布在不同的slot上，避免所有请求落到同一个节点；
+ * 每个值的bit都在同一个子Bitmap中，批量操作时每个子Bitmap一次网络往返
+ */
+public class BloomFilter implements IBloomFilter {
+
+    private static final long MAX_SHARD_BITS = 1L << 32; // Redis的Bitmap最大比特位
+
+    private final IRedisService redis;
+    private final String name;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final int hashCount;
+    private final int shards;
+    private final long shardBits;
+
+    /**
+     * @param name               Redis中的key，拆分时作为子Bitmap的key的前缀
+     * @param expectedInsertions 预期的元素数量
+     * @param fpp                元素数量没有超过expectedInsertions时的误判率
+     * @param maxShardBits       每个子Bitmap的最大比特位
+     */
+    public BloomFilter(IRedisService redis, String name, long expectedInsertions, double fpp, long maxShardBits) {
+
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive: " + expectedInsertions);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        }
+        if (maxShardBits <= 0 || maxShardBits > MAX_SHARD_BITS) {
+            throw new IllegalArgumentException("maxShardBits must be in (0, 2^32]: " + maxShardBits);
+        }
+
+        this.redis = redis;
+        this.name = name;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        long bits = optimalBits(expectedInsertions, fpp);
+        this.hashCount = optimalHashCount(expectedInsertions, bits);
+        this.shards = (int) Math.min(Integer.MAX_VALUE, (bits + maxShardBits - 1) / maxShardBits);
+        this.shardBits = (bits + shards - 1) / shards;
+    }
+
+    /**
+     * 达到误判率需要的比特位：m = -n * ln(p) / (ln2)^2
+     */
+    public static long optimalBits(long expectedInsertions, double fpp) {
+        return Math.max(64, (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+    }
+
+    /**
+     * 最优的Hash次数：k = m / n * ln2
+     */
+    public static int optimalHashCount(long expectedInsertions, long bits) {
+        return Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public double getFpp() {
+        return fpp;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public long getShardBits() {
+        return shardBits;
+    }
+
+    /**
+     * 所有子Bitmap的比特位之和
+     */
+    public long getBits() {
+        return shardBits * shards;
+    }
+
+    /**
+     * Redis中所有子Bitmap的key
+     */
+    public List<String> getKeys() {
+
+        List<String> keys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            keys.add(key(i));
+        }
+        return keys;
+    }
+
+    @Override
+    public <T> boolean add(T value) {
+
+        if (value == null) {
+            return false;
+        }
+
+        List<Boolean> add = addAll(Collections.singletonList(value));
+        return add != null && add.get(0);
+    }
+
+    @Override
+    public <T> boolean contains(T value) {
+
+        if (value == null) {
+            return false;
+        }
+
+        List<Boolean> contains = containsAll(Collections.singletonList(value));
+        return contains != null && contains.get(0);
+    }
+
+    @Override
+    public <T> List<Boolean> addAll(Collection<T> values) {
+        return values != null ? execute(values, redis::bloomaddOffsets) : null;
+    }
+
+    @Override
+    public <T> List<Boolean> containsAll(Collection<T> values) {
+        return values != null ? execute(values, redis::bloomcontainsOffsets) : null;
+    }
+
+    @Override
+    public void delete() {
+        redis.mdel(getKeys());
+    }
+
+    /**
+     * 按子Bitmap对值分组，每个子Bitmap执行一次command
+     */
+    private <T> List<Boolean> execute(Collection<T> values, BiFunction<String, List<long[]>, List<Boolean>> command) {
+
+        List<Boolean> result = new ArrayList<>(values.size());
+        Map<Integer, List<Integer>> indexes = new HashMap<>();
+        Map<Integer, List<long[]>> offsets = new HashMap<>();
+        for (T value:values) {
+            if (value != null) {
+                long[] valueOffsets = new long[hashCount];
+                int shard = BitmapHashUtils.murmur3(value, shardBits, shards, valueOffsets);
+                indexes.computeIfAbsent(shard, k -> new ArrayList<>()).add(result.size());
+                offsets.computeIfAbsent(shard, k -> new ArrayList<>()).add(valueOffsets);
+            }
+            result.add(false);
+        }
+
+        for (Map.Entry<Integer, List<long[]>> entry:offsets.entrySet()) {
+            List<Boolean> replies = command.apply(key(entry.getKey()), entry.getValue());
+            if (replies == null) {
+                return null;
+            }
+            List<Integer> shardIndexes = indexes.get(entry.getKey());
+            for (int i = 0; i < shardIndexes.size(); i++) {
+                result.set(shardIndexes.get(i), replies.get(i));
+            }
+        }
+        return result;
+    }
+
+    private String key(int shard) {
+        return shards > 1 ? name + ":" + shard : name;
+    }
+}
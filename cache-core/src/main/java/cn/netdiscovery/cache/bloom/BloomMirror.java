@@ -0,0 +1,228 @@
+package cn.netdiscovery.cache.bloom;
+
+import cn.netdiscovery.cache.redis.IRedisService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Redis中BloomFilter的Bitmap在本地的镜像，判断是否存在时不需要访问Redis
+ * Bitmap按页保存在long[]中，每页对应Redis中连续的PAGE_BYTES个字节，全为0的页不分配内存；
+ * 第一次加载时通过GETRANGE分段读取整个Bitmap，之后每次刷新只用BITCOUNT检查pagesPerRefresh个页，
+ * 依次轮流检查所有的页，只重新读取1的个数和本地不一致的页；本地写入的bit按位或合并，不会在刷新时丢失
+ * 刷新之前其他节点新增的数据在本地可能判断为不存在
+ * 只适合大小和元素数量相匹配的Bitmap：bloomadd使用2的32次方范围内的offset，写入少量数据之后Bitmap就接近512M，
+ * 超过maxBytes时不做镜像
+ */
+@Slf4j
+public class BloomMirror {
+
+    private static final int PAGE_BYTES = 64 * 1024;
+    private static final int PAGE_LONGS = PAGE_BYTES / 8;
+    private static final int PAGE_SHIFT = 19; // 每页的bit数量为2的19次方
+
+    private final IRedisService redis;
+    private final String key;
+    private final long maxBytes;
+    private final int pagesPerRefresh;
+
+    private volatile long[][] pages = new long[0][];
+    private volatile boolean available;
+    private boolean loaded;
+    private int cursor; // 下一次刷新开始检查的页
+
+    /**
+     * @param maxBytes        Redis中的Bitmap超过maxBytes时不做镜像
+     * @param pagesPerRefresh 加载之后每次刷新最多检查的页数
+     */
+    public BloomMirror(IRedisService redis, String key, long maxBytes, int pagesPerRefresh) {
+
+        this.redis = redis;
+        this.key = key;
+        this.maxBytes = maxBytes;
+        this.pagesPerRefresh = Math.max(1, pagesPerRefresh);
+    }
+
+    /**
+     * 镜像是否可以使用，第一次加载成功之后才可以使用
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * offsets对应的bit是否都为1
+     */
+    public boolean contains(long[] offsets) {
+
+        long[][] snapshot = pages;
+        for (long offset:offsets) {
+            int page = (int) (offset >>> PAGE_SHIFT);
+            if (page >= snapshot.length || snapshot[page] == null) {
+                return false;
+            }
+            if ((snapshot[page][index(offset)] & mask(offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写入Redis成功之后把offsets对应的bit设置为1
+     */
+    public synchronized void set(long[] offsets) {
+
+        for (long offset:offsets) {
+            long[] page = page((int) (offset >>> PAGE_SHIFT));
+            page[index(offset)] |= mask(offset);
+        }
+    }
+
+    /**
+     * 第一次调用时读取整个Bitmap，之后只检查一部分页，只由一个线程调用
+     */
+    public void refresh() {
+
+        Long length = redis.strlen(key);
+        if (length == null) {
+            return;
+        }
+        if (length > maxBytes) {
+            if (available || !loaded) {
+                log.warn("bloom mirror disabled, key: {}, bytes: {}", key, length);
+            }
+            synchronized (this) {
+                pages = new long[0][];
+            }
+            available = false;
+            loaded = true;
+            return;
+        }
+
+        if (length == 0) {
+            //key已经被删除
+            synchronized (this) {
+                pages = new long[0][];
+            }
+            loaded = true;
+            available = true;
+            return;
+        }
+
+        int pageCount = (int) ((length + PAGE_BYTES - 1) / PAGE_BYTES);
+        if (!loaded || !available) {
+            for (int page = 0; page < pageCount; page++) {
+                if (!reload(page)) {
+                    return;
+                }
+            }
+            loaded = true;
+            available = true;
+            return;
+        }
+
+        for (int i = 0; i < Math.min(pagesPerRefresh, pageCount); i++) {
+            int page = cursor++ % pageCount;
+            Long count = redis.bitcount(key, (long) page * PAGE_BYTES, (long) (page + 1) * PAGE_BYTES - 1);
+            if (count == null) {
+                return;
+            }
+            if (count != bitCount(page) && !reload(page)) {
+                return;
+            }
+        }
+        cursor %= pageCount;
+    }
+
+    /**
+     * 本地镜像占用的内存(字节)
+     */
+    public long getBytes() {
+
+        long bytes = 0;
+        for (long[] page:pages) {
+            if (page != null) {
+                bytes += PAGE_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 重新读取一页，Redis中1的个数比本地少时(key被删除之后重新写入)用Redis中的数据替换本地的页，否则按位或合并
+     */
+    private boolean reload(int pageIndex) {
+
+        long start = (long) pageIndex * PAGE_BYTES;
+        byte[] bytes = redis.getrange(key, start, start + PAGE_BYTES - 1);
+        if (bytes == null) {
+            return false;
+        }
+
+        byte[] padded = bytes.length == PAGE_BYTES ? bytes : Arrays.copyOf(bytes, PAGE_BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        long[] values = new long[PAGE_LONGS];
+        long remote = 0;
+        for (int i = 0; i < PAGE_LONGS; i++) {
+            values[i] = buffer.getLong();
+            remote += Long.bitCount(values[i]);
+        }
+
+        synchronized (this) {
+            boolean replace = remote < bitCount(pageIndex);
+            if (remote == 0 && (pageIndex >= pages.length || pages[pageIndex] == null)) {
+                return true;
+            }
+            long[] page = page(pageIndex);
+            for (int i = 0; i < PAGE_LONGS; i++) {
+                page[i] = replace ? values[i] : page[i] | values[i];
+            }
+        }
+        return true;
+    }
+
+    private long bitCount(int pageIndex) {
+
+        long[][] snapshot = pages;
+        if (pageIndex >= snapshot.length || snapshot[pageIndex] == null) {
+            return 0;
+        }
+        long count = 0;
+        for (long value:snapshot[pageIndex]) {
+            count += Long.bitCount(value);
+        }
+        return count;
+    }
+
+    /**
+     * 获取页，不存在时分配，调用者需要持有锁
+     */
+    private long[] page(int pageIndex) {
+
+        long[][] current = pages;
+        if (pageIndex >= current.length) {
+            current = Arrays.copyOf(current, pageIndex + 1);
+        }
+        if (current[pageIndex] == null) {
+            current[pageIndex] = new long[PAGE_LONGS];
+        }
+        pages = current;
+        return current[pageIndex];
+    }
+
+    /**
+     * offset所在的long在页中的下标
+     */
+    static int index(long offset) {
+        return (int) ((offset >>> 6) & (PAGE_LONGS - 1));
+    }
+
+    /**
+     * Redis的Bitmap中offset为0的bit是第一个字节的最高位，页中的long按大端读取，所以也是long的最高位
+     */
+    static long mask(long offset) {
+        return 1L << (63 - (offset & 63));
+    }
+}
@@ -0,0 +1,37 @@
+package cn.netdiscovery.cache.bloom;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 保存在Redis中的命名BloomFilter
+ */
+public interface IBloomFilter {
+
+    String getName();
+
+    /**
+     * 添加指定值，返回True表示添加成功，返回False表示已经存在该值或者出错
+     */
+    <T> boolean add(T value);
+
+    /**
+     * 判断指定值是否已经存在，返回True表示存在
+     */
+    <T> boolean contains(T value);
+
+    /**
+     * 批量添加，结果和values一一对应，值为null时结果为False，出错时返回null
+     */
+    <T> List<Boolean> addAll(Collection<T> values);
+
+    /**
+     * 批量判断是否存在，结果和values一一对应，值为null时结果为False，出错时返回null
+     */
+    <T> List<Boolean> containsAll(Collection<T> values);
+
+    /**
+     * 删除Redis中保存的所有数据
+     */
+    void delete();
+}
@@ -0,0 +1,259 @@
+package cn.netdiscovery.cache.bloom;
+
+import cn.netdiscovery.cache.common.NumberUtils;
+import cn.netdiscovery.cache.redis.IRedisService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可以增长的BloomFilter，由多个阶段组成，每个阶段是一个BloomFilter(key为name:s序号)，
+ * 第i个阶段的容量为initialCapacity * 2^i，误判率为fpp * 0.5^(i+1)，所有阶段的误判率之和不超过fpp
+ * 已经添加的元素数量保存在Redis中(name:count)，所有节点由它得出当前的阶段；新的值只写入当前阶段，之前的阶段只用来判断是否存在
+ * 判断和添加需要依次访问每个阶段，并发添加时当前阶段可能略微超出容量
+ */
+public class ScalableBloomFilter implements IBloomFilter {
+
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+    private static final int MAX_STAGES = 32;
+
+    private final IRedisService redis;
+    private final String name;
+    private final long initialCapacity;
+    private final double fpp;
+    private final long maxShardBits;
+    private final String countKey;
+
+    private final Map<Integer, BloomFilter> stages = new ConcurrentHashMap<>();
+
+    /**
+     * @param initialCapacity 第一个阶段的容量
+     * @param fpp             所有阶段的总误判率
+     * @param maxShardBits    每个子Bitmap的最大比特位
+     */
+    public ScalableBloomFilter(IRedisService redis, String name, long initialCapacity, double fpp, long maxShardBits) {
+
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        }
+
+        this.redis = redis;
+        this.name = name;
+        this.initialCapacity = initialCapacity;
+        this.fpp = fpp;
+        this.maxShardBits = maxShardBits;
+        this.countKey = name + ":count";
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 已经添加成功的元素数量
+     */
+    public long getCount() {
+        return NumberUtils.toLong(redis.get(countKey), 0);
+    }
+
+    /**
+     * 当前的阶段数量
+     */
+    public int getStages() {
+        return currentStage(getCount()) + 1;
+    }
+
+    @Override
+    public <T> boolean add(T value) {
+
+        if (value == null) {
+            return false;
+        }
+
+        List<Boolean> add = addAll(Collections.singletonList(value));
+        return add != null && add.get(0);
+    }
+
+    @Override
+    public <T> boolean contains(T value) {
+
+        if (value == null) {
+            return false;
+        }
+
+        List<Boolean> contains = containsAll(Collections.singletonList(value));
+        return contains != null && contains.get(0);
+    }
+
+    @Override
+    public <T> List<Boolean> addAll(Collection<T> values) {
+
+        if (values == null) {
+            return null;
+        }
+
+        List<T> list = new ArrayList<>(values);
+        List<Integer> indexes = nonNullIndexes(list);
+        List<Boolean> result = new ArrayList<>(Collections.nCopies(list.size(), false));
+        long count = getCount();
+        long added = 0;
+        int checked = 0; // indexes中的值已经判断过不在[0, checked)的阶段中
+        while (!indexes.isEmpty()) {
+            int current = currentStage(count);
+
+            //之前的阶段中已经存在的值不再添加
+            for (; checked < current && !indexes.isEmpty(); checked++) {
+                List<Boolean> contains = stage(checked).containsAll(select(list, indexes));
+                if (contains == null) {
+                    return null;
+                }
+                indexes = absent(indexes, contains);
+            }
+            if (indexes.isEmpty()) {
+                break;
+            }
+
+            //当前阶段只写入剩余容量的值，其余的值写入下一个阶段
+            int size = (int) Math.min(indexes.size(), current == MAX_STAGES - 1 ? Long.MAX_VALUE : capacityUntil(current) - count);
+            List<Integer> batch = indexes.subList(0, size);
+            List<Boolean> add = stage(current).addAll(select(list, batch));
+            if (add == null) {
+                return null;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (add.get(i)) {
+                    result.set(batch.get(i), true);
+                    count++;
+                    added++;
+                }
+            }
+            indexes = new ArrayList<>(indexes.subList(size, indexes.size()));
+        }
+
+        if (added > 0) {
+            redis.incr(countKey, (int) added);
+        }
+        return result;
+    }
+
+    @Override
+    public <T> List<Boolean> containsAll(Collection<T> values) {
+
+        if (values == null) {
+            return null;
+        }
+
+        List<T> list = new ArrayList<>(values);
+        List<Integer> indexes = nonNullIndexes(list);
+        List<Boolean> result = new ArrayList<>(Collections.nCopies(list.size(), false));
+
+        //从最新的阶段开始判断，已经找到的值不再访问之前的阶段
+        for (int stage = currentStage(getCount()); stage >= 0 && !indexes.isEmpty(); stage--) {
+            List<Boolean> contains = stage(stage).containsAll(select(list, indexes));
+            if (contains == null) {
+                return null;
+            }
+            for (int i = 0; i < indexes.size(); i++) {
+                if (contains.get(i)) {
+                    result.set(indexes.get(i), true);
+                }
+            }
+            indexes = absent(indexes, contains);
+        }
+        return result;
+    }
+
+    @Override
+    public void delete() {
+
+        List<String> keys = new ArrayList<>();
+        for (int stage = currentStage(getCount()); stage >= 0; stage--) {
+            keys.addAll(stage(stage).getKeys());
+        }
+        keys.add(countKey);
+        redis.mdel(keys);
+    }
+
+    /**
+     * 由已经添加的元素数量得出当前的阶段
+     */
+    private int currentStage(long count) {
+
+        int stage = 0;
+        while (count >= capacityUntil(stage) && stage < MAX_STAGES - 1) {
+            stage++;
+        }
+        return stage;
+    }
+
+    /**
+     * 第stage个阶段的容量
+     */
+    private long capacity(int stage) {
+
+        long capacity = initialCapacity;
+        for (int i = 0; i < stage; i++) {
+            capacity = capacity > Long.MAX_VALUE / GROWTH ? Long.MAX_VALUE : capacity * GROWTH;
+        }
+        return capacity;
+    }
+
+    /**
+     * 第0到第stage个阶段的容量之和
+     */
+    private long capacityUntil(int stage) {
+
+        long total = 0;
+        for (int i = 0; i <= stage; i++) {
+            total = total > Long.MAX_VALUE - capacity(i) ? Long.MAX_VALUE : total + capacity(i);
+        }
+        return total;
+    }
+
+    private BloomFilter stage(int stage) {
+        return stages.computeIfAbsent(stage, i -> new BloomFilter(redis, name + ":s" + i, capacity(i), fpp * Math.pow(TIGHTENING, i + 1), maxShardBits));
+    }
+
+    private static <T> List<Integer> nonNullIndexes(List<T> list) {
+
+        List<Integer> indexes = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) != null) {
+                indexes.add(i);
+            }
+        }
+        return indexes;
+    }
+
+    private static <T> List<T> select(List<T> list, List<Integer> indexes) {
+
+        List<T> selected = new ArrayList<>(indexes.size());
+        for (int index:indexes) {
+            selected.add(list.get(index));
+        }
+        return selected;
+    }
+
+    /**
+     * 保留判断为不存在的值的位置
+     */
+    private static List<Integer> absent(List<Integer> indexes, List<Boolean> contains) {
+
+        List<Integer> absent = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            if (!contains.get(i)) {
+                absent.add(indexes.get(i));
+            }
+        }
+        return absent;
+    }
+}
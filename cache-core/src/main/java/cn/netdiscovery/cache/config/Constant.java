@@ -9,11 +9,85 @@ public class Constant {
     public static final String SET_IF_NOT_EXIST = "NX";
     public static final String SET_WITH_EXPIRE_TIME = "PX";
     public static final Long RELEASE_SUCCESS = 1L;
+    public static final String OK = "OK";
 
 
     public static final String CACHE_RXCACHE_ENABLE             = "cache.rxcache.enable";
     public static final String CACHE_RXCACHE_MEMORY_TYPE        = "cache.rxcache.memory.type";
     public static final String CACHE_RXCACHE_MEMORY_MAXSIZE     = "cache.rxcache.memory.maxSize";
+    public static final String CACHE_RXCACHE_MEMORY_MAXBYTES    = "cache.rxcache.memory.maxBytes";
+    public static final String CACHE_RXCACHE_MEMORY_WEIGHER     = "cache.rxcache.memory.weigher";
+    public static final String CACHE_RXCACHE_OFFHEAP_BLOCK_SIZE = "cache.rxcache.offheap.block.size";
+    public static final String CACHE_RXCACHE_OFFHEAP_SEGMENTS   = "cache.rxcache.offheap.segments";
+    public static final String CACHE_RXCACHE_VALUE_MODE         = "cache.rxcache.value.mode";
+    public static final String CACHE_RXCACHE_VALUE_COPY         = "cache.rxcache.value.copy";
+    public static final String CACHE_RXCACHE_TTL_MAX_MILLIS     = "cache.rxcache.ttl.max.millis";
+    public static final String CACHE_RXCACHE_GENERATION_STRIPES = "cache.rxcache.generation.stripes";
+    public static final String CACHE_RXCACHE_HASH_MAX_FIELDS    = "cache.rxcache.hash.max.fields";
+    public static final String CACHE_RXCACHE_LIST_ENABLE        = "cache.rxcache.list.enable";
+    public static final String CACHE_RXCACHE_LIST_MAX_SIZE      = "cache.rxcache.list.max.size";
+    public static final String CACHE_RXCACHE_NEGATIVE_ENABLE    = "cache.rxcache.negative.enable";
+    public static final String CACHE_RXCACHE_NEGATIVE_MAXSIZE   = "cache.rxcache.negative.maxSize";
+    public static final String CACHE_RXCACHE_NEGATIVE_TTL_MILLIS = "cache.rxcache.negative.ttl.millis";
+    public static final String CACHE_RXCACHE_ADMISSION_ENABLE   = "cache.rxcache.admission.enable";
+    public static final String CACHE_RXCACHE_ADMISSION_SIZE     = "cache.rxcache.admission.size";
+    public static final String CACHE_RXCACHE_ADMISSION_THRESHOLD = "cache.rxcache.admission.threshold";
+    public static final String CACHE_RXCACHE_ADMISSION_TOPN     = "cache.rxcache.admission.topN";
+    public static final String CACHE_RXCACHE_REFRESH_ENABLE     = "cache.rxcache.refresh.enable";
+    public static final String CACHE_RXCACHE_REFRESH_RATIO      = "cache.rxcache.refresh.ratio";
+    public static final String CACHE_RXCACHE_REFRESH_THREADS    = "cache.rxcache.refresh.threads";
+    public static final String CACHE_RXCACHE_REFRESH_QUEUE_SIZE = "cache.rxcache.refresh.queue.size";
+    public static final String CACHE_RXCACHE_XFETCH_ENABLE      = "cache.rxcache.xfetch.enable";
+    public static final String CACHE_RXCACHE_XFETCH_BETA        = "cache.rxcache.xfetch.beta";
+    public static final String CACHE_RXCACHE_XFETCH_DELTA_MILLIS = "cache.rxcache.xfetch.delta.millis";
+
+
+    public static final String CACHE_DISK_ENABLE                = "cache.disk.enable";
+    public static final String CACHE_DISK_PATH                  = "cache.disk.path";
+    public static final String CACHE_DISK_SEGMENT_SIZE          = "cache.disk.segment.size";
+    public static final String CACHE_DISK_MAX_SEGMENTS          = "cache.disk.max.segments";
+    public static final String CACHE_DISK_TTL_MAX_MILLIS        = "cache.disk.ttl.max.millis";
+
+
+    public static final String CACHE_BLOOM_MIRROR_ENABLE        = "cache.bloom.mirror.enable";
+    public static final String CACHE_BLOOM_MIRROR_STRICT        = "cache.bloom.mirror.strict";
+    public static final String CACHE_BLOOM_MIRROR_MAX_BYTES     = "cache.bloom.mirror.max.bytes";
+    public static final String CACHE_BLOOM_MIRROR_REFRESH_MILLIS = "cache.bloom.mirror.refresh.millis";
+    public static final String CACHE_BLOOM_MIRROR_REFRESH_PAGES = "cache.bloom.mirror.refresh.pages";
+    public static final String CACHE_BLOOM_SHARD_BITS           = "cache.bloom.shard.bits";
+    public static final String CACHE_BLOOM_FILTER               = "cache.bloom.filter";
+
+    public static final String CACHE_REGIONS                    = "cache.regions";
+    public static final String CACHE_KEY_PREFIX                 = "cache.key.prefix";
+    public static final String CACHE_TTL_SECONDS                = "cache.ttl.seconds";
+    public static final String CACHE_TTL_JITTER_PERCENT         = "cache.ttl.jitter.percent";
+
+    public static final String CACHE_WRITEBEHIND_ENABLE         = "cache.writebehind.enable";
+    public static final String CACHE_WRITEBEHIND_BATCH_SIZE     = "cache.writebehind.batch.size";
+    public static final String CACHE_WRITEBEHIND_FLUSH_MILLIS   = "cache.writebehind.flush.millis";
+
+    public static final String CACHE_WARMUP_ENABLE              = "cache.warmup.enable";
+    public static final String CACHE_WARMUP_PATTERNS            = "cache.warmup.patterns";
+    public static final String CACHE_WARMUP_HASH_PATTERNS       = "cache.warmup.hash.patterns";
+    public static final String CACHE_WARMUP_THREADS             = "cache.warmup.threads";
+    public static final String CACHE_WARMUP_BATCH_SIZE          = "cache.warmup.batch.size";
+    public static final String CACHE_WARMUP_SCAN_COUNT          = "cache.warmup.scan.count";
+    public static final String CACHE_WARMUP_MAX_MILLIS          = "cache.warmup.max.millis";
+    public static final String CACHE_WARMUP_MAX_BYTES           = "cache.warmup.max.bytes";
+
+    public static final String CACHE_STATS_LATENCY_ENABLE       = "cache.stats.latency.enable";
+
+
+    public static final String CACHE_SINGLEFLIGHT_ENABLE        = "cache.singleflight.enable";
+    public static final String CACHE_SINGLEFLIGHT_TIMEOUT_MILLIS = "cache.singleflight.timeout.millis";
+
+
+    public static final String CACHE_INVALIDATION_ENABLE        = "cache.invalidation.enable";
+    public static final String CACHE_INVALIDATION_CHANNEL       = "cache.invalidation.channel";
+    public static final String CACHE_INVALIDATION_BATCH_SIZE    = "cache.invalidation.batch.size";
+    public static final String CACHE_INVALIDATION_BATCH_MILLIS  = "cache.invalidation.batch.millis";
+
+    public static final String DEFAULT_INVALIDATION_CHANNEL     = "cache:invalidation";
 
 
     public static final String CACHE_REDIS_CONNECTION_MAX_TOTAL = "cache.redis.connection.max.total";
@@ -22,6 +96,7 @@ public class Constant {
     public static final String CACHE_REDIS_TYPE                 = "cache.redis.type";
     public static final String CACHE_REDIS_NODES                = "cache.redis.nodes";
     public static final String CACHE_REDIS_PASSWORD             = "cache.redis.password";
+    public static final String CACHE_REDIS_BATCH_SIZE           = "cache.redis.batch.size";
 
 
     public static final String FIFO       = "fifo";
@@ -29,6 +104,11 @@ public class Constant {
     public static final String LFU        = "lfu";
     public static final String CAFFEINE   = "caffeine";
     public static final String GUAVA      = "guava";
+    public static final String OFFHEAP    = "offheap";
+
+
+    public static final String JSON       = "json";
+    public static final String OBJECT     = "object";
 
 
     public static final String STANDALONE = "standalone";
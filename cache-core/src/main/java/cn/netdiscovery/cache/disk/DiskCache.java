@@ -0,0 +1,501 @@
+package cn.netdiscovery.cache.disk;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 一级缓存和Redis之间的磁盘缓存，重启之后仍然可以使用，避免刚启动时大量请求直接访问Redis
+ * 数据以追加的方式写入内存映射的segment文件，内存中只保存key到文件位置的索引，启动时扫描所有segment重建索引；
+ * segment数量超过上限时，把最早的segment中仍然有效的数据复制到当前的segment，然后删除这个文件
+ * 每条数据保存的是绝对的过期时间，重启之后不会读到已经过期的数据
+ * 读取使用读锁，多个线程可以同时读取；目录通过文件锁独占，同一台机器上的其他进程不能使用同一个目录
+ * 目录只允许当前用户访问，已经存在并且属于其他用户的目录不会被使用，防止其他用户读取或者伪造缓存的数据
+ */
+@Slf4j
+public class DiskCache {
+
+    private static final String SUFFIX = ".seg";
+    private static final String LOCK_FILE = ".lock";
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4; // keyLength, valueLength, expireAt, crc
+    private static final int TOMBSTONE = -1;
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> index = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final RandomAccessFile lockFile;
+    private final FileLock fileLock;
+
+    private Segment active;
+
+    /**
+     * @param segmentSize 每个segment文件的大小，大于segment的数据不会被缓存
+     */
+    public DiskCache(String path, int segmentSize, int maxSegments) throws IOException {
+
+        this.dir = new File(path);
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+
+        checkDir(dir);
+
+        //多个进程同时追加同一个segment会互相覆盖数据
+        lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+        FileLock fileLock = null;
+        try {
+            fileLock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            //同一个进程中已经有DiskCache使用这个目录
+        }
+        if (fileLock == null) {
+            lockFile.close();
+            throw new IOException("dir is used by another disk cache: " + path);
+        }
+        this.fileLock = fileLock;
+
+        try {
+            load();
+        } catch (IOException e) {
+            releaseLock();
+            throw e;
+        }
+    }
+
+    /**
+     * 目录不存在时创建为只有当前用户可以访问，已经存在时必须属于当前用户
+     */
+    private static void checkDir(File dir) throws IOException {
+
+        Path path = dir.toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!dir.exists()) {
+            if (posix) {
+                Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else if (!dir.mkdirs()) {
+                throw new IOException("can not create dir: " + dir);
+            }
+            return;
+        }
+
+        if (!dir.isDirectory()) {
+            throw new IOException("not a dir: " + dir);
+        }
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        if (!user.equals(Files.getOwner(path))) {
+            throw new IOException("dir is owned by another user: " + dir);
+        }
+        if (posix) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+
+    /**
+     * 读取没有过期的数据，不存在时返回null
+     */
+    public Entry get(String key) {
+
+        Location location;
+        lock.readLock().lock();
+        try {
+            location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            if (!location.isExpired(System.currentTimeMillis())) {
+                Segment segment = segments.get(location.segment);
+                ByteBuffer buffer = segment.buffer.duplicate();
+                buffer.position(location.offset + HEADER_SIZE + location.keyLength);
+                byte[] value = new byte[location.valueLength];
+                buffer.get(value);
+                return new Entry(new String(value, StandardCharsets.UTF_8), location.expireAt);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        //读锁不能升级，换成写锁之后索引没有变化时才删除过期的数据
+        lock.writeLock().lock();
+        try {
+            index.remove(key, location);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * @param expireAt 绝对的过期时间，小于等于0表示不过期
+     */
+    public void put(String key, String value, long expireAt) {
+
+        if (key == null || value == null) {
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            append(key, bytes, expireAt);
+        } catch (IOException e) {
+            log.error("disk cache put error, key: {}", key, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入删除标记，重启之后也不会再读到之前的数据
+     */
+    public void remove(String... keys) {
+
+        lock.writeLock().lock();
+        try {
+            for (String key:keys) {
+                if (index.remove(key) != null) {
+                    try {
+                        append(key, null, 0);
+                    } catch (IOException e) {
+                        log.error("disk cache remove error, key: {}", key, e);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            for (Segment segment:segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+
+            try {
+                active = createSegment(1);
+            } catch (IOException e) {
+                log.error("disk cache clear error", e);
+                active = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把还没有写回磁盘的数据刷到文件中，并释放目录的文件锁
+     */
+    public void close() {
+
+        lock.writeLock().lock();
+        try {
+            for (Segment segment:segments.values()) {
+                segment.buffer.force();
+            }
+            releaseLock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void releaseLock() {
+
+        try {
+            if (fileLock.isValid()) {
+                fileLock.release();
+            }
+            lockFile.close();
+        } catch (IOException e) {
+            log.error("disk cache release lock error, dir: {}", dir, e);
+        }
+    }
+
+    private void load() throws IOException {
+
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file:files) {
+                String name = file.getName();
+                try {
+                    int id = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+                    segments.put(id, openSegment(id, file));
+                } catch (NumberFormatException e) {
+                    log.warn("ignore disk cache file: {}", name);
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (Segment segment:segments.values()) {
+            scan(segment, now);
+        }
+
+        active = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+    }
+
+    /**
+     * 扫描segment重建索引，遇到没有写完整的数据时停止
+     */
+    private void scan(Segment segment, long now) {
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int pos = 0;
+        while (pos + HEADER_SIZE <= segmentSize) {
+            buffer.position(pos);
+            int keyLength = buffer.getInt();
+            int valueLength = buffer.getInt();
+            long expireAt = buffer.getLong();
+            int crc = buffer.getInt();
+            if (keyLength <= 0 || valueLength < TOMBSTONE
+                    || pos + HEADER_SIZE + keyLength + Math.max(valueLength, 0) > segmentSize) {
+                break;
+            }
+
+            byte[] data = new byte[keyLength + Math.max(valueLength, 0)];
+            buffer.get(data);
+            if (crc(data, expireAt) != crc) {
+                break;
+            }
+
+            String key = new String(data, 0, keyLength, StandardCharsets.UTF_8);
+            if (valueLength == TOMBSTONE) {
+                index.remove(key);
+            } else {
+                Location location = new Location(segment.id, pos, keyLength, valueLength, expireAt);
+                if (location.isExpired(now)) {
+                    index.remove(key);
+                } else {
+                    index.put(key, location);
+                }
+            }
+            pos += HEADER_SIZE + data.length;
+        }
+        segment.position = pos;
+    }
+
+    private void append(String key, byte[] value, long expireAt) throws IOException {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + keyBytes.length + (value != null ? value.length : 0);
+        if (length > segmentSize) {
+            index.remove(key);
+            return;
+        }
+
+        if (active == null) {
+            active = createSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+        }
+        if (active.position + length > segmentSize) {
+            active = createSegment(active.id + 1);
+            compact();
+            //复制过来的数据占满了新的segment时再换一个空的segment，超过上限的segment在下一次切换时回收
+            if (active.position + length > segmentSize) {
+                active = createSegment(active.id + 1);
+            }
+        }
+        write(key, keyBytes, value, expireAt);
+    }
+
+    /**
+     * 写入当前的segment，调用之前需要确认剩余的空间足够
+     */
+    private void write(String key, byte[] keyBytes, byte[] value, long expireAt) {
+
+        byte[] data = new byte[keyBytes.length + (value != null ? value.length : 0)];
+        System.arraycopy(keyBytes, 0, data, 0, keyBytes.length);
+        if (value != null) {
+            System.arraycopy(value, 0, data, keyBytes.length, value.length);
+        }
+
+        int offset = active.position;
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(offset);
+        buffer.putInt(keyBytes.length)
+                .putInt(value != null ? value.length : TOMBSTONE)
+                .putLong(expireAt)
+                .putInt(crc(data, expireAt))
+                .put(data);
+        active.position += HEADER_SIZE + data.length;
+
+        if (value != null) {
+            index.put(key, new Location(active.id, offset, keyBytes.length, value.length, expireAt));
+        }
+    }
+
+    /**
+     * segment数量超过上限时，把最早的segment中仍然有效的数据复制到当前的segment之后删除
+     * 复制时直接写入当前的segment，不会再切换segment
+     */
+    private void compact() {
+
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.firstEntry().getValue();
+            long now = System.currentTimeMillis();
+
+            List<String> keys = new ArrayList<>();
+            Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Location> entry = iterator.next();
+                Location location = entry.getValue();
+                if (location.segment == oldest.id) {
+                    if (location.isExpired(now)) {
+                        iterator.remove();
+                    } else {
+                        keys.add(entry.getKey());
+                    }
+                }
+            }
+
+            segments.remove(oldest.id);
+            for (String key:keys) {
+                Location location = index.get(key);
+                ByteBuffer buffer = oldest.buffer.duplicate();
+                buffer.position(location.offset + HEADER_SIZE);
+                byte[] keyBytes = new byte[location.keyLength];
+                byte[] value = new byte[location.valueLength];
+                buffer.get(keyBytes).get(value);
+
+                //当前的segment写满时剩下的数据直接丢弃
+                if (active.position + HEADER_SIZE + keyBytes.length + value.length > segmentSize) {
+                    index.remove(key);
+                } else {
+                    write(key, keyBytes, value, location.expireAt);
+                }
+            }
+            oldest.delete();
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+
+        Segment segment = openSegment(id, new File(dir, String.format("%08d%s", id, SUFFIX)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment openSegment(int id, File file) throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(id, file, buffer);
+        }
+    }
+
+    private static int crc(byte[] data, long expireAt) {
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        for (int i = 0; i < 8; i++) {
+            crc32.update((int) (expireAt >>> (i * 8)));
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * 磁盘缓存中的值以及绝对的过期时间
+     */
+    public static class Entry {
+
+        private final String value;
+        private final long expireAt;
+
+        private Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * 绝对的过期时间，小于等于0表示不过期
+         */
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+
+    private static class Location {
+
+        private final int segment;
+        private final int offset;
+        private final int keyLength;
+        private final int valueLength;
+        private final long expireAt;
+
+        private Location(int segment, int offset, int keyLength, int valueLength, long expireAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt > 0 && now >= expireAt;
+        }
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int position;
+
+        private Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private void delete() {
+
+            if (!file.delete()) {
+                log.warn("can not delete disk cache file: {}", file);
+            }
+        }
+    }
+}
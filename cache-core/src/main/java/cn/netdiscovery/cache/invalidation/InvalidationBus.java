@@ -0,0 +1,188 @@
+package cn.netdiscovery.cache.invalidation;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import cn.netdiscovery.cache.redis.IRedisService;
+import com.safframework.tony.common.utils.Preconditions;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.JedisPubSub;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Redis发布订阅的一级缓存失效通道
+ * 本节点的写操作把key放入队列，按批量大小或者时间间隔合并成一条消息发布到channel，
+ * 其他节点收到消息后清除自己RxCache中的这些key，消息中带有节点id，自己发出的消息会被忽略
+ */
+@Slf4j
+public class InvalidationBus implements Closeable {
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final IRedisService redis;
+    private final String channel;
+    private final int batchSize;
+    private final InvalidationListener listener;
+
+    private final String origin = UUID.randomUUID().toString();
+
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final ScheduledExecutorService flusher;
+    private final Thread subscriber;
+
+    private volatile JedisPubSub pubSub;
+    private volatile boolean running = true;
+    private volatile boolean subscribed = false;
+
+    public InvalidationBus(IRedisService redis, String channel, int batchSize, long batchMillis, InvalidationListener listener) {
+
+        this.redis = redis;
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.listener = listener;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+
+        subscriber = new Thread(this::subscribeLoop, "cache-invalidation-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * 通知其他节点这些key已经失效，消息会被合并后异步发送
+     */
+    public void publish(String... keys) {
+
+        if (keys == null || keys.length == 0 || !running) {
+            return;
+        }
+
+        int count = 0;
+        for (String key:keys) {
+            if (key != null) {
+                pending.offer(key);
+                count++;
+            }
+        }
+
+        if (pendingCount.addAndGet(count) >= batchSize) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * 把队列中的key按batchSize分批发布出去
+     */
+    public void flush() {
+
+        while (!pending.isEmpty()) {
+
+            Set<String> keys = new LinkedHashSet<>();
+            String key;
+            while (keys.size() < batchSize && (key = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                keys.add(key);
+            }
+
+            if (keys.isEmpty()) {
+                return;
+            }
+
+            String message = SerializableUtils.toJson(new InvalidationMessage(origin, new ArrayList<>(keys)));
+            if (redis.publish(channel, message) == null) {
+                log.error("publish invalidation error, channel: {}, keys: {}", channel, keys.size());
+            }
+        }
+    }
+
+    private void subscribeLoop() {
+
+        while (running) {
+
+            pubSub = new InvalidationPubSub();
+            try {
+                redis.subscribe(pubSub, channel);
+            } catch (Exception e) {
+                log.error("subscribe invalidation error, channel: {}", channel, e);
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void onMessage(String message) {
+
+        InvalidationMessage invalidation;
+        try {
+            invalidation = SerializableUtils.fromJson(message, InvalidationMessage.class);
+        } catch (Exception e) {
+            log.error("invalid invalidation message: {}", message, e);
+            return;
+        }
+
+        if (invalidation == null || origin.equals(invalidation.getOrigin()) || Preconditions.isBlank(invalidation.getKeys())) {
+            return;
+        }
+
+        listener.invalidate(invalidation.getKeys().toArray(new String[0]));
+    }
+
+    @Override
+    public void close() {
+
+        flush();
+        running = false;
+        flusher.shutdown();
+
+        JedisPubSub current = pubSub;
+        if (current != null && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+        subscriber.interrupt();
+    }
+
+    private class InvalidationPubSub extends JedisPubSub {
+
+        @Override
+        public void onMessage(String channel, String message) {
+            InvalidationBus.this.onMessage(message);
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+
+            //重新订阅之前可能漏掉了其他节点的失效消息，只能清空本地缓存
+            if (subscribed) {
+                listener.invalidateAll();
+            }
+            subscribed = true;
+        }
+    }
+}
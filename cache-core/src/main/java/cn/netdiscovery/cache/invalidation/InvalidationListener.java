@@ -0,0 +1,17 @@
+package cn.netdiscovery.cache.invalidation;
+
+/**
+ * 收到其他节点的失效消息后的回调
+ */
+public interface InvalidationListener {
+
+    /**
+     * 清除本地缓存中的这些key
+     */
+    void invalidate(String... keys);
+
+    /**
+     * 订阅断开期间可能丢失了消息，清除整个本地缓存
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,29 @@
+package cn.netdiscovery.cache.invalidation;
+
+import java.util.List;
+
+/**
+ * 在节点之间广播的失效消息，一条消息携带一批key
+ */
+public class InvalidationMessage {
+
+    private String origin; // 发送消息的节点id，用于忽略自己发出的消息
+
+    private List<String> keys;
+
+    public InvalidationMessage() {
+    }
+
+    public InvalidationMessage(String origin, List<String> keys) {
+        this.origin = origin;
+        this.keys = keys;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+}
@@ -0,0 +1,107 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一级缓存的准入过滤(TinyLFU)，只有最近访问次数达到threshold的key才会写入一级缓存，
+ * 避免一次性扫描大量的key时把真正的热点数据挤出去，和使用哪一种Memory无关
+ * 同时记录访问频率最高的topN个key
+ */
+public class AdmissionFilter {
+
+    private final FrequencySketch sketch;
+    private final int threshold;
+    private final int topN;
+
+    private final Map<String, Integer> hotKeys = new HashMap<>();
+    private volatile int hotMin;
+    private volatile int resetCount;
+
+    public AdmissionFilter(int maximumSize, int threshold, int topN) {
+
+        this.sketch = new FrequencySketch(maximumSize);
+        this.threshold = threshold;
+        this.topN = topN;
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void record(String key) {
+
+        sketch.increment(key);
+        if (topN <= 0) {
+            return;
+        }
+
+        //计数器衰减之后hotMin还是衰减之前的值，需要进入同步块更新一次，否则之后的热点key都进不来
+        int frequency = sketch.frequency(key);
+        if (frequency < hotMin && resetCount == sketch.getResetCount()) {
+            return;
+        }
+
+        synchronized (hotKeys) {
+            //计数器衰减之后，热点key记录的频率也同样衰减
+            if (resetCount != sketch.getResetCount()) {
+                resetCount = sketch.getResetCount();
+                hotKeys.replaceAll((k, v) -> v >>> 1);
+                hotMin = hotKeys.size() < topN ? 0 : hotKeys.get(minKey());
+            }
+            if (frequency < hotMin) {
+                return;
+            }
+
+            hotKeys.put(key, frequency);
+            if (hotKeys.size() > topN) {
+                hotKeys.remove(minKey());
+            }
+            hotMin = hotKeys.size() < topN ? 0 : hotKeys.get(minKey());
+        }
+    }
+
+    /**
+     * key是否可以写入一级缓存
+     */
+    public boolean admit(String key) {
+
+        return sketch.frequency(key) >= threshold;
+    }
+
+    /**
+     * 按访问频率从高到低返回热点key以及估算的访问次数
+     */
+    public Map<String, Integer> getHotKeys() {
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        synchronized (hotKeys) {
+            for (Map.Entry<String, Integer> entry:hotKeys.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+        }
+        entries.sort((a, b) -> b.getValue() - a.getValue());
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry:entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private String minKey() {
+
+        String minKey = null;
+        int min = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry:hotKeys.entrySet()) {
+            if (entry.getValue() < min) {
+                min = entry.getValue();
+                minKey = entry.getKey();
+            }
+        }
+        return minKey;
+    }
+}
@@ -0,0 +1,34 @@
+package cn.netdiscovery.cache.local;
+
+/**
+ * object模式下，一级缓存命中时如何把反序列化后的对象交给调用者
+ */
+public enum CopyPolicy {
+
+    /**
+     * 直接返回缓存中的对象，调用者不能修改返回的对象
+     */
+    NONE,
+
+    /**
+     * 缓存json的语法树，每次命中时从语法树构造一个新的对象，不需要再解析字符串
+     */
+    COPY,
+
+    /**
+     * 只缓存不可变的对象(String、数值、Boolean、枚举等)，其他类型每次命中时重新解析json
+     */
+    IMMUTABLE;
+
+    public static CopyPolicy parse(String value) {
+
+        if (value != null) {
+            for (CopyPolicy policy:values()) {
+                if (policy.name().equalsIgnoreCase(value.trim())) {
+                    return policy;
+                }
+            }
+        }
+        return NONE;
+    }
+}
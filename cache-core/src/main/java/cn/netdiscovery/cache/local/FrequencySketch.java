@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.netdiscovery.cache.local;
+
+/**
+ * 4-bit Count-Min Sketch，估算key最近被访问的次数，每个计数器最大为15
+ * 累计的访问次数达到sampleSize之后，所有计数器减半(衰减)，使访问频率能反映最近的访问情况
+ * 为了不在读取路径上加锁，并发更新时可能会丢失少量计数，对于估算频率来说可以接受
+ * 计数器的布局、hash种子和衰减方式来自Caffeine(https://github.com/ben-manes/caffeine)的
+ * com.github.benmanes.caffeine.cache.FrequencySketch，按Apache License 2.0使用
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+
+    private volatile int size;
+    private volatile int resetCount;
+
+    /**
+     * @param maximumSize 预计需要统计的key的数量
+     */
+    public FrequencySketch(int maximumSize) {
+
+        int capacity = tableSizeFor(Math.max(maximumSize, 16));
+        table = new long[capacity];
+        tableMask = capacity - 1;
+        sampleSize = 10 * capacity;
+    }
+
+    /**
+     * 返回key被访问次数的估算值
+     */
+    public int frequency(String key) {
+
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * key的访问次数加1
+     */
+    public void increment(String key) {
+
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 计数器衰减的次数
+     */
+    public int getResetCount() {
+        return resetCount;
+    }
+
+    private boolean incrementAt(int i, int j) {
+
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        if ((table[i] & mask) != mask) {
+            table[i] += (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = size >>> 1;
+        resetCount++;
+    }
+
+    private int indexOf(int item, int i) {
+
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int tableSizeFor(int n) {
+
+        int size = Integer.highestOneBit(n - 1) << 1;
+        return size > 0 ? Math.min(size, 1 << 30) : 1 << 30;
+    }
+}
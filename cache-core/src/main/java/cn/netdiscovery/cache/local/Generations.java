@@ -0,0 +1,60 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按key记录一级缓存的版本号，key被写入或者失效时版本号加1
+ * 从Redis读取之前先记下版本号，回设一级缓存时版本号已经变化，说明读取到的可能是旧值，放弃回设
+ * 版本号按key的hash分段保存，不同的key可能共用一个计数器，冲突时只会多放弃一次回设，不会读到旧值
+ */
+public class Generations {
+
+    private final AtomicLongArray stripes;
+    private final int mask;
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * @param size 计数器的数量，会调整为2的幂
+     */
+    public Generations(int size) {
+
+        int capacity = 1;
+        while (capacity < size && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        stripes = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * key当前的版本号
+     */
+    public long get(String key) {
+
+        return epoch.get() + stripes.get(index(key));
+    }
+
+    /**
+     * key被写入或者失效
+     */
+    public void increment(String key) {
+
+        stripes.incrementAndGet(index(key));
+    }
+
+    /**
+     * 一级缓存被清空，所有key的版本号都发生变化
+     */
+    public void incrementAll() {
+
+        epoch.incrementAndGet();
+    }
+
+    private int index(String key) {
+
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+}
@@ -0,0 +1,60 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一级缓存中的hash，按field保存
+ * complete为true表示保存了整个hash，此时不存在的field可以直接判断为不存在；
+ * 否则只保存了部分field，缺少的field需要到Redis中读取
+ */
+public class HashValue {
+
+    private final Map<String, String> fields;
+
+    private volatile boolean complete;
+
+    public HashValue(Map<String, String> fields, boolean complete) {
+
+        this.fields = new ConcurrentHashMap<>(fields);
+        this.complete = complete;
+    }
+
+    public String get(String field) {
+        return fields.get(field);
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    /**
+     * 返回整个hash的副本
+     */
+    public Map<String, String> toMap() {
+        return new HashMap<>(fields);
+    }
+
+    public void put(String field, String value) {
+
+        if (field != null && value != null) {
+            fields.put(field, value);
+        }
+    }
+
+    /**
+     * 移除某个field之后不能再确定整个hash是完整的
+     */
+    public void remove(String field) {
+
+        complete = false;
+        if (field != null) {
+            fields.remove(field);
+        }
+    }
+}
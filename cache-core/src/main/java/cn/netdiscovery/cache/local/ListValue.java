@@ -0,0 +1,164 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * 一级缓存中的List，读取时不加锁，写入时复制一份新的List(读多写少)
+ * 下标的含义和Redis的LRANGE、LINDEX、LTRIM一致，负数表示从尾部开始计算
+ */
+public class ListValue {
+
+    private volatile List<String> items;
+
+    public ListValue(List<String> items) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * 返回[start, end]之间的元素
+     */
+    public List<String> range(long start, long end) {
+
+        List<String> snapshot = items;
+        int[] range = normalize(snapshot.size(), start, end);
+        return range != null ? new ArrayList<>(snapshot.subList(range[0], range[1] + 1)) : new ArrayList<>();
+    }
+
+    public String index(long index) {
+
+        List<String> snapshot = items;
+        if (index < 0) {
+            index += snapshot.size();
+        }
+        return index >= 0 && index < snapshot.size() ? snapshot.get((int) index) : null;
+    }
+
+    /**
+     * 和LPUSH一样依次插入到头部，返回插入之后的长度
+     */
+    public synchronized int lpush(String... values) {
+
+        List<String> list = new ArrayList<>(items.size() + values.length);
+        for (int i = values.length - 1; i >= 0; i--) {
+            list.add(values[i]);
+        }
+        list.addAll(items);
+        return replace(list);
+    }
+
+    /**
+     * 依次插入到尾部，返回插入之后的长度
+     */
+    public synchronized int rpush(String... values) {
+
+        List<String> list = new ArrayList<>(items.size() + values.length);
+        list.addAll(items);
+        Collections.addAll(list, values);
+        return replace(list);
+    }
+
+    public synchronized String lpop() {
+
+        if (items.isEmpty()) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(items);
+        String value = list.remove(0);
+        replace(list);
+        return value;
+    }
+
+    public synchronized String rpop() {
+
+        if (items.isEmpty()) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(items);
+        String value = list.remove(list.size() - 1);
+        replace(list);
+        return value;
+    }
+
+    /**
+     * 和LREM一样，count大于0时从头部开始删除，小于0时从尾部开始删除，等于0时删除所有，返回删除的数量
+     */
+    public synchronized int lrem(long count, String value) {
+
+        List<String> list = new ArrayList<>(items);
+        long limit = count == 0 ? Long.MAX_VALUE : Math.abs(count);
+        int removed = 0;
+        if (count >= 0) {
+            Iterator<String> iterator = list.iterator();
+            while (iterator.hasNext() && removed < limit) {
+                if (iterator.next().equals(value)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        } else {
+            ListIterator<String> iterator = list.listIterator(list.size());
+            while (iterator.hasPrevious() && removed < limit) {
+                if (iterator.previous().equals(value)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+
+        if (removed > 0) {
+            replace(list);
+        }
+        return removed;
+    }
+
+    /**
+     * 只保留[start, end]之间的元素
+     */
+    public synchronized void ltrim(long start, long end) {
+
+        List<String> snapshot = items;
+        int[] range = normalize(snapshot.size(), start, end);
+        replace(range != null ? new ArrayList<>(snapshot.subList(range[0], range[1] + 1)) : new ArrayList<>());
+    }
+
+    public List<String> toList() {
+        return items;
+    }
+
+    private int replace(List<String> list) {
+
+        items = Collections.unmodifiableList(list);
+        return list.size();
+    }
+
+    /**
+     * 按照Redis的规则把下标转换成[0, size)之间的范围，范围为空时返回null
+     */
+    private static int[] normalize(int size, long start, long end) {
+
+        if (start < 0) {
+            start += size;
+        }
+        if (end < 0) {
+            end += size;
+        }
+        if (start < 0) {
+            start = 0;
+        }
+        if (end >= size) {
+            end = size - 1;
+        }
+        if (start > end || start >= size) {
+            return null;
+        }
+        return new int[]{(int) start, (int) end};
+    }
+}
@@ -0,0 +1,406 @@
+package cn.netdiscovery.cache.local;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import cn.netdiscovery.cache.redis.TtlValue;
+import cn.netdiscovery.cache.stats.CacheStats;
+import com.google.gson.JsonElement;
+import com.safframework.rxcache.RxCache;
+import com.safframework.rxcache.domain.Record;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 对RxCache的封装，一级缓存中统一保存LocalValue
+ * json模式下每次命中都会重新解析json，object模式下按key+目标类型缓存反序列化之后的对象，
+ * 命中时只需要一次hash查找
+ * 从Redis或者磁盘回设一级缓存时需要带上读取之前的版本号，期间key被写入或者失效过时放弃回设，避免旧值覆盖新值
+ */
+public class LocalCache {
+
+    private final RxCache rxCache;
+    private final boolean objectMode;
+    private final CopyPolicy copyPolicy;
+    private final long maxTtlMillis;
+    private final NegativeCache negativeCache;
+    private final boolean detached;
+    private final WeightedMemory weightedMemory;
+    private final Generations generations;
+    private final CacheStats stats;
+
+    /**
+     * @param maxTtlMillis 一级缓存中数据的最长存活时间，小于等于0表示不限制
+     * @param negativeCache 记录Redis中不存在的key，为null表示不开启
+     * @param detached 每次读取返回的都是新的对象(例如堆外内存)，修改读取到的对象不会更新一级缓存
+     * @param weightedMemory 按权重限制大小时原地修改的值需要重新计算权重，为null表示不限制
+     * @param generationStripes 版本号计数器的数量
+     * @param stats 记录回设和失效的次数
+     */
+    public LocalCache(RxCache rxCache, boolean objectMode, CopyPolicy copyPolicy, long maxTtlMillis, NegativeCache negativeCache, boolean detached, WeightedMemory weightedMemory, int generationStripes, CacheStats stats) {
+
+        this.rxCache = rxCache;
+        this.objectMode = objectMode;
+        this.copyPolicy = copyPolicy;
+        this.maxTtlMillis = maxTtlMillis;
+        this.negativeCache = negativeCache;
+        this.detached = detached;
+        this.weightedMemory = weightedMemory;
+        this.generations = new Generations(generationStripes);
+        this.stats = stats;
+    }
+
+    /**
+     * key当前的版本号，从Redis读取之前调用，回设时传入
+     */
+    public long generation(String key) {
+
+        return generations.get(key);
+    }
+
+    /**
+     * 获取一级缓存中的值，不存在或者已经过期时返回null
+     */
+    public <T> T get(String key, Type type) {
+
+        LocalValue value = getValue(key);
+        return value != null ? decode(value, type) : null;
+    }
+
+    public LocalValue getValue(String key) {
+
+        Object entry = getEntry(key);
+        return entry instanceof LocalValue ? (LocalValue) entry : null;
+    }
+
+    /**
+     * 获取一级缓存中的hash，不存在或者key保存的不是hash时返回null
+     */
+    public HashValue getHash(String key) {
+
+        Object entry = getEntry(key);
+        return entry instanceof HashValue ? (HashValue) entry : null;
+    }
+
+    /**
+     * 保存从Redis中读取到的整个hash
+     */
+    public void putHash(String key, Map<String, String> map, long expireMillis, long generation) {
+
+        backfill(key, generation, () -> save(key, new HashValue(map, true), expireMillis));
+    }
+
+    /**
+     * 保存从Redis中读取到的部分field，一级缓存中已经有这个hash时合并到已有的hash中
+     */
+    public void putHashFields(String key, Map<String, String> fields, long expireMillis, long generation) {
+
+        backfill(key, generation, () -> {
+            HashValue hash = getHash(key);
+            if (hash == null) {
+                save(key, new HashValue(fields, false), expireMillis);
+            } else {
+                fields.forEach(hash::put);
+                if (detached) {
+                    save(key, hash, expireMillis);
+                } else {
+                    reweigh(key, hash);
+                }
+            }
+        });
+    }
+
+    /**
+     * 写入Redis之后更新一级缓存中已有hash的field，一级缓存中没有这个hash时清除这个key
+     */
+    public void updateHash(String key, String... fieldsAndValues) {
+
+        generations.increment(key);
+        HashValue hash = getHash(key);
+        //堆外内存中读取到的是副本，不知道剩余的过期时间，无法写回，直接清除
+        if (hash == null || detached) {
+            remove(key);
+            return;
+        }
+
+        for (int i = 0; i + 1 < fieldsAndValues.length; i += 2) {
+            hash.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        reweigh(key, hash);
+    }
+
+    /**
+     * 获取一级缓存中的set，不存在或者key保存的不是set时返回null
+     */
+    public SetValue getSet(String key) {
+
+        Object entry = getEntry(key);
+        return entry instanceof SetValue ? (SetValue) entry : null;
+    }
+
+    public void putSet(String key, SetValue set, long expireMillis, long generation) {
+
+        backfill(key, generation, () -> save(key, set, expireMillis));
+    }
+
+    /**
+     * 写入Redis之后更新一级缓存中已有的set，update返回false表示更新之后和Redis的结果不一致，此时清除这个key
+     */
+    public void updateSet(String key, Predicate<SetValue> update) {
+
+        generations.increment(key);
+        SetValue set = getSet(key);
+        if (set == null || detached || !update.test(set)) {
+            remove(key);
+        } else {
+            reweigh(key, set);
+        }
+    }
+
+    /**
+     * 根据一级缓存中已有的数据判断key在Redis中是否存在，无法判断时返回null
+     * 只根据已缓存的值判断存在，负缓存不作为不存在的依据，expire、setbit、pfadd等写操作不会经过一级缓存
+     */
+    public Boolean exists(String key) {
+
+        Object entry = getEntry(key);
+        if (entry instanceof ListValue) {
+            //List被删空之后Redis中的key也被删除了
+            return ((ListValue) entry).size() > 0 ? Boolean.TRUE : null;
+        }
+        if (entry != null) {
+            return Boolean.TRUE;
+        }
+        return null;
+    }
+
+    /**
+     * 获取一级缓存中的List，不存在或者key保存的不是List时返回null
+     */
+    public ListValue getList(String key) {
+
+        Object entry = getEntry(key);
+        return entry instanceof ListValue ? (ListValue) entry : null;
+    }
+
+    public void putList(String key, ListValue list, long expireMillis, long generation) {
+
+        backfill(key, generation, () -> save(key, list, expireMillis));
+    }
+
+    /**
+     * 写入Redis之后更新一级缓存中已有的List，update返回false表示更新之后和Redis的结果不一致，此时清除这个key
+     */
+    public void updateList(String key, Predicate<ListValue> update) {
+
+        generations.increment(key);
+        ListValue list = getList(key);
+        if (list == null || detached || !update.test(list)) {
+            remove(key);
+        } else {
+            reweigh(key, list);
+        }
+    }
+
+    /**
+     * 保存调用者写入的对象，expireMillis小于等于0表示不过期
+     */
+    public <T> void put(String key, T value, long expireMillis) {
+
+        put(key, value, value != null ? value.getClass() : null, expireMillis);
+    }
+
+    /**
+     * 保存对象，object模式下对象会按type缓存，之后用相同的type读取时不需要再解析json
+     */
+    public <T> void put(String key, T value, Type type, long expireMillis) {
+
+        LocalValue localValue = new LocalValue(SerializableUtils.toJson(value));
+        if (objectMode && value != null && type != null && !(value instanceof String)) {
+            if (copyPolicy == CopyPolicy.NONE || (copyPolicy == CopyPolicy.IMMUTABLE && isImmutable(value))) {
+                localValue.putDecoded(type, value);
+            }
+        }
+        generations.increment(key);
+        save(key, localValue, expireMillis);
+    }
+
+    /**
+     * 保存从Redis中读取到的json，expireMillis小于等于0表示不过期
+     */
+    public void putJson(String key, String json, long expireMillis, long generation) {
+
+        backfill(key, generation, () -> save(key, new LocalValue(json), expireMillis));
+    }
+
+    /**
+     * 根据Redis中剩余的过期时间(PTTL)计算一级缓存的过期时间，返回小于0表示key在Redis中已经不存在，不需要回设
+     */
+    public static long expireMillis(long ttlMillis) {
+
+        if (ttlMillis == TtlValue.NO_EXPIRE) {
+            return 0;
+        }
+        return ttlMillis > 0 ? ttlMillis : -1;
+    }
+
+    /**
+     * key是否已知在Redis中不存在
+     */
+    public boolean isMissing(String key) {
+
+        return negativeCache != null && negativeCache.contains(key);
+    }
+
+    /**
+     * 记录key在Redis中不存在
+     */
+    public void putMissing(String key, long generation) {
+
+        if (negativeCache != null) {
+            backfill(key, generation, () -> negativeCache.put(key));
+        }
+    }
+
+    /**
+     * 因为key不存在而省去的Redis读取次数
+     */
+    public long getMissingHits() {
+
+        return negativeCache != null ? negativeCache.getHitCount() : 0;
+    }
+
+    public void remove(String... keys) {
+
+        for (String key:keys) {
+            generations.increment(key);
+        }
+        stats.invalidate(keys.length);
+        rxCache.remove(keys);
+        if (negativeCache != null) {
+            negativeCache.remove(keys);
+        }
+    }
+
+    public void clear() {
+
+        generations.incrementAll();
+        stats.invalidate(1);
+        rxCache.clear();
+        if (negativeCache != null) {
+            negativeCache.clear();
+        }
+    }
+
+    /**
+     * 版本号没有变化时才回设，回设之后再检查一次，期间key被写入或者失效过时撤销这次回设
+     * 撤销时可能把并发写入的新值也一起清除，只会多一次未命中，不会留下旧值
+     */
+    private void backfill(String key, long generation, Runnable save) {
+
+        if (generations.get(key) != generation) {
+            stats.backfill(true);
+            return;
+        }
+        save.run();
+        if (generations.get(key) != generation) {
+            rxCache.remove(key);
+            if (negativeCache != null) {
+                negativeCache.remove(key);
+            }
+            stats.backfill(true);
+            return;
+        }
+        stats.backfill(false);
+    }
+
+    private void reweigh(String key, Object value) {
+
+        if (weightedMemory != null) {
+            weightedMemory.reweigh(key, value);
+        }
+    }
+
+    private Object getEntry(String key) {
+
+        Record<Object> record = rxCache.get(key, Object.class);
+        if (record == null || record.isExpired()) {
+            return null;
+        }
+        return record.getData();
+    }
+
+    private void save(String key, Object value, long expireMillis) {
+
+        if (negativeCache != null) {
+            negativeCache.remove(key);
+        }
+
+        if (maxTtlMillis > 0 && (expireMillis <= 0 || expireMillis > maxTtlMillis)) {
+            expireMillis = maxTtlMillis;
+        }
+
+        if (value instanceof LocalValue) {
+            ((LocalValue) value).setExpireMillis(expireMillis);
+        }
+
+        if (expireMillis > 0) {
+            rxCache.save(key, value, expireMillis);
+        } else {
+            rxCache.save(key, value);
+        }
+    }
+
+    /**
+     * 把一级缓存中的值转换成type类型
+     */
+    public <T> T decode(LocalValue value, Type type) {
+
+        String json = value.getJson();
+        if (type == String.class || json == null) {
+            return (T) json;
+        }
+
+        if (!objectMode) {
+            return SerializableUtils.fromJson(json, type);
+        }
+
+        Object decoded = value.getDecoded(type);
+        if (decoded != null) {
+            return (T) decoded;
+        }
+
+        if (copyPolicy == CopyPolicy.COPY) {
+            JsonElement tree = value.getTree();
+            if (tree == null) {
+                tree = SerializableUtils.toJsonTree(json);
+                value.setTree(tree);
+            }
+            return SerializableUtils.fromJson(tree, type);
+        }
+
+        decoded = SerializableUtils.fromJson(json, type);
+        if (decoded != null && (copyPolicy == CopyPolicy.NONE || isImmutable(decoded))) {
+            value.putDecoded(type, decoded);
+        }
+        return (T) decoded;
+    }
+
+    private static boolean isImmutable(Object value) {
+
+        return value instanceof String
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Double
+                || value instanceof Float
+                || value instanceof BigInteger
+                || value instanceof BigDecimal;
+    }
+}
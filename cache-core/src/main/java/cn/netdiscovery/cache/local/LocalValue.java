@@ -0,0 +1,67 @@
+package cn.netdiscovery.cache.local;
+
+import com.google.gson.JsonElement;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一级缓存中保存的值，除了json字符串以外，还可以按目标类型保存反序列化之后的对象
+ */
+public class LocalValue {
+
+    private final String json;
+
+    private final Map<Type, Object> decoded = new ConcurrentHashMap<>();
+
+    private volatile JsonElement tree;
+
+    private final long createTime;
+
+    private volatile long expireMillis;
+
+    public LocalValue(String json) {
+        this(json, System.currentTimeMillis());
+    }
+
+    LocalValue(String json, long createTime) {
+        this.json = json;
+        this.createTime = createTime;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * 一级缓存中的过期时间，小于等于0表示不过期
+     */
+    public long getExpireMillis() {
+        return expireMillis;
+    }
+
+    void setExpireMillis(long expireMillis) {
+        this.expireMillis = expireMillis;
+    }
+
+    Object getDecoded(Type type) {
+        return decoded.get(type);
+    }
+
+    void putDecoded(Type type, Object value) {
+        decoded.putIfAbsent(type, value);
+    }
+
+    JsonElement getTree() {
+        return tree;
+    }
+
+    void setTree(JsonElement tree) {
+        this.tree = tree;
+    }
+}
@@ -0,0 +1,67 @@
+package cn.netdiscovery.cache.local;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录Redis中不存在的key，避免不存在的key每次都访问Redis
+ * 和一级缓存分开保存，有独立的过期时间和容量，不会挤占正常数据的空间
+ */
+public class NegativeCache {
+
+    private static final Boolean MISSING = Boolean.TRUE;
+
+    private final Cache<String, Boolean> keys;
+
+    private final LongAdder hits = new LongAdder();
+
+    public NegativeCache(long maxSize, long ttlMillis) {
+
+        this.keys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * key是否已知在Redis中不存在，命中时计数
+     */
+    public boolean contains(String key) {
+
+        if (keys.getIfPresent(key) != null) {
+            hits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public void put(String key) {
+
+        keys.put(key, MISSING);
+    }
+
+    public void remove(String... keys) {
+
+        this.keys.invalidateAll(Arrays.asList(keys));
+    }
+
+    public void clear() {
+
+        keys.invalidateAll();
+    }
+
+    /**
+     * 命中的次数，也就是节省的Redis读取次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long size() {
+        return keys.size();
+    }
+}
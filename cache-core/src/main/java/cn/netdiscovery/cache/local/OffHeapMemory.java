@@ -0,0 +1,445 @@
+package cn.netdiscovery.cache.local;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import com.google.gson.reflect.TypeToken;
+import com.safframework.rxcache.domain.Record;
+import com.safframework.rxcache.domain.Source;
+import com.safframework.rxcache.memory.Memory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 堆外内存实现的一级缓存，数据序列化之后保存在DirectByteBuffer中，读取时再反序列化，不占用堆内存
+ * 按key的hash分成多个segment，每个segment由若干个固定大小的block组成，数据追加写入当前的block；
+ * 没有空闲的block时回收最早写满的block，其中被访问过的数据重新写入一次(CLOCK)，其余的直接淘汰
+ * 由于读取时返回的是新的对象，对读取结果的修改不会保存到缓存中
+ */
+@Slf4j
+public class OffHeapMemory implements Memory {
+
+    private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+    private static final Type LIST_TYPE = new TypeToken<List<String>>() {}.getType();
+    private static final Type SET_TYPE = new TypeToken<Set<String>>() {}.getType();
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 1; // keyLength, valueLength, createTime, expireTime, type
+
+    private static final byte TYPE_LOCAL_VALUE = 0;
+    private static final byte TYPE_HASH        = 1;
+    private static final byte TYPE_HASH_PART   = 2;
+    private static final byte TYPE_OBJECT      = 3;
+    private static final byte TYPE_LIST        = 4;
+    private static final byte TYPE_SET         = 5;
+
+    private final Segment[] segments;
+
+    /**
+     * 每个segment至少需要2个block，capacity不够时先减少segment的数量，再减小block，占用的堆外内存不会超过capacity
+     * @param capacity  堆外内存的总大小，单位为字节
+     * @param blockSize 每个block的大小，大于block的数据不会被缓存
+     */
+    public OffHeapMemory(long capacity, int blockSize, int segmentCount) {
+
+        if (capacity <= 0 || blockSize <= 0 || segmentCount <= 0) {
+            throw new IllegalArgumentException("capacity, blockSize and segmentCount must be positive");
+        }
+
+        int fitSegments = (int) Math.max(1, Math.min(segmentCount, capacity / 2 / blockSize));
+        int fitBlockSize = (int) Math.min(blockSize, capacity / 2 / fitSegments);
+        if (fitBlockSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacity is too small: " + capacity);
+        }
+        if (fitSegments != segmentCount || fitBlockSize != blockSize) {
+            log.warn("off-heap capacity {} is less than {} segments * 2 blocks * {} bytes, use {} segments of {} bytes blocks",
+                    capacity, segmentCount, blockSize, fitSegments, fitBlockSize);
+        }
+
+        int blocksPerSegment = (int) (capacity / fitSegments / fitBlockSize);
+        segments = new Segment[fitSegments];
+        for (int i = 0; i < fitSegments; i++) {
+            segments[i] = new Segment(blocksPerSegment, fitBlockSize);
+        }
+    }
+
+    @Override
+    public <T> Record<T> getIfPresent(String key) {
+
+        Segment segment = segment(key);
+        byte[] bytes;
+        synchronized (segment) {
+            bytes = segment.get(key);
+        }
+        return bytes != null ? decode(key, bytes) : null;
+    }
+
+    @Override
+    public <T> void put(String key, T value) {
+
+        put(key, value, -1);
+    }
+
+    @Override
+    public <T> void put(String key, T value, long expireTime) {
+
+        byte[] bytes = encode(key, value, System.currentTimeMillis(), expireTime);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, bytes, expireTime);
+        }
+    }
+
+    @Override
+    public Set<String> keySet() {
+
+        Set<String> keys = new HashSet<>();
+        for (Segment segment:segments) {
+            synchronized (segment) {
+                keys.addAll(segment.index.keySet());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+
+        Segment segment = segment(key);
+        synchronized (segment) {
+            return segment.index.containsKey(key);
+        }
+    }
+
+    @Override
+    public void evict(String key) {
+
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    @Override
+    public void evictAll() {
+
+        for (Segment segment:segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * 当前有效数据占用的堆外内存，单位为字节
+     */
+    public long getUsedBytes() {
+
+        long used = 0;
+        for (Segment segment:segments) {
+            synchronized (segment) {
+                used += segment.usedBytes;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * 最多占用的堆外内存，单位为字节，不超过构造时的capacity
+     */
+    public long getCapacity() {
+
+        long capacity = 0;
+        for (Segment segment:segments) {
+            capacity += (long) segment.blocks.length * segment.blockSize;
+        }
+        return capacity;
+    }
+
+    private Segment segment(String key) {
+
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    private static byte[] encode(String key, Object value, long createTime, long expireTime) {
+
+        byte type;
+        String data;
+        if (value instanceof LocalValue) {
+            type = TYPE_LOCAL_VALUE;
+            data = ((LocalValue) value).getJson();
+        } else if (value instanceof HashValue) {
+            HashValue hash = (HashValue) value;
+            type = hash.isComplete() ? TYPE_HASH : TYPE_HASH_PART;
+            data = SerializableUtils.toJson(hash.toMap());
+        } else if (value instanceof ListValue) {
+            type = TYPE_LIST;
+            data = SerializableUtils.toJson(((ListValue) value).toList());
+        } else if (value instanceof SetValue) {
+            type = TYPE_SET;
+            data = SerializableUtils.toJson(((SetValue) value).members());
+        } else {
+            type = TYPE_OBJECT;
+            data = value.getClass().getName() + "\n" + SerializableUtils.toJson(value);
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = data != null ? data.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + valueBytes.length);
+        buffer.putInt(keyBytes.length)
+                .putInt(data != null ? valueBytes.length : -1)
+                .putLong(createTime)
+                .putLong(expireTime)
+                .put(type)
+                .put(keyBytes)
+                .put(valueBytes);
+        return buffer.array();
+    }
+
+    private static <T> Record<T> decode(String key, byte[] bytes) {
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int keyLength = buffer.getInt();
+        int valueLength = buffer.getInt();
+        long createTime = buffer.getLong();
+        long expireTime = buffer.getLong();
+        byte type = buffer.get();
+        String data = valueLength >= 0
+                ? new String(bytes, HEADER_SIZE + keyLength, valueLength, StandardCharsets.UTF_8)
+                : null;
+
+        Object value;
+        switch (type) {
+            case TYPE_LOCAL_VALUE:
+                LocalValue localValue = new LocalValue(data, createTime);
+                localValue.setExpireMillis(expireTime);
+                value = localValue;
+                break;
+
+            case TYPE_HASH:
+            case TYPE_HASH_PART:
+                Map<String, String> map = SerializableUtils.fromJson(data, MAP_TYPE);
+                value = new HashValue(map, type == TYPE_HASH);
+                break;
+
+            case TYPE_LIST:
+                List<String> list = SerializableUtils.fromJson(data, LIST_TYPE);
+                value = new ListValue(list);
+                break;
+
+            case TYPE_SET:
+                Set<String> set = SerializableUtils.fromJson(data, SET_TYPE);
+                value = new SetValue(set);
+                break;
+
+            default:
+                int index = data.indexOf('\n');
+                try {
+                    value = SerializableUtils.fromJson(data.substring(index + 1), Class.forName(data.substring(0, index)));
+                } catch (ClassNotFoundException e) {
+                    log.error("offheap decode error, key: {}", key, e);
+                    return null;
+                }
+                break;
+        }
+        return new Record<>(Source.MEMORY, key, (T) value, createTime, expireTime);
+    }
+
+    private static class Entry {
+
+        private final int block;
+        private final int offset;
+        private final int length;
+        private final long expireAt;
+        private boolean referenced;
+
+        private Entry(int block, int offset, int length, long expireAt) {
+            this.block = block;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt > 0 && now > expireAt;
+        }
+    }
+
+    private static class Segment {
+
+        private final int blockSize;
+        private final ByteBuffer[] blocks;
+        private final int[] blockEnd;
+
+        private final Map<String, Entry> index = new HashMap<>();
+        private final ArrayDeque<Integer> sealed = new ArrayDeque<>();
+        private final ArrayDeque<Integer> free = new ArrayDeque<>();
+
+        private int writeBlock;
+        private int writePos;
+        private long usedBytes;
+
+        private Segment(int blockCount, int blockSize) {
+
+            this.blockSize = blockSize;
+            this.blocks = new ByteBuffer[blockCount];
+            this.blockEnd = new int[blockCount];
+            for (int i = 1; i < blockCount; i++) {
+                free.add(i);
+            }
+            writeBlock = 0;
+        }
+
+        private byte[] get(String key) {
+
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(System.currentTimeMillis())) {
+                remove(key);
+                return null;
+            }
+
+            entry.referenced = true;
+            byte[] bytes = new byte[entry.length];
+            ByteBuffer buffer = blocks[entry.block].duplicate();
+            buffer.position(entry.offset);
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        private void put(String key, byte[] bytes, long expireTime) {
+
+            remove(key);
+            if (bytes.length > blockSize) {
+                return;
+            }
+
+            //回收的block中重新写入的数据可能仍然放不下，继续回收，最多回收所有的block一次
+            for (int i = 0; writePos + bytes.length > blockSize; i++) {
+                if (i > blocks.length) {
+                    return;
+                }
+                nextBlock();
+            }
+
+            long expireAt = expireTime > 0 ? System.currentTimeMillis() + expireTime : 0;
+            write(key, bytes, expireAt, false);
+        }
+
+        private void write(String key, byte[] bytes, long expireAt, boolean referenced) {
+
+            if (writePos + bytes.length > blockSize) {
+                return;
+            }
+
+            ByteBuffer block = blocks[writeBlock];
+            if (block == null) {
+                block = ByteBuffer.allocateDirect(blockSize);
+                blocks[writeBlock] = block;
+            }
+
+            ByteBuffer buffer = block.duplicate();
+            buffer.position(writePos);
+            buffer.put(bytes);
+
+            Entry entry = new Entry(writeBlock, writePos, bytes.length, expireAt);
+            entry.referenced = referenced;
+            index.put(key, entry);
+            writePos += bytes.length;
+            usedBytes += bytes.length;
+        }
+
+        private void remove(String key) {
+
+            Entry entry = index.remove(key);
+            if (entry != null) {
+                usedBytes -= entry.length;
+            }
+        }
+
+        /**
+         * 封存当前的block并切换到新的block，没有空闲的block时回收最早封存的block
+         */
+        private void nextBlock() {
+
+            blockEnd[writeBlock] = writePos;
+            sealed.add(writeBlock);
+
+            if (!free.isEmpty()) {
+                writeBlock = free.poll();
+                writePos = 0;
+                return;
+            }
+
+            int reclaimed = sealed.poll();
+            List<String> keys = new ArrayList<>();
+            List<byte[]> survivors = new ArrayList<>();
+            List<Long> expires = new ArrayList<>();
+            long now = System.currentTimeMillis();
+
+            ByteBuffer buffer = blocks[reclaimed].duplicate();
+            int pos = 0;
+            while (pos < blockEnd[reclaimed]) {
+                buffer.position(pos);
+                int keyLength = buffer.getInt();
+                int valueLength = buffer.getInt();
+                int length = HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+
+                byte[] keyBytes = new byte[keyLength];
+                buffer.position(pos + HEADER_SIZE);
+                buffer.get(keyBytes);
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+                Entry entry = index.get(key);
+                if (entry != null && entry.block == reclaimed && entry.offset == pos) {
+                    remove(key);
+                    //最近被访问过的数据给一次机会，重新写入
+                    if (entry.referenced && !entry.isExpired(now)) {
+                        byte[] bytes = new byte[length];
+                        buffer.position(pos);
+                        buffer.get(bytes);
+                        keys.add(key);
+                        survivors.add(bytes);
+                        expires.add(entry.expireAt);
+                    }
+                }
+                pos += length;
+            }
+
+            //重新写入的数据最多占用半个block，剩下的空间留给新的数据，超出的数据直接淘汰
+            writeBlock = reclaimed;
+            writePos = 0;
+            for (int i = 0; i < survivors.size(); i++) {
+                byte[] bytes = survivors.get(i);
+                if (writePos + bytes.length > blockSize / 2) {
+                    break;
+                }
+                write(keys.get(i), bytes, expires.get(i), false);
+            }
+        }
+
+        private void clear() {
+
+            index.clear();
+            sealed.clear();
+            free.clear();
+            for (int i = 1; i < blocks.length; i++) {
+                free.add(i);
+            }
+            writeBlock = 0;
+            writePos = 0;
+            usedBytes = 0;
+        }
+    }
+}
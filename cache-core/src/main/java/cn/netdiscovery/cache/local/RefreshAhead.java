@@ -0,0 +1,74 @@
+package cn.netdiscovery.cache.local;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一级缓存中的数据超过过期时间的一定比例之后，在后台提前刷新，读取的线程直接返回当前的值
+ * 同一个key同时只会有一个刷新任务，线程池和队列都是有界的，队列满了就放弃这次刷新
+ */
+@Slf4j
+public class RefreshAhead {
+
+    private final double ratio;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param ratio 已经存活的时间占过期时间的比例达到ratio之后开始刷新
+     */
+    public RefreshAhead(double ratio, int threads, int queueSize) {
+
+        this.ratio = ratio;
+
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "cache-refresh-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public boolean shouldRefresh(LocalValue value) {
+
+        long expireMillis = value.getExpireMillis();
+        return expireMillis > 0 && System.currentTimeMillis() - value.getCreateTime() >= expireMillis * ratio;
+    }
+
+    /**
+     * 提交key的刷新任务，这个key已经在刷新或者队列已满时直接返回
+     */
+    public void refresh(String key, Runnable task) {
+
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("refresh error, key: {}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    public void shutdown() {
+
+        executor.shutdown();
+    }
+}
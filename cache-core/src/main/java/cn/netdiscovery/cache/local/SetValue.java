@@ -0,0 +1,59 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 一级缓存中的set，以HashSet的形式保存，可以直接判断是否包含某个元素
+ * 读取时不加锁，写入时复制一份新的set(读多写少)
+ */
+public class SetValue {
+
+    private volatile Set<String> members;
+
+    public SetValue(Set<String> members) {
+        this.members = Collections.unmodifiableSet(new HashSet<>(members));
+    }
+
+    public boolean contains(String member) {
+        return members.contains(member);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * 返回所有元素的副本
+     */
+    public Set<String> toSet() {
+        return new HashSet<>(members);
+    }
+
+    /**
+     * 返回所有元素的只读视图
+     */
+    public Set<String> members() {
+        return members;
+    }
+
+    /**
+     * 和SADD一样，返回新增加的元素数量
+     */
+    public synchronized int add(String... values) {
+
+        Set<String> set = new HashSet<>(members);
+        int added = 0;
+        for (String value:values) {
+            if (set.add(value)) {
+                added++;
+            }
+        }
+
+        if (added > 0) {
+            members = Collections.unmodifiableSet(set);
+        }
+        return added;
+    }
+}
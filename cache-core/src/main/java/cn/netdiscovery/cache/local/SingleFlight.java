@@ -0,0 +1,58 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个key的并发加载，同一时刻只有一个线程去Redis读取，其他线程等待它的结果
+ * 等待超时或者加载失败时，等待的线程自己去读取，不会一直阻塞
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    public SingleFlight(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public <T> T execute(String key, Supplier<T> loader) {
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = flights.putIfAbsent(key, future);
+
+        if (inFlight == null) {
+            try {
+                T value = loader.get();
+                future.complete(value);
+                return value;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(key, future);
+            }
+        }
+
+        try {
+            return (T) inFlight.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loader.get();
+        } catch (ExecutionException | TimeoutException e) {
+            return loader.get();
+        }
+    }
+
+    /**
+     * 当前正在加载的key的数量
+     */
+    public int size() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,40 @@
+package cn.netdiscovery.cache.local;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+
+import java.util.Map;
+
+/**
+ * 计算一级缓存中一条数据的权重，权重的单位由实现决定，默认按序列化之后的长度估算字节数
+ */
+@FunctionalInterface
+public interface Weigher {
+
+    Weigher DEFAULT = (key, value) -> {
+
+        long weight = key != null ? key.length() : 0;
+        if (value instanceof LocalValue) {
+            String json = ((LocalValue) value).getJson();
+            weight += json != null ? json.length() : 0;
+        } else if (value instanceof HashValue) {
+            for (Map.Entry<String, String> entry:((HashValue) value).toMap().entrySet()) {
+                weight += entry.getKey().length() + entry.getValue().length();
+            }
+        } else if (value instanceof ListValue) {
+            for (String item:((ListValue) value).toList()) {
+                weight += item.length();
+            }
+        } else if (value instanceof SetValue) {
+            for (String member:((SetValue) value).members()) {
+                weight += member.length();
+            }
+        } else if (value instanceof String) {
+            weight += ((String) value).length();
+        } else if (value != null) {
+            weight += SerializableUtils.toJson(value).length();
+        }
+        return weight;
+    };
+
+    long weigh(String key, Object value);
+}
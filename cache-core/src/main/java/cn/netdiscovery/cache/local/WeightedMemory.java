@@ -0,0 +1,246 @@
+package cn.netdiscovery.cache.local;
+
+import com.safframework.rxcache.domain.Record;
+import com.safframework.rxcache.memory.Memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按权重限制一级缓存大小的Memory，包装RxCache原有的各种Memory实现
+ * 写入之后总权重超过maxWeight时，按照最久未访问(fifo类型按写入顺序)淘汰，直到总权重回到maxWeight以内，
+ * 权重超过maxWeight的单条数据也不会被保留
+ * 命中时只把key记录到按线程分段的读缓冲区中，不加锁，写入时或者缓冲区满时再批量更新访问顺序，
+ * 缓冲区满并且拿不到锁时丢弃这次访问记录，只影响淘汰顺序的精度
+ */
+public class WeightedMemory implements Memory {
+
+    private final Memory memory;
+    private final long maxWeight;
+    private final Weigher weigher;
+    private final boolean accessOrder;
+
+    private final LinkedHashMap<String, Long> weights;
+    private final AtomicLong weightedSize = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers;
+
+    /**
+     * @param accessOrder false表示按写入顺序淘汰
+     */
+    public WeightedMemory(Memory memory, long maxWeight, Weigher weigher, boolean accessOrder) {
+
+        this.memory = memory;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher != null ? weigher : Weigher.DEFAULT;
+        this.accessOrder = accessOrder;
+        this.weights = new LinkedHashMap<>(16, 0.75f, accessOrder);
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    @Override
+    public <T> Record<T> getIfPresent(String key) {
+
+        Record<T> record = memory.getIfPresent(key);
+        if (record != null) {
+            if (accessOrder) {
+                ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+                if (!buffer.offer(key) && evictionLock.tryLock()) {
+                    try {
+                        drainReadBuffers();
+                    } finally {
+                        evictionLock.unlock();
+                    }
+                }
+            }
+            return record;
+        }
+
+        //已经被内部的Memory淘汰或者过期
+        evictionLock.lock();
+        try {
+            release(weights.remove(key));
+        } finally {
+            evictionLock.unlock();
+        }
+        return null;
+    }
+
+    @Override
+    public <T> void put(String key, T value) {
+
+        memory.put(key, value);
+        afterPut(key, value);
+    }
+
+    @Override
+    public <T> void put(String key, T value, long expireTime) {
+
+        memory.put(key, value, expireTime);
+        afterPut(key, value);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return memory.keySet();
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return memory.containsKey(key);
+    }
+
+    @Override
+    public void evict(String key) {
+
+        memory.evict(key);
+        evictionLock.lock();
+        try {
+            release(weights.remove(key));
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void evictAll() {
+
+        memory.evictAll();
+        evictionLock.lock();
+        try {
+            weights.clear();
+            weightedSize.set(0);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 一级缓存中的值被原地修改(例如合并hash的field、List的push)之后重新计算权重，key已经被淘汰时忽略
+     */
+    public void reweigh(String key, Object value) {
+
+        long weight = weigher.weigh(key, value);
+        evictionLock.lock();
+        try {
+            Long old = weights.get(key);
+            if (old == null) {
+                return;
+            }
+            weights.put(key, weight);
+            weightedSize.addAndGet(weight - old);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 当前所有数据的总权重
+     */
+    public long getWeightedSize() {
+        return weightedSize.get();
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    private void afterPut(String key, Object value) {
+
+        long weight = weigher.weigh(key, value);
+        evictionLock.lock();
+        try {
+            release(weights.put(key, weight));
+            weightedSize.addAndGet(weight);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 先把读缓冲区中的访问记录合并到访问顺序中，再从最久未访问的数据开始淘汰，调用时需要持有evictionLock
+     */
+    private void evict() {
+
+        if (weightedSize.get() <= maxWeight) {
+            return;
+        }
+
+        drainReadBuffers();
+        Iterator<Map.Entry<String, Long>> iterator = weights.entrySet().iterator();
+        while (weightedSize.get() > maxWeight && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            release(eldest.getValue());
+            memory.evict(eldest.getKey());
+        }
+    }
+
+    private void drainReadBuffers() {
+
+        for (ReadBuffer buffer:readBuffers) {
+            buffer.drainTo(weights);
+        }
+    }
+
+    private void release(Long weight) {
+
+        if (weight != null) {
+            weightedSize.addAndGet(-weight);
+        }
+    }
+
+    /**
+     * 有界的环形缓冲区，多个线程写入，只在持有evictionLock时读取，满了之后新的记录直接丢弃
+     */
+    private static class ReadBuffer {
+
+        private static final int SIZE = 64;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<String> buffer = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        boolean offer(String key) {
+
+            long write = writeCounter.get();
+            if (write - readCounter >= SIZE) {
+                return false;
+            }
+            if (writeCounter.compareAndSet(write, write + 1)) {
+                buffer.lazySet((int) (write & MASK), key);
+            }
+            return true;
+        }
+
+        void drainTo(Map<String, Long> weights) {
+
+            long read = readCounter;
+            long write = writeCounter.get();
+            for (; read < write; read++) {
+                int index = (int) (read & MASK);
+                String key = buffer.get(index);
+                //写入线程已经占了位置但是还没有写入key，下次再读取
+                if (key == null) {
+                    break;
+                }
+                buffer.lazySet(index, null);
+                weights.get(key);
+            }
+            readCounter = read;
+        }
+    }
+}
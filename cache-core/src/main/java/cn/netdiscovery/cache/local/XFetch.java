@@ -0,0 +1,33 @@
+package cn.netdiscovery.cache.local;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * XFetch概率提前过期：命中一级缓存时以一定的概率提前重新加载，越接近过期、加载越慢，概率越大
+ * 判断条件为 now - delta * beta * ln(random) >= expireAt，delta是加载一次需要的时间，
+ * beta越大越倾向于提前加载，大量请求同时访问一个快要过期的key时通常只有少数请求会提前加载
+ */
+public class XFetch {
+
+    private final double beta;
+
+    public XFetch(double beta) {
+
+        this.beta = beta;
+    }
+
+    /**
+     * @param deltaMillis 加载一次需要的时间
+     */
+    public boolean shouldRecompute(LocalValue value, long deltaMillis) {
+
+        long expireMillis = value.getExpireMillis();
+        if (expireMillis <= 0 || deltaMillis <= 0) {
+            return false;
+        }
+
+        long expireAt = value.getCreateTime() + expireMillis;
+        double gap = -deltaMillis * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expireAt;
+    }
+}
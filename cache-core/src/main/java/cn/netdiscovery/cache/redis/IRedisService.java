@@ -1,12 +1,15 @@
 package cn.netdiscovery.cache.redis;
 
 import redis.clients.jedis.BitOP;
+import redis.clients.jedis.JedisPubSub;
 
 import java.io.Closeable;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * Created by tony on 2019-01-14.
@@ -23,13 +26,23 @@ public interface IRedisService extends Closeable  {
      */
     <T> String set(String key, T value, int seconds);
 
+    /**
+     * 批量设置键值对，seconds大于0时同时设置过期时间，按cache.redis.batch.size分批发送，返回OK表示成功
+     */
+    <T> String mset(Map<String, T> values, int seconds);
+
+    /**
+     * 批量设置键值对，seconds中有对应的过期时间并且大于0时同时设置过期时间，按cache.redis.batch.size分批发送，返回OK表示成功
+     */
+    <T> String mset(Map<String, T> values, Map<String, Integer> seconds);
+
     /**
      * 设置键值对（不存在才设置，原子方法），返回1表示成功
      */
     <T> Long setnx(String key, T value);
 
     /**
-     * 设置键值对和过期时间（不存在才设置，原子方法），返回1表示成功
+     * 设置键值对和过期时间（不存在才设置，原子方法），返回1表示成功，key已经存在时不修改它的过期时间
      */
     <T> Long setnx(String key, T value, int seconds);
 
@@ -43,13 +56,33 @@ public interface IRedisService extends Closeable  {
      */
     <T> T get(String key, Type type);
 
+    /**
+     * 批量获取值，按cache.redis.batch.size分批读取，结果和keys一一对应，不存在的key对应null，出错时返回null
+     */
+    List<String> mget(List<String> keys);
+
+    /**
+     * 批量获取值并转换成type类型，结果和keys一一对应，不存在的key对应null，出错时返回null
+     */
+    <T> List<T> mget(List<String> keys, Type type);
+
+    /**
+     * 获取值和剩余的过期时间(毫秒)，在一次网络往返中完成
+     */
+    TtlValue<String> getWithTtl(String key);
+
+    /**
+     * 批量读取字符串的值和剩余的过期时间(毫秒)，结果和keys一一对应，出错时返回null
+     */
+    List<TtlValue<String>> mgetWithTtl(List<String> keys);
+
     /**
      * 对数值增加指定值，返回修改后的数值
      */
     Long incr(String key, Integer value);
 
     /**
-     * 对数值增加指定值，并设置过期时间，返回修改后的数值
+     * 对数值增加指定值，key还没有过期时间(例如刚刚创建)时同时设置过期时间，返回修改后的数值
      */
     Long incr(String key, Integer value, int seconds);
 
@@ -59,7 +92,7 @@ public interface IRedisService extends Closeable  {
     Long decr(String key, Integer value);
 
     /**
-     * 对数值减少指定值，并设置过期时间，返回修改后的数值
+     * 对数值减少指定值，key还没有过期时间(例如刚刚创建)时同时设置过期时间，返回修改后的数值
      */
     Long decr(String key, Integer value, int seconds);
 
@@ -88,6 +121,11 @@ public interface IRedisService extends Closeable  {
      */
     void del(String... keys);
 
+    /**
+     * 批量删除，按cache.redis.batch.size分批删除，返回删除的key的数量
+     */
+    Long mdel(List<String> keys);
+
     /********** 一下为list相关操作 ************/
 
     /**
@@ -185,6 +223,12 @@ public interface IRedisService extends Closeable  {
      */
     Long llen(String key);
 
+    /**
+     * 获取整个List和剩余的过期时间(毫秒)，在一次网络往返中完成
+     * List的长度超过maxSize时不读取List的内容，返回的value为null，只返回剩余的过期时间
+     */
+    TtlValue<List<String>> lrangeWithTtl(String key, int maxSize);
+
     /**
      * 清空整个List
      */
@@ -264,6 +308,11 @@ public interface IRedisService extends Closeable  {
      */
     Set<String> smembers(String key);
 
+    /**
+     * 获取整个set和剩余的过期时间(毫秒)，在一次网络往返中完成
+     */
+    TtlValue<Set<String>> smembersWithTtl(String key);
+
 
     /********** 一下为map相关操作 ************/
 
@@ -292,6 +341,16 @@ public interface IRedisService extends Closeable  {
      */
     String hget(String key, String field);
 
+    /**
+     * 获取map中的多个键，返回的列表和fields一一对应，不存在的键对应null
+     */
+    List<String> hmget(String key, String... fields);
+
+    /**
+     * 获取map中的多个键和剩余的过期时间(毫秒)，在一次网络往返中完成
+     */
+    TtlValue<List<String>> hmgetWithTtl(String key, String... fields);
+
     /**
      * 增加map的某个数值
      */
@@ -307,6 +366,16 @@ public interface IRedisService extends Closeable  {
      */
     Map<String, String> hgetAll(String key);
 
+    /**
+     * 获取整个map和剩余的过期时间(毫秒)，在一次网络往返中完成
+     */
+    TtlValue<Map<String, String>> hgetAllWithTtl(String key);
+
+    /**
+     * 批量读取hash的所有field和剩余的过期时间(毫秒)，结果和keys一一对应，出错时返回null
+     */
+    List<TtlValue<Map<String, String>>> hgetAllWithTtl(List<String> keys);
+
     /********** 一下为hyperloglog相关操作 ************/
 
     /**
@@ -397,6 +466,16 @@ public interface IRedisService extends Closeable  {
      */
     Long bitpos(String key, boolean value, long start, long end);
 
+    /**
+     * 获取字符串的长度(字节)
+     */
+    Long strlen(String key);
+
+    /**
+     * 以二进制的形式读取字符串[start, end]之间的字节，可以用来分段读取整个Bitmap
+     */
+    byte[] getrange(String key, long start, long end);
+
     /**
      * 添加指定值到BloomFilter中，返回True表示添加成功，返回False表示filter中已经存在该值
      * @param value 值
@@ -409,6 +488,31 @@ public interface IRedisService extends Closeable  {
      */
     <T> boolean bloomcontains(String key, T value);
 
+    /**
+     * 批量添加到BloomFilter中，每cache.redis.batch.size个值只需要一次网络往返
+     * 结果和values一一对应，True表示添加成功，False表示已经存在或者值为null，出错时返回null
+     */
+    <T> List<Boolean> bloomaddAll(String key, Collection<T> values);
+
+    /**
+     * 批量判断是否在BloomFilter中存在，每cache.redis.batch.size个值只需要一次网络往返
+     * 结果和values一一对应，值为null时结果为False，出错时返回null
+     */
+    <T> List<Boolean> bloomcontainsAll(String key, Collection<T> values);
+
+    /**
+     * 把每个值的offset对应的bit设置为1，每cache.redis.batch.size个值只需要一次网络往返
+     * 结果和offsets一一对应，True表示添加成功(至少有一个bit原来为0)，出错时返回null
+     * @param offsets 每个值在Bitmap中的offset，数量必须相同，为null的值结果为False
+     */
+    List<Boolean> bloomaddOffsets(String key, List<long[]> offsets);
+
+    /**
+     * 判断每个值的offset对应的bit是否都为1，结果和offsets一一对应，出错时返回null
+     * @param offsets 每个值在Bitmap中的offset，数量必须相同，为null的值结果为False
+     */
+    List<Boolean> bloomcontainsOffsets(String key, List<long[]> offsets);
+
 
     /********** 以下为分布式锁相关操作 ************/
 
@@ -426,4 +530,25 @@ public interface IRedisService extends Closeable  {
      * @param requestId requestId
      */
     boolean releaseDistributedLock(String lockKey, String requestId);
+
+    /********** 以下为发布订阅相关操作 ************/
+
+    /**
+     * 向channel发布消息，返回接收到消息的订阅者数量
+     * @param channel 频道
+     * @param message 消息
+     */
+    Long publish(String channel, String message);
+
+    /**
+     * 订阅channel，该方法会阻塞当前线程，直到jedisPubSub取消订阅或者连接断开
+     * @param jedisPubSub 消息的回调
+     * @param channels 频道
+     */
+    void subscribe(JedisPubSub jedisPubSub, String... channels);
+
+    /**
+     * 使用SCAN遍历匹配pattern的key，分片和集群时依次遍历每个节点，每批key交给consumer处理，consumer返回false时停止遍历
+     */
+    void scan(String pattern, int count, Predicate<List<String>> consumer);
 }
@@ -0,0 +1,226 @@
+package cn.netdiscovery.cache.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 使用EVALSHA执行的lua脚本，只发送脚本的SHA1；Redis中还没有这个脚本(NOSCRIPT)时改用EVAL执行，之后Redis会缓存脚本
+ */
+public class LuaScript {
+
+    /**
+     * 通过unpack传给命令的参数数量受lua栈大小的限制(LUAI_MAXCSTACK为8000)，超过时每次脚本最多传这么多个参数
+     */
+    public static final int MAX_UNPACK_ARGS = 4000;
+
+    /**
+     * 执行写命令之后在同一个脚本中设置过期时间，KEYS[1]为key，ARGV[1]为过期时间(秒)，ARGV[2]为命令，其余为命令的参数
+     * 参数可能很多时通过writeWithExpire分批执行
+     */
+    public static final LuaScript WRITE_WITH_EXPIRE = new LuaScript(
+            "local result = redis.call(ARGV[2], KEYS[1], unpack(ARGV, 3)) "
+            + "if tonumber(ARGV[1]) > 0 then redis.call('expire', KEYS[1], ARGV[1]) end "
+            + "return result");
+
+    /**
+     * 计数器加上ARGV[1]，key还没有过期时间(例如刚刚创建)时设置过期时间ARGV[2]，返回修改后的数值
+     */
+    public static final LuaScript INCR_WITH_EXPIRE = new LuaScript(
+            "local total = redis.call('incrby', KEYS[1], ARGV[1]) "
+            + "if tonumber(ARGV[2]) > 0 and redis.call('ttl', KEYS[1]) == -1 then redis.call('expire', KEYS[1], ARGV[2]) end "
+            + "return total");
+
+    /**
+     * 把BloomFilter中多个值的bit设置为1，ARGV[1]为每个值的offset数量k，之后每k个参数为一个值的offset
+     * SETBIT返回原来的bit，有一个原来为0就表示添加成功，对每个值返回1(添加成功)或者0(已经存在)
+     */
+    public static final LuaScript BLOOM_ADD = new LuaScript(
+            "local k = tonumber(ARGV[1]) local result = {} "
+            + "for i = 2, #ARGV, k do "
+            + "local added = 0 "
+            + "for j = i, i + k - 1 do if redis.call('setbit', KEYS[1], ARGV[j], 1) == 0 then added = 1 end end "
+            + "result[#result + 1] = added "
+            + "end "
+            + "return result");
+
+    /**
+     * 判断多个值在BloomFilter中是否存在，参数和BLOOM_ADD相同，对每个值返回1(存在)或者0(不存在)
+     */
+    public static final LuaScript BLOOM_CONTAINS = new LuaScript(
+            "local k = tonumber(ARGV[1]) local result = {} "
+            + "for i = 2, #ARGV, k do "
+            + "local found = 1 "
+            + "for j = i, i + k - 1 do if redis.call('getbit', KEYS[1], ARGV[j]) == 0 then found = 0 break end end "
+            + "result[#result + 1] = found "
+            + "end "
+            + "return result");
+
+    /**
+     * 读取整个List和剩余的过期时间(毫秒)，返回{pttl, llen, List}，长度超过ARGV[1]时不返回List的内容
+     */
+    public static final LuaScript LRANGE_WITH_TTL = new LuaScript(
+            "local size = redis.call('llen', KEYS[1]) local ttl = redis.call('pttl', KEYS[1]) "
+            + "if size > tonumber(ARGV[1]) then return {ttl, size, {}} end "
+            + "return {ttl, size, redis.call('lrange', KEYS[1], 0, -1)}");
+
+    private final String script;
+    private final String sha;
+
+    public LuaScript(String script) {
+
+        this.script = script;
+        this.sha = sha1(script);
+    }
+
+    public Object eval(Jedis jedis, String key, List<String> args) {
+
+        List<String> keys = Collections.singletonList(key);
+        try {
+            return jedis.evalsha(sha, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(script, keys, args);
+        }
+    }
+
+    public Object eval(JedisCluster jedisCluster, String key, List<String> args) {
+
+        List<String> keys = Collections.singletonList(key);
+        try {
+            return jedisCluster.evalsha(sha, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedisCluster.eval(script, keys, args);
+        }
+    }
+
+    /**
+     * WRITE_WITH_EXPIRE的参数
+     */
+    public static List<String> writeArgs(int seconds, String command, String... args) {
+
+        List<String> list = new ArrayList<>(args.length + 2);
+        list.add(String.valueOf(seconds));
+        list.add(command);
+        Collections.addAll(list, args);
+        return list;
+    }
+
+    /**
+     * 分批执行WRITE_WITH_EXPIRE，每批最多MAX_UNPACK_ARGS个参数，只在最后一批设置过期时间，按顺序返回每一批的结果
+     * 参数超过一批时不再是原子操作，其他客户端可能读到只写入了一部分的数据
+     * @param step 每step个参数为一组，同一组不会被拆到两批中，例如hmset的field和value
+     * @param eval 用参数执行WRITE_WITH_EXPIRE
+     */
+    public static List<Object> writeWithExpire(Function<List<String>, Object> eval, int seconds, String command, String[] args, int step) {
+
+        int batchSize = MAX_UNPACK_ARGS - MAX_UNPACK_ARGS % step;
+        List<Object> result = new ArrayList<>(args.length / batchSize + 1);
+        for (int from = 0; from < args.length; from += batchSize) {
+            int to = Math.min(args.length, from + batchSize);
+            result.add(eval.apply(writeArgs(to == args.length ? seconds : 0, command, Arrays.copyOfRange(args, from, to))));
+        }
+        return result;
+    }
+
+    /**
+     * 把参数按MAX_UNPACK_ARGS个一批拆分，用于参数通过unpack传给命令的脚本
+     */
+    public static List<List<String>> partition(List<String> args) {
+
+        List<List<String>> batches = new ArrayList<>(args.size() / MAX_UNPACK_ARGS + 1);
+        for (int from = 0; from < args.size(); from += MAX_UNPACK_ARGS) {
+            batches.add(args.subList(from, Math.min(args.size(), from + MAX_UNPACK_ARGS)));
+        }
+        return batches;
+    }
+
+    /**
+     * INCR_WITH_EXPIRE的参数
+     */
+    public static List<String> incrArgs(long value, int seconds) {
+
+        List<String> list = new ArrayList<>(2);
+        list.add(String.valueOf(value));
+        list.add(String.valueOf(seconds));
+        return list;
+    }
+
+    /**
+     * 执行LRANGE_WITH_TTL，List的长度超过maxSize时TtlValue的value为null
+     */
+    public static TtlValue<List<String>> lrangeWithTtl(Function<List<String>, Object> eval, int maxSize) {
+
+        List<Object> reply = (List<Object>) eval.apply(Collections.singletonList(String.valueOf(maxSize)));
+        List<String> value = (Long) reply.get(1) > maxSize ? null : (List<String>) reply.get(2);
+        return new TtlValue<>(value, (Long) reply.get(0));
+    }
+
+    /**
+     * 执行BLOOM_ADD或者BLOOM_CONTAINS，每batchSize个值执行一次脚本，返回的结果和offsets一一对应，offsets中为null的值结果为false
+     * 同一个key的每个值的offset数量必须相同
+     * @param offsets 每个值在Bitmap中的offset
+     * @param eval 用参数执行脚本
+     */
+    public static List<Boolean> bloom(List<long[]> offsets, int batchSize, Function<List<String>, Object> eval) {
+
+        List<Boolean> result = new ArrayList<>(offsets.size());
+        List<String> args = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>(); // 这一批的值在结果中的位置
+        for (long[] valueOffsets:offsets) {
+            if (valueOffsets == null) {
+                result.add(false);
+                continue;
+            }
+
+            if (args.isEmpty()) {
+                args.add(String.valueOf(valueOffsets.length));
+            }
+            for (long offset:valueOffsets) {
+                args.add(String.valueOf(offset));
+            }
+            indexes.add(result.size());
+            result.add(false);
+
+            if (indexes.size() >= batchSize) {
+                bloom(eval, args, indexes, result);
+            }
+        }
+        if (!indexes.isEmpty()) {
+            bloom(eval, args, indexes, result);
+        }
+        return result;
+    }
+
+    private static void bloom(Function<List<String>, Object> eval, List<String> args, List<Integer> indexes, List<Boolean> result) {
+
+        List<?> replies = (List<?>) eval.apply(args);
+        for (int i = 0; i < indexes.size(); i++) {
+            result.set(indexes.get(i), Long.valueOf(1).equals(replies.get(i)));
+        }
+        args.clear();
+        indexes.clear();
+    }
+
+    private static String sha1(String script) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b:digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package cn.netdiscovery.cache.redis;
+
+/**
+ * 在同一次网络往返中读取到的值和它在Redis中剩余的过期时间
+ */
+public class TtlValue<T> {
+
+    public static final long NO_EXPIRE = -1; // key存在但是没有设置过期时间
+    public static final long NOT_EXIST = -2; // key不存在
+
+    private final T value;
+    private final long ttlMillis;
+
+    public TtlValue(T value, Long ttlMillis) {
+        this.value = value;
+        this.ttlMillis = ttlMillis != null ? ttlMillis : NOT_EXIST;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * 剩余的过期时间，单位为毫秒，含义和PTTL命令的返回值一致
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public boolean exists() {
+        return ttlMillis != NOT_EXIST;
+    }
+}
@@ -6,15 +6,22 @@ import cn.netdiscovery.cache.common.SerializableUtils;
 import cn.netdiscovery.cache.config.Configuration;
 import cn.netdiscovery.cache.config.Constant;
 import cn.netdiscovery.cache.redis.IRedisService;
+import cn.netdiscovery.cache.redis.LuaScript;
+import cn.netdiscovery.cache.redis.TtlValue;
 import cn.netdiscovery.cache.utils.BitmapHashUtils;
 import com.google.common.collect.Lists;
 import com.safframework.tony.common.utils.Preconditions;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.*;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by tony on 2019-01-27.
@@ -22,7 +29,14 @@ import java.util.*;
 @Slf4j
 public class CacheRedisClusterService implements IRedisService {
 
+    //JedisCluster不支持pipeline，使用lua脚本在一次网络往返中同时读取值和剩余的过期时间，通过EVALSHA执行，不需要每次发送脚本
+    private static final LuaScript GET_WITH_TTL = new LuaScript("return {redis.call('pttl', KEYS[1]), redis.call('get', KEYS[1])}");
+    private static final LuaScript SMEMBERS_WITH_TTL = new LuaScript("return {redis.call('pttl', KEYS[1]), redis.call('smembers', KEYS[1])}");
+    private static final LuaScript HGETALL_WITH_TTL = new LuaScript("return {redis.call('pttl', KEYS[1]), redis.call('hgetall', KEYS[1])}");
+    private static final LuaScript HMGET_WITH_TTL = new LuaScript("return {redis.call('pttl', KEYS[1]), redis.call('hmget', KEYS[1], unpack(ARGV))}");
+
     private JedisCluster jedisCluster;
+    private int batchSize;
 
     public CacheRedisClusterService() {
 
@@ -31,6 +45,7 @@ public class CacheRedisClusterService implements IRedisService {
         config.setMaxIdle(NumberUtils.toInt(Configuration.getConfig("cache.redis.connection.max.idle",String.class), 50));
         config.setMaxWaitMillis(NumberUtils.toInt(Configuration.getConfig("cache.redis.max.wait.millis",String.class), 5000));
         config.setTestOnBorrow(true);
+        batchSize = NumberUtils.toInt(Configuration.getConfig("cache.redis.batch.size",String.class), 500);
         String hostsStr = Configuration.getConfig("cache.redis.nodes",String.class);
         String[] hostPorts = hostsStr.split(",");
         HashSet<HostAndPort> hostSet = new HashSet<>();
@@ -62,13 +77,77 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null || seconds < 0) {
             return null;
         }
-        String result = jedisCluster.set(key, SerializableUtils.toJson(value));
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
+        String json = SerializableUtils.toJson(value);
+        String result = seconds > 0 ? jedisCluster.setex(key, seconds, json) : jedisCluster.set(key, json);
         return result;
     }
 
+    @Override
+    public <T> String mset(Map<String, T> values, int seconds) {
+        if (Preconditions.isBlank(values) || seconds < 0) {
+            return null;
+        }
+        return mset(values, key -> seconds);
+    }
+
+    @Override
+    public <T> String mset(Map<String, T> values, Map<String, Integer> seconds) {
+        if (Preconditions.isBlank(values)) {
+            return null;
+        }
+        return mset(values, key -> {
+            Integer expire = seconds != null ? seconds.get(key) : null;
+            return expire != null ? expire : 0;
+        });
+    }
+
+    /**
+     * key按slot分组，同一个节点上的slot共用一个pipeline，每个slot中不过期的key合并成一条MSET，有过期时间的key使用SETEX
+     */
+    private <T> String mset(Map<String, T> values, ToIntFunction<String> seconds) {
+        Map<Integer, List<String>> slots = groupBySlot(values.keySet());
+        boolean success = pipelined(slots, (pipeline, chunk) -> {
+            List<String> keysvalues = new ArrayList<>();
+            for (String key:chunk) {
+                String json = SerializableUtils.toJson(values.get(key));
+                int expire = seconds.applyAsInt(key);
+                if (expire > 0) {
+                    pipeline.setex(key, expire, json);
+                } else {
+                    keysvalues.add(key);
+                    keysvalues.add(json);
+                }
+            }
+            if (!keysvalues.isEmpty()) {
+                pipeline.mset(keysvalues.toArray(new String[0]));
+            }
+        });
+        if (success) {
+            return Constant.OK;
+        }
+
+        //由JedisCluster处理重定向，写入是幂等的，全部重新写一次
+        for (List<String> slotKeys:slots.values()) {
+            for (List<String> chunk:Lists.partition(slotKeys, batchSize)) {
+                List<String> keysvalues = new ArrayList<>();
+                for (String key:chunk) {
+                    String json = SerializableUtils.toJson(values.get(key));
+                    int expire = seconds.applyAsInt(key);
+                    if (expire > 0) {
+                        jedisCluster.setex(key, expire, json);
+                    } else {
+                        keysvalues.add(key);
+                        keysvalues.add(json);
+                    }
+                }
+                if (!keysvalues.isEmpty()) {
+                    jedisCluster.mset(keysvalues.toArray(new String[0]));
+                }
+            }
+        }
+        return Constant.OK;
+    }
+
     @Override
     public <T> Long setnx(String key, T value) {
         return setnx(key, value, 0);
@@ -79,10 +158,12 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null || seconds < 0) {
             return null;
         }
-        Long setnx = jedisCluster.setnx(key, SerializableUtils.toJson(value));
+        String json = SerializableUtils.toJson(value);
         if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
+            //SET NX EX在一条命令中完成，key已经存在时不会修改它的过期时间
+            return Constant.OK.equals(jedisCluster.set(key, json, "NX", "EX", seconds)) ? 1L : 0L;
         }
+        Long setnx = jedisCluster.setnx(key, json);
         return setnx;
     }
 
@@ -108,15 +189,97 @@ public class CacheRedisClusterService implements IRedisService {
         }
     }
 
+    @Override
+    public List<String> mget(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        Map<Integer, List<String>> slots = groupBySlot(keys);
+        Map<String, String> values = new HashMap<>();
+        List<List<String>> chunks = new ArrayList<>();
+        List<Response<List<String>>> responses = new ArrayList<>();
+        boolean success = pipelined(slots, (pipeline, chunk) -> {
+            chunks.add(chunk);
+            responses.add(pipeline.mget(chunk.toArray(new String[0])));
+        });
+        if (success) {
+            for (int i = 0; i < chunks.size(); i++) {
+                List<String> chunk = chunks.get(i);
+                List<String> result = responses.get(i).get();
+                for (int j = 0; j < chunk.size(); j++) {
+                    values.put(chunk.get(j), result.get(j));
+                }
+            }
+        } else {
+            //由JedisCluster处理重定向，每个slot的key分批读取
+            for (List<String> slotKeys:slots.values()) {
+                for (List<String> chunk:Lists.partition(slotKeys, batchSize)) {
+                    List<String> result = jedisCluster.mget(chunk.toArray(new String[0]));
+                    for (int j = 0; j < chunk.size(); j++) {
+                        values.put(chunk.get(j), result.get(j));
+                    }
+                }
+            }
+        }
+        List<String> result = new ArrayList<>(keys.size());
+        for (String key:keys) {
+            result.add(values.get(key));
+        }
+        return result;
+    }
+
+    @Override
+    public <T> List<T> mget(List<String> keys, Type type) {
+        if (type == null) {
+            return null;
+        }
+        List<String> values = mget(keys);
+        if (values == null || type == String.class) {
+            return (List<T>) values;
+        }
+        List<T> result = new ArrayList<>(values.size());
+        for (String value:values) {
+            result.add(SerializableUtils.fromJson(value, type));
+        }
+        return result;
+    }
+
+    @Override
+    public TtlValue<String> getWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        List<Object> result = (List<Object>) GET_WITH_TTL.eval(jedisCluster, key, Collections.emptyList());
+        return new TtlValue<>((String) result.get(1), (Long) result.get(0));
+    }
+
+    @Override
+    public List<TtlValue<String>> mgetWithTtl(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        //按节点使用pipeline读取，出错时逐个读取
+        Map<String, Response<String>> values = new HashMap<>();
+        Map<String, Response<Long>> ttls = new HashMap<>();
+        boolean success = pipelined(groupBySlot(keys), (pipeline, chunk) -> {
+            for (String key:chunk) {
+                values.put(key, pipeline.get(key));
+                ttls.put(key, pipeline.pttl(key));
+            }
+        });
+        List<TtlValue<String>> result = new ArrayList<>(keys.size());
+        for (String key:keys) {
+            result.add(success ? new TtlValue<>(values.get(key).get(), ttls.get(key).get()) : getWithTtl(key));
+        }
+        return result;
+    }
+
     @Override
     public Long incr(String key, Integer value, int seconds) {
         if (Preconditions.isBlank(key) || value == null || value == 0 || seconds < 0) {
             return null;
         }
-        long total = jedisCluster.incrBy(key, value);
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
+        Long total = (Long) LuaScript.INCR_WITH_EXPIRE.eval(jedisCluster, key, LuaScript.incrArgs(value, seconds));
         return total;
     }
 
@@ -135,10 +298,7 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null || value == 0 || seconds < 0) {
             return null;
         }
-        long total = jedisCluster.decrBy(key, value);
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
+        Long total = (Long) LuaScript.INCR_WITH_EXPIRE.eval(jedisCluster, key, LuaScript.incrArgs(-value, seconds));
         return total;
     }
 
@@ -164,7 +324,35 @@ public class CacheRedisClusterService implements IRedisService {
 
     @Override
     public void del(String... keys) {
-        jedisCluster.del(keys);
+        if (keys == null || keys.length == 0) {
+            return;
+        }
+        //key可能分布在不同的slot上
+        mdel(Arrays.asList(keys));
+    }
+
+    @Override
+    public Long mdel(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return 0L;
+        }
+        Map<Integer, List<String>> slots = groupBySlot(keys);
+        List<Response<Long>> responses = new ArrayList<>();
+        boolean success = pipelined(slots, (pipeline, chunk) -> responses.add(pipeline.del(chunk.toArray(new String[0]))));
+        long count = 0;
+        if (success) {
+            for (Response<Long> response:responses) {
+                count += response.get();
+            }
+            return count;
+        }
+
+        for (List<String> slotKeys:slots.values()) {
+            for (List<String> chunk:Lists.partition(slotKeys, batchSize)) {
+                count += jedisCluster.del(chunk.toArray(new String[0]));
+            }
+        }
+        return count;
     }
 
     @Override
@@ -177,10 +365,7 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null || seconds < 0) {
             return null;
         }
-        Long lpush = jedisCluster.lpush(key, SerializableUtils.toJson(value));
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
+        Long lpush = (Long) LuaScript.WRITE_WITH_EXPIRE.eval(jedisCluster, key, LuaScript.writeArgs(seconds, "lpush", SerializableUtils.toJson(value)));
         return lpush;
     }
 
@@ -199,11 +384,7 @@ public class CacheRedisClusterService implements IRedisService {
             T value = values.get(i);
             strings[i] = SerializableUtils.toJson(value);
         }
-        Long lpush = jedisCluster.lpush(key, strings);
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
-        return lpush;
+        return last(writeWithExpire(key, seconds, "lpush", strings, 1));
     }
 
     @Override
@@ -216,10 +397,7 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null || seconds < 0) {
             return null;
         }
-        Long lpush = jedisCluster.rpush(key, SerializableUtils.toJson(value));
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
+        Long lpush = (Long) LuaScript.WRITE_WITH_EXPIRE.eval(jedisCluster, key, LuaScript.writeArgs(seconds, "rpush", SerializableUtils.toJson(value)));
         return lpush;
     }
 
@@ -238,11 +416,7 @@ public class CacheRedisClusterService implements IRedisService {
             T value = values.get(i);
             strings.add(SerializableUtils.toJson(value));
         }
-        Long lpush = jedisCluster.rpush(key, strings.toArray(new String[0]));
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
-        return lpush;
+        return last(writeWithExpire(key, seconds, "rpush", strings.toArray(new String[0]), 1));
     }
 
     @Override
@@ -332,6 +506,14 @@ public class CacheRedisClusterService implements IRedisService {
         return jedisCluster.llen(key);
     }
 
+    @Override
+    public TtlValue<List<String>> lrangeWithTtl(String key, int maxSize) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        return LuaScript.lrangeWithTtl(args -> LuaScript.LRANGE_WITH_TTL.eval(jedisCluster, key, args), maxSize);
+    }
+
     @Override
     public void lclear(String key) {
         if (Preconditions.isBlank(key)) {
@@ -414,9 +596,9 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || values == null || values.length == 0 || seconds < 0) {
             return null;
         }
-        Long sadd = jedisCluster.sadd(key, values);
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
+        long sadd = 0;
+        for (Object added:writeWithExpire(key, seconds, "sadd", values, 1)) {
+            sadd += (Long) added;
         }
         return sadd;
     }
@@ -437,6 +619,16 @@ public class CacheRedisClusterService implements IRedisService {
         return jedisCluster.smembers(key);
     }
 
+    @Override
+    public TtlValue<Set<String>> smembersWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        List<Object> result = (List<Object>) SMEMBERS_WITH_TTL.eval(jedisCluster, key, Collections.emptyList());
+        Set<String> members = new HashSet<>((List<String>) result.get(1));
+        return new TtlValue<>(members, (Long) result.get(0));
+    }
+
     @Override
     public <T> Long hset(String key, String field, T value) {
         if (Preconditions.isBlank(key) || field == null || value == null) {
@@ -458,16 +650,8 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || field == null || value == null || seconds < 0) {
             return null;
         }
-        Long hset;
-        if (value instanceof String) {
-            hset = jedisCluster.hset(key, field, (String) value);
-        } else {
-            hset = jedisCluster.hset(key, field, SerializableUtils.toJson(value));
-        }
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
-        return hset;
+        String json = value instanceof String ? (String) value : SerializableUtils.toJson(value);
+        return (Long) LuaScript.WRITE_WITH_EXPIRE.eval(jedisCluster, key, LuaScript.writeArgs(seconds, "hset", field, json));
     }
 
     @Override
@@ -475,19 +659,10 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || values == null || values.length == 0 || seconds < 0) {
             return null;
         }
-        String hmset;
-        int len = values.length;
-        Map<String, String> map = new HashMap<>(len / 2);
-        for (int i = 0; i < len; ) {
-            map.put(values[i], values[i + 1]);
-            i += 2;
-        }
-        hmset = jedisCluster.hmset(key, map);
-
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
+        if (values.length % 2 != 0) {
+            return null;
         }
-        return hmset;
+        return last(writeWithExpire(key, seconds, "hmset", values, 2));
     }
 
     @Override
@@ -498,6 +673,29 @@ public class CacheRedisClusterService implements IRedisService {
         return jedisCluster.hget(key, field);
     }
 
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        if (Preconditions.isBlank(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        return jedisCluster.hmget(key, fields);
+    }
+
+    @Override
+    public TtlValue<List<String>> hmgetWithTtl(String key, String... fields) {
+        if (Preconditions.isBlank(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(fields.length);
+        Long ttl = null;
+        for (List<String> batch:LuaScript.partition(Arrays.asList(fields))) {
+            List<Object> result = (List<Object>) HMGET_WITH_TTL.eval(jedisCluster, key, batch);
+            ttl = (Long) result.get(0);
+            values.addAll((List<String>) result.get(1));
+        }
+        return new TtlValue<>(values, ttl);
+    }
+
     @Override
     public Long hincr(String key, String field, Integer value) {
         if (Preconditions.isBlank(key) || field == null || value == null || value == 0) {
@@ -522,6 +720,41 @@ public class CacheRedisClusterService implements IRedisService {
         return jedisCluster.hgetAll(key);
     }
 
+    @Override
+    public TtlValue<Map<String, String>> hgetAllWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        List<Object> result = (List<Object>) HGETALL_WITH_TTL.eval(jedisCluster, key, Collections.emptyList());
+        List<String> fieldsAndValues = (List<String>) result.get(1);
+        Map<String, String> map = new HashMap<>(fieldsAndValues.size() / 2);
+        for (int i = 0; i + 1 < fieldsAndValues.size(); i += 2) {
+            map.put(fieldsAndValues.get(i), fieldsAndValues.get(i + 1));
+        }
+        return new TtlValue<>(map, (Long) result.get(0));
+    }
+
+    @Override
+    public List<TtlValue<Map<String, String>>> hgetAllWithTtl(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        //按节点使用pipeline读取，出错时逐个读取
+        Map<String, Response<Map<String, String>>> values = new HashMap<>();
+        Map<String, Response<Long>> ttls = new HashMap<>();
+        boolean success = pipelined(groupBySlot(keys), (pipeline, chunk) -> {
+            for (String key:chunk) {
+                values.put(key, pipeline.hgetAll(key));
+                ttls.put(key, pipeline.pttl(key));
+            }
+        });
+        List<TtlValue<Map<String, String>>> result = new ArrayList<>(keys.size());
+        for (String key:keys) {
+            result.add(success ? new TtlValue<>(values.get(key).get(), ttls.get(key).get()) : hgetAllWithTtl(key));
+        }
+        return result;
+    }
+
     @Override
     public Long pfadd(String key, String value) {
         if (Preconditions.isBlank(key) || value == null) {
@@ -535,10 +768,7 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null) {
             return null;
         }
-        Long pfadd = jedisCluster.pfadd(key, value);
-        if (seconds > 0) {
-            jedisCluster.expire(key, seconds);
-        }
+        Long pfadd = (Long) LuaScript.WRITE_WITH_EXPIRE.eval(jedisCluster, key, LuaScript.writeArgs(seconds, "pfadd", value));
         return pfadd;
     }
 
@@ -622,20 +852,29 @@ public class CacheRedisClusterService implements IRedisService {
         return jedisCluster.bitpos(key, value, new BitPosParams(start, end));
     }
 
+    @Override
+    public Long strlen(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        return jedisCluster.strlen(key);
+    }
+
+    @Override
+    public byte[] getrange(String key, long start, long end) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        return jedisCluster.getrange(SafeEncoder.encode(key), start, end);
+    }
+
     @Override
     public <T> boolean bloomadd(String key, T value) {
         if (Preconditions.isBlank(key) || value == null) {
             return false;
         }
-        boolean bloomconstains = bloomcontains(key, value);
-        if (bloomconstains) {
-            return false;
-        }
-        long[] offsets = BitmapHashUtils.getBitOffsets(value);
-        for (long offset : offsets) {
-            jedisCluster.setbit(key, offset, true);
-        }
-        return true;
+        List<Boolean> bloomadd = bloomaddAll(key, Collections.singletonList(value));
+        return bloomadd != null && bloomadd.get(0);
     }
 
     @Override
@@ -643,13 +882,40 @@ public class CacheRedisClusterService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null) {
             return false;
         }
-        long[] offsets = BitmapHashUtils.getBitOffsets(value);
-        for (long offset : offsets) {
-            if (!jedisCluster.getbit(key, offset)) {
-                return false;
-            }
+        List<Boolean> bloomcontains = bloomcontainsAll(key, Collections.singletonList(value));
+        return bloomcontains != null && bloomcontains.get(0);
+    }
+
+    @Override
+    public <T> List<Boolean> bloomaddAll(String key, Collection<T> values) {
+        if (Preconditions.isBlank(key) || values == null) {
+            return null;
         }
-        return true;
+        return bloomaddOffsets(key, BitmapHashUtils.getBitOffsets(values));
+    }
+
+    @Override
+    public List<Boolean> bloomaddOffsets(String key, List<long[]> offsets) {
+        if (Preconditions.isBlank(key) || offsets == null) {
+            return null;
+        }
+        return LuaScript.bloom(offsets, batchSize, args -> LuaScript.BLOOM_ADD.eval(jedisCluster, key, args));
+    }
+
+    @Override
+    public <T> List<Boolean> bloomcontainsAll(String key, Collection<T> values) {
+        if (Preconditions.isBlank(key) || values == null) {
+            return null;
+        }
+        return bloomcontainsOffsets(key, BitmapHashUtils.getBitOffsets(values));
+    }
+
+    @Override
+    public List<Boolean> bloomcontainsOffsets(String key, List<long[]> offsets) {
+        if (Preconditions.isBlank(key) || offsets == null) {
+            return null;
+        }
+        return LuaScript.bloom(offsets, batchSize, args -> LuaScript.BLOOM_CONTAINS.eval(jedisCluster, key, args));
     }
 
     @Override
@@ -671,6 +937,116 @@ public class CacheRedisClusterService implements IRedisService {
         return Constant.RELEASE_SUCCESS.equals(result);
     }
 
+    @Override
+    public Long publish(String channel, String message) {
+        if (Preconditions.isBlank(channel) || message == null) {
+            return null;
+        }
+        return jedisCluster.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(JedisPubSub jedisPubSub, String... channels) {
+        if (jedisPubSub == null || channels == null || channels.length == 0) {
+            return;
+        }
+        jedisCluster.subscribe(jedisPubSub, channels);
+    }
+
+    /**
+     * 按slot分组，同一个slot中的key可以在一条命令中执行
+     */
+    private static Map<Integer, List<String>> groupBySlot(Collection<String> keys) {
+        Map<Integer, List<String>> slots = new LinkedHashMap<>();
+        for (String key:new LinkedHashSet<>(keys)) {
+            slots.computeIfAbsent(JedisClusterCRC16.getSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        return slots;
+    }
+
+    /**
+     * 按slot所在的节点分组，每个节点使用一个pipeline，每个slot中的key按batchSize分批交给command写入pipeline
+     * 返回false表示执行出错(例如slot正在迁移)，调用者需要改为通过JedisCluster逐个slot执行
+     */
+    private boolean pipelined(Map<Integer, List<String>> slots, BiConsumer<Pipeline, List<String>> command) {
+        Map<String, Jedis> nodes = new HashMap<>();
+        Map<String, Pipeline> pipelines = new HashMap<>();
+        try {
+            for (Map.Entry<Integer, List<String>> entry:slots.entrySet()) {
+                Jedis jedis = jedisCluster.getConnectionFromSlot(entry.getKey());
+                String node = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+                if (nodes.putIfAbsent(node, jedis) != null) {
+                    jedis.close();
+                }
+                Pipeline pipeline = pipelines.computeIfAbsent(node, n -> nodes.get(n).pipelined());
+                for (List<String> chunk:Lists.partition(entry.getValue(), batchSize)) {
+                    command.accept(pipeline, chunk);
+                }
+            }
+            for (Pipeline pipeline:pipelines.values()) {
+                for (Object result:pipeline.syncAndReturnAll()) {
+                    if (result instanceof Exception) {
+                        log.warn("cluster pipeline error, retry by slot: {}", ((Exception) result).getMessage());
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("cluster pipeline error, retry by slot", e);
+            return false;
+        } finally {
+            nodes.values().forEach(Jedis::close);
+        }
+    }
+
+    @Override
+    public void scan(String pattern, int count, Predicate<List<String>> consumer) {
+        if (Preconditions.isBlank(pattern) || consumer == null) {
+            return;
+        }
+        //只遍历master节点，避免从节点上的key重复
+        for (JedisPool pool:jedisCluster.getClusterNodes().values()) {
+            try (Jedis jedis = pool.getResource()) {
+                if (!jedis.info("replication").contains("role:master")) {
+                    continue;
+                }
+                if (!scan(jedis, pattern, count, consumer)) {
+                    return;
+                }
+            } catch (Exception e) {
+                log.error("scan error, pattern: {}", pattern, e);
+            }
+        }
+    }
+
+    /**
+     * 写命令的参数超过lua栈的限制时分批执行WRITE_WITH_EXPIRE，过期时间在最后一批设置
+     */
+    private List<Object> writeWithExpire(String key, int seconds, String command, String[] args, int step) {
+        return LuaScript.writeWithExpire(batch -> LuaScript.WRITE_WITH_EXPIRE.eval(jedisCluster, key, batch), seconds, command, args, step);
+    }
+
+    private static <T> T last(List<Object> results) {
+        return (T) results.get(results.size() - 1);
+    }
+
+    /**
+     * 遍历一个节点上匹配pattern的key，consumer返回false时返回false
+     */
+    private static boolean scan(Jedis jedis, String pattern, int count, Predicate<List<String>> consumer) {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            if (!result.getResult().isEmpty() && !consumer.test(result.getResult())) {
+                return false;
+            }
+            cursor = result.getStringCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
 
@@ -6,16 +6,22 @@ import cn.netdiscovery.cache.common.SerializableUtils;
 import cn.netdiscovery.cache.config.Configuration;
 import cn.netdiscovery.cache.config.Constant;
 import cn.netdiscovery.cache.redis.IRedisService;
+import cn.netdiscovery.cache.redis.LuaScript;
+import cn.netdiscovery.cache.redis.TtlValue;
 import cn.netdiscovery.cache.utils.BitmapHashUtils;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.safframework.tony.common.utils.Preconditions;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.*;
+import redis.clients.util.SafeEncoder;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by tony on 2019-01-27.
@@ -24,6 +30,7 @@ import java.util.*;
 public class CacheRedisSentinelService implements IRedisService {
 
     private JedisSentinelPool jedisSentinelPool;
+    private int batchSize;
 
     public CacheRedisSentinelService() {
         JedisPoolConfig config = new JedisPoolConfig();
@@ -31,6 +38,7 @@ public class CacheRedisSentinelService implements IRedisService {
         config.setMaxIdle(NumberUtils.toInt(Configuration.getConfig("cache.redis.connection.max.idle",String.class), 50));
         config.setMaxWaitMillis(NumberUtils.toInt(Configuration.getConfig("cache.redis.max.wait.millis",String.class), 5000));
         config.setTestOnBorrow(true);
+        batchSize = NumberUtils.toInt(Configuration.getConfig("cache.redis.batch.size",String.class), 500);
 
 
         String hostsStr = Configuration.getConfig("cache.redis.nodes",String.class);
@@ -57,10 +65,8 @@ public class CacheRedisSentinelService implements IRedisService {
             return null;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            String set = jedis.set(key, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            String json = SerializableUtils.toJson(value);
+            String set = seconds > 0 ? jedis.setex(key, seconds, json) : jedis.set(key, json);
             return set;
         } catch (Exception e) {
             log.error("set error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
@@ -68,6 +74,55 @@ public class CacheRedisSentinelService implements IRedisService {
         }
     }
 
+    @Override
+    public <T> String mset(Map<String, T> values, int seconds) {
+        if (Preconditions.isBlank(values) || seconds < 0) {
+            return null;
+        }
+        return mset(values, key -> seconds);
+    }
+
+    @Override
+    public <T> String mset(Map<String, T> values, Map<String, Integer> seconds) {
+        if (Preconditions.isBlank(values)) {
+            return null;
+        }
+        return mset(values, key -> {
+            Integer expire = seconds != null ? seconds.get(key) : null;
+            return expire != null ? expire : 0;
+        });
+    }
+
+    /**
+     * 每batchSize个key一个pipeline，不过期的key合并成一条MSET，有过期时间的key使用SETEX
+     */
+    private <T> String mset(Map<String, T> values, ToIntFunction<String> seconds) {
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            for (List<String> chunk:Lists.partition(new ArrayList<>(values.keySet()), batchSize)) {
+                Pipeline pipeline = jedis.pipelined();
+                List<String> keysvalues = new ArrayList<>();
+                for (String key:chunk) {
+                    String json = SerializableUtils.toJson(values.get(key));
+                    int expire = seconds.applyAsInt(key);
+                    if (expire > 0) {
+                        pipeline.setex(key, expire, json);
+                    } else {
+                        keysvalues.add(key);
+                        keysvalues.add(json);
+                    }
+                }
+                if (!keysvalues.isEmpty()) {
+                    pipeline.mset(keysvalues.toArray(new String[0]));
+                }
+                pipeline.sync();
+            }
+            return Constant.OK;
+        } catch (Exception e) {
+            log.error("mset error, keys: {}", values.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public <T> Long setnx(String key, T value) {
         return setnx(key, value, 0);
@@ -79,9 +134,13 @@ public class CacheRedisSentinelService implements IRedisService {
             return null;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            Long setnx = jedis.setnx(key, SerializableUtils.toJson(value));
+            String json = SerializableUtils.toJson(value);
+            Long setnx;
             if (seconds > 0) {
-                jedis.expire(key, seconds);
+                //SET NX EX在一条命令中完成，key已经存在时不会修改它的过期时间
+                setnx = Constant.OK.equals(jedis.set(key, json, "NX", "EX", seconds)) ? 1L : 0L;
+            } else {
+                setnx = jedis.setnx(key, json);
             }
             return setnx;
         } catch (Exception e) {
@@ -122,6 +181,84 @@ public class CacheRedisSentinelService implements IRedisService {
         }
     }
 
+    @Override
+    public List<String> mget(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            //每次最多读取batchSize个key，避免一条MGET阻塞Redis太久
+            List<String> values = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                values.addAll(jedis.mget(chunk.toArray(new String[0])));
+            }
+            return values;
+        } catch (Exception e) {
+            log.error("mget error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> List<T> mget(List<String> keys, Type type) {
+        if (type == null) {
+            return null;
+        }
+        List<String> values = mget(keys);
+        if (values == null || type == String.class) {
+            return (List<T>) values;
+        }
+        List<T> result = new ArrayList<>(values.size());
+        for (String value:values) {
+            result.add(SerializableUtils.fromJson(value, type));
+        }
+        return result;
+    }
+
+    @Override
+    public TtlValue<String> getWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<String> value = pipeline.get(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("getWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<TtlValue<String>> mgetWithTtl(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            List<Response<String>> values = new ArrayList<>(keys.size());
+            List<Response<Long>> ttls = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                Pipeline pipeline = jedis.pipelined();
+                for (String key:chunk) {
+                    values.add(pipeline.get(key));
+                    ttls.add(pipeline.pttl(key));
+                }
+                pipeline.sync();
+            }
+            List<TtlValue<String>> result = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                result.add(new TtlValue<>(values.get(i).get(), ttls.get(i).get()));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("mgetWithTtl error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public Long incr(String key, Integer value, int seconds) {
         if (Preconditions.isBlank(key) || value == null || seconds < 0) {
@@ -129,12 +266,8 @@ public class CacheRedisSentinelService implements IRedisService {
         }
         Long total = null;
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            total = jedis.incrBy(key, value);
-            if (total.intValue() == value) {
-                if (seconds > 0) {
-                    jedis.expire(key, seconds);
-                }
-            }
+            //key还没有过期时间时设置过期时间，和INCRBY在同一个脚本中执行
+            total = (Long) LuaScript.INCR_WITH_EXPIRE.eval(jedis, key, LuaScript.incrArgs(value, seconds));
         } catch (Exception e) {
             log.error("incr error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
         }
@@ -176,10 +309,7 @@ public class CacheRedisSentinelService implements IRedisService {
         }
         Long total = null;
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            total = jedis.decrBy(key, value);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            total = (Long) LuaScript.INCR_WITH_EXPIRE.eval(jedis, key, LuaScript.incrArgs(-value, seconds));
         } catch (Exception e) {
             log.error("decr error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
         }
@@ -251,6 +381,23 @@ public class CacheRedisSentinelService implements IRedisService {
         }
     }
 
+    @Override
+    public Long mdel(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return 0L;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            long count = 0;
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                count += jedis.del(chunk.toArray(new String[0]));
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("mdel error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public <T> Long lpush(String key, T value) {
         return lpush(key, value, 0);
@@ -263,10 +410,7 @@ public class CacheRedisSentinelService implements IRedisService {
         }
         Long lpush = null;
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            lpush = jedis.lpush(key, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            lpush = withExpire(jedis, key, seconds, pipeline -> pipeline.lpush(key, SerializableUtils.toJson(value)));
         } catch (Exception e) {
             log.error("lpush error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
         }
@@ -289,10 +433,7 @@ public class CacheRedisSentinelService implements IRedisService {
                 T value = values.get(i);
                 strings[i] = SerializableUtils.toJson(value);
             }
-            Long lpush = jedis.lpush(key, strings);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long lpush = withExpire(jedis, key, seconds, pipeline -> pipeline.lpush(key, strings));
             return lpush;
         } catch (Exception e) {
             log.error("lpush error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -312,10 +453,7 @@ public class CacheRedisSentinelService implements IRedisService {
         }
         Long lpush;
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            lpush = jedis.rpush(key, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            lpush = withExpire(jedis, key, seconds, pipeline -> pipeline.rpush(key, SerializableUtils.toJson(value)));
             return lpush;
         } catch (Exception e) {
             log.error("rpush error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(value), seconds, e);
@@ -339,10 +477,7 @@ public class CacheRedisSentinelService implements IRedisService {
                 T value = values.get(i);
                 strings.add(SerializableUtils.toJson(value));
             }
-            Long lpush = jedis.rpush(key, strings.toArray(new String[0]));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long lpush = withExpire(jedis, key, seconds, pipeline -> pipeline.rpush(key, strings.toArray(new String[0])));
             return lpush;
         } catch (Exception e) {
             log.error("rpush error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -472,6 +607,19 @@ public class CacheRedisSentinelService implements IRedisService {
         }
     }
 
+    @Override
+    public TtlValue<List<String>> lrangeWithTtl(String key, int maxSize) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return LuaScript.lrangeWithTtl(args -> LuaScript.LRANGE_WITH_TTL.eval(jedis, key, args), maxSize);
+        } catch (Exception e) {
+            log.error("lrangeWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
     @Override
     public void lclear(String key) {
         if (Preconditions.isBlank(key)) {
@@ -575,10 +723,7 @@ public class CacheRedisSentinelService implements IRedisService {
             return null;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            Long sadd = jedis.sadd(key, values);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long sadd = withExpire(jedis, key, seconds, pipeline -> pipeline.sadd(key, values));
             return sadd;
         } catch (Exception e) {
             log.error("sadd error, key: {}, value: {}", key, SerializableUtils.toJson(values), e);
@@ -614,6 +759,23 @@ public class CacheRedisSentinelService implements IRedisService {
         return setValue;
     }
 
+    @Override
+    public TtlValue<Set<String>> smembersWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Set<String>> value = pipeline.smembers(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("smembersWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
     @Override
     public <T> Long hset(String key, String field, T value) {
         return hset(key, field, value, 0);
@@ -630,15 +792,8 @@ public class CacheRedisSentinelService implements IRedisService {
             return null;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            Long hset;
-            if (value instanceof String) {
-                hset = jedis.hset(key, field, (String) value);
-            } else {
-                hset = jedis.hset(key, field, SerializableUtils.toJson(value));
-            }
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            String json = value instanceof String ? (String) value : SerializableUtils.toJson(value);
+            Long hset = withExpire(jedis, key, seconds, pipeline -> pipeline.hset(key, field, json));
             return hset;
         } catch (Exception e) {
             log.error("hset error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
@@ -658,10 +813,7 @@ public class CacheRedisSentinelService implements IRedisService {
                 map.put(values[i], values[i + 1]);
                 i += 2;
             }
-            String hmset = jedis.hmset(key, map);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            String hmset = withExpire(jedis, key, seconds, pipeline -> pipeline.hmset(key, map));
             return hmset;
         } catch (Exception e) {
             log.error("hset error, key: {}, values: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -683,6 +835,36 @@ public class CacheRedisSentinelService implements IRedisService {
         return value;
     }
 
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        if (Preconditions.isBlank(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.hmget(key, fields);
+        } catch (Exception e) {
+            log.error("hmget error, key: {}, fields: {}", key, SerializableUtils.toJson(fields), e);
+            return null;
+        }
+    }
+
+    @Override
+    public TtlValue<List<String>> hmgetWithTtl(String key, String... fields) {
+        if (Preconditions.isBlank(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<List<String>> value = pipeline.hmget(key, fields);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("hmgetWithTtl error, key: {}, fields: {}", key, SerializableUtils.toJson(fields), e);
+            return null;
+        }
+    }
+
     @Override
     public Long hincr(String key, String field, Integer value) {
         if (Preconditions.isBlank(key)) {
@@ -725,6 +907,50 @@ public class CacheRedisSentinelService implements IRedisService {
         return value;
     }
 
+    @Override
+    public TtlValue<Map<String, String>> hgetAllWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Map<String, String>> value = pipeline.hgetAll(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("hgetAllWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<TtlValue<Map<String, String>>> hgetAllWithTtl(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            List<Response<Map<String, String>>> values = new ArrayList<>(keys.size());
+            List<Response<Long>> ttls = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                Pipeline pipeline = jedis.pipelined();
+                for (String key:chunk) {
+                    values.add(pipeline.hgetAll(key));
+                    ttls.add(pipeline.pttl(key));
+                }
+                pipeline.sync();
+            }
+            List<TtlValue<Map<String, String>>> result = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                result.add(new TtlValue<>(values.get(i).get(), ttls.get(i).get()));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("hgetAllWithTtl error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public Long pfadd(String key, String value) {
         if (Preconditions.isBlank(key) || value == null) {
@@ -744,10 +970,7 @@ public class CacheRedisSentinelService implements IRedisService {
             return null;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            Long pfadd = jedis.pfadd(key, value);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long pfadd = withExpire(jedis, key, seconds, pipeline -> pipeline.pfadd(key, value));
             return pfadd;
         } catch (Exception e) {
             log.error("pfadd error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
@@ -887,24 +1110,38 @@ public class CacheRedisSentinelService implements IRedisService {
     }
 
     @Override
-    public <T> boolean bloomadd(String key, T value) {
-        if (Preconditions.isBlank(key) || value == null) {
-            return false;
+    public Long strlen(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            boolean bloomconstains = bloomcontains(key, value);
-            if (bloomconstains) {
-                return false;
-            }
-            long[] offsets = BitmapHashUtils.getBitOffsets(value);
-            for (long offset : offsets) {
-                jedis.setbit(key, offset, true);
-            }
-            return true;
+            return jedis.strlen(key);
+        } catch (Exception e) {
+            log.error("strlen error, key: {}", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] getrange(String key, long start, long end) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.getrange(SafeEncoder.encode(key), start, end);
         } catch (Exception e) {
-            log.error("bloomadd error, key: {}, value: {}", key, value, e);
+            log.error("getrange error, key: {}, start: {}, end: {}", key, start, end, e);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> boolean bloomadd(String key, T value) {
+        if (Preconditions.isBlank(key) || value == null) {
             return false;
         }
+        List<Boolean> bloomadd = bloomaddAll(key, Collections.singletonList(value));
+        return bloomadd != null && bloomadd.get(0);
     }
 
     @Override
@@ -912,17 +1149,49 @@ public class CacheRedisSentinelService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null) {
             return false;
         }
+        List<Boolean> bloomcontains = bloomcontainsAll(key, Collections.singletonList(value));
+        return bloomcontains != null && bloomcontains.get(0);
+    }
+
+    @Override
+    public <T> List<Boolean> bloomaddAll(String key, Collection<T> values) {
+        if (Preconditions.isBlank(key) || values == null) {
+            return null;
+        }
+        return bloomaddOffsets(key, BitmapHashUtils.getBitOffsets(values));
+    }
+
+    @Override
+    public List<Boolean> bloomaddOffsets(String key, List<long[]> offsets) {
+        if (Preconditions.isBlank(key) || offsets == null) {
+            return null;
+        }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            long[] offsets = BitmapHashUtils.getBitOffsets(value);
-            for (long offset : offsets) {
-                if (!jedis.getbit(key, offset)) {
-                    return false;
-                }
-            }
-            return true;
+            return LuaScript.bloom(offsets, batchSize, args -> LuaScript.BLOOM_ADD.eval(jedis, key, args));
         } catch (Exception e) {
-            log.error("bloomcons error, key: {}, value: {}", key, value, e);
-            return false;
+            log.error("bloomaddOffsets error, key: {}, values: {}", key, offsets.size(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> List<Boolean> bloomcontainsAll(String key, Collection<T> values) {
+        if (Preconditions.isBlank(key) || values == null) {
+            return null;
+        }
+        return bloomcontainsOffsets(key, BitmapHashUtils.getBitOffsets(values));
+    }
+
+    @Override
+    public List<Boolean> bloomcontainsOffsets(String key, List<long[]> offsets) {
+        if (Preconditions.isBlank(key) || offsets == null) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return LuaScript.bloom(offsets, batchSize, args -> LuaScript.BLOOM_CONTAINS.eval(jedis, key, args));
+        } catch (Exception e) {
+            log.error("bloomcontainsOffsets error, key: {}, values: {}", key, offsets.size(), e);
+            return null;
         }
     }
 
@@ -955,6 +1224,79 @@ public class CacheRedisSentinelService implements IRedisService {
         }
     }
 
+    @Override
+    public Long publish(String channel, String message) {
+
+        if (Preconditions.isBlank(channel) || message == null) {
+            return null;
+        }
+
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.publish(channel, message);
+        } catch (Exception e) {
+            log.error("publish error, channel: {}, message: {}", channel, message, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void subscribe(JedisPubSub jedisPubSub, String... channels) {
+
+        if (jedisPubSub == null || channels == null || channels.length == 0) {
+            return;
+        }
+
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            jedis.subscribe(jedisPubSub, channels);
+        }
+    }
+
+    /**
+     * 写命令和EXPIRE放在一个事务(MULTI/EXEC)中一次发送，只需要一次网络往返，不会留下没有过期时间的key
+     * seconds为0时不需要事务，直接执行写命令
+     */
+    private static <R> R withExpire(Jedis jedis, String key, int seconds, Function<MultiKeyPipelineBase, Response<R>> command) {
+        if (seconds <= 0) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<R> response = command.apply(pipeline);
+            pipeline.sync();
+            return response.get();
+        }
+        Transaction transaction = jedis.multi();
+        Response<R> response = command.apply(transaction);
+        transaction.expire(key, seconds);
+        transaction.exec();
+        return response.get();
+    }
+
+    @Override
+    public void scan(String pattern, int count, Predicate<List<String>> consumer) {
+        if (Preconditions.isBlank(pattern) || consumer == null) {
+            return;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            scan(jedis, pattern, count, consumer);
+        } catch (Exception e) {
+            log.error("scan error, pattern: {}", pattern, e);
+        }
+    }
+
+    /**
+     * 遍历一个节点上匹配pattern的key，consumer返回false时返回false
+     */
+    private static boolean scan(Jedis jedis, String pattern, int count, Predicate<List<String>> consumer) {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            if (!result.getResult().isEmpty() && !consumer.test(result.getResult())) {
+                return false;
+            }
+            cursor = result.getStringCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
 
@@ -6,15 +6,21 @@ import cn.netdiscovery.cache.common.SerializableUtils;
 import cn.netdiscovery.cache.config.Configuration;
 import cn.netdiscovery.cache.config.Constant;
 import cn.netdiscovery.cache.redis.IRedisService;
+import cn.netdiscovery.cache.redis.LuaScript;
+import cn.netdiscovery.cache.redis.TtlValue;
 import cn.netdiscovery.cache.utils.BitmapHashUtils;
 import com.google.common.collect.Lists;
 import com.safframework.tony.common.utils.Preconditions;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.*;
+import redis.clients.util.SafeEncoder;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by tony on 2019-01-27.
@@ -23,6 +29,7 @@ import java.util.*;
 public class CacheRedisShardService implements IRedisService {
 
     private ShardedJedisPool jedisPool;
+    private int batchSize;
 
     public CacheRedisShardService() {
         JedisPoolConfig config = new JedisPoolConfig();
@@ -30,6 +37,7 @@ public class CacheRedisShardService implements IRedisService {
         config.setMaxIdle(NumberUtils.toInt(Configuration.getConfig("cache.redis.connection.max.idle",String.class), 50));
         config.setMaxWaitMillis(NumberUtils.toInt(Configuration.getConfig("cache.redis.max.wait.millis",String.class), 5000));
         config.setTestOnBorrow(true);
+        batchSize = NumberUtils.toInt(Configuration.getConfig("cache.redis.batch.size",String.class), 500);
 
         String hostsStr = Configuration.getConfig("cache.redis.nodes",String.class);
         String[] hostPorts = hostsStr.split(",");
@@ -64,10 +72,8 @@ public class CacheRedisShardService implements IRedisService {
             return null;
         }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            String set = jedis.set(key, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            String json = SerializableUtils.toJson(value);
+            String set = seconds > 0 ? jedis.setex(key, seconds, json) : jedis.set(key, json);
             return set;
         } catch (Exception e) {
             log.error("set error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
@@ -75,6 +81,51 @@ public class CacheRedisShardService implements IRedisService {
         }
     }
 
+    @Override
+    public <T> String mset(Map<String, T> values, int seconds) {
+        if (Preconditions.isBlank(values) || seconds < 0) {
+            return null;
+        }
+        return mset(values, key -> seconds);
+    }
+
+    @Override
+    public <T> String mset(Map<String, T> values, Map<String, Integer> seconds) {
+        if (Preconditions.isBlank(values)) {
+            return null;
+        }
+        return mset(values, key -> {
+            Integer expire = seconds != null ? seconds.get(key) : null;
+            return expire != null ? expire : 0;
+        });
+    }
+
+    /**
+     * 每batchSize个key按分片分组，每个分片一个pipeline
+     */
+    private <T> String mset(Map<String, T> values, ToIntFunction<String> seconds) {
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            for (List<String> chunk:Lists.partition(new ArrayList<>(values.keySet()), batchSize)) {
+                Map<Jedis, Pipeline> pipelines = new HashMap<>();
+                for (String key:chunk) {
+                    Pipeline pipeline = pipelines.computeIfAbsent(jedis.getShard(key), Jedis::pipelined);
+                    String json = SerializableUtils.toJson(values.get(key));
+                    int expire = seconds.applyAsInt(key);
+                    if (expire > 0) {
+                        pipeline.setex(key, expire, json);
+                    } else {
+                        pipeline.set(key, json);
+                    }
+                }
+                pipelines.values().forEach(Pipeline::sync);
+            }
+            return Constant.OK;
+        } catch (Exception e) {
+            log.error("mset error, keys: {}", values.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public <T> Long setnx(String key, T value) {
         return setnx(key, value, 0);
@@ -86,9 +137,13 @@ public class CacheRedisShardService implements IRedisService {
             return null;
         }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            Long setnx = jedis.setnx(key, SerializableUtils.toJson(value));
+            String json = SerializableUtils.toJson(value);
+            Long setnx;
             if (seconds > 0) {
-                jedis.expire(key, seconds);
+                //SET NX EX在一条命令中完成，key已经存在时不会修改它的过期时间
+                setnx = Constant.OK.equals(jedis.set(key, json, "NX", "EX", seconds)) ? 1L : 0L;
+            } else {
+                setnx = jedis.setnx(key, json);
             }
             return setnx;
         } catch (Exception e) {
@@ -129,6 +184,94 @@ public class CacheRedisShardService implements IRedisService {
         }
     }
 
+    @Override
+    public List<String> mget(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            List<Response<String>> responses = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                //按分片分组，每个分片一个pipeline
+                Map<Jedis, Pipeline> pipelines = new HashMap<>();
+                for (String key:chunk) {
+                    responses.add(pipelines.computeIfAbsent(jedis.getShard(key), Jedis::pipelined).get(key));
+                }
+                pipelines.values().forEach(Pipeline::sync);
+            }
+            List<String> values = new ArrayList<>(keys.size());
+            for (Response<String> response:responses) {
+                values.add(response.get());
+            }
+            return values;
+        } catch (Exception e) {
+            log.error("mget error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> List<T> mget(List<String> keys, Type type) {
+        if (type == null) {
+            return null;
+        }
+        List<String> values = mget(keys);
+        if (values == null || type == String.class) {
+            return (List<T>) values;
+        }
+        List<T> result = new ArrayList<>(values.size());
+        for (String value:values) {
+            result.add(SerializableUtils.fromJson(value, type));
+        }
+        return result;
+    }
+
+    @Override
+    public TtlValue<String> getWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            Response<String> value = pipeline.get(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("getWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<TtlValue<String>> mgetWithTtl(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            List<Response<String>> values = new ArrayList<>(keys.size());
+            List<Response<Long>> ttls = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                //按分片分组，每个分片一个pipeline
+                Map<Jedis, Pipeline> pipelines = new HashMap<>();
+                for (String key:chunk) {
+                    Pipeline pipeline = pipelines.computeIfAbsent(jedis.getShard(key), Jedis::pipelined);
+                    values.add(pipeline.get(key));
+                    ttls.add(pipeline.pttl(key));
+                }
+                pipelines.values().forEach(Pipeline::sync);
+            }
+            List<TtlValue<String>> result = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                result.add(new TtlValue<>(values.get(i).get(), ttls.get(i).get()));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("mgetWithTtl error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public Long incr(String key, Integer value, int seconds) {
         if (Preconditions.isBlank(key) || value == null) {
@@ -136,12 +279,8 @@ public class CacheRedisShardService implements IRedisService {
         }
         Long total = null;
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            total = jedis.incrBy(key, value);
-            if (total.intValue() == value) {
-                if (seconds > 0) {
-                    jedis.expire(key, seconds);
-                }
-            }
+            //key还没有过期时间时设置过期时间，和INCRBY在同一个脚本中执行
+            total = (Long) LuaScript.INCR_WITH_EXPIRE.eval(jedis.getShard(key), key, LuaScript.incrArgs(value, seconds));
         } catch (Exception e) {
             log.error("incr error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
         }
@@ -174,10 +313,7 @@ public class CacheRedisShardService implements IRedisService {
         }
         Long total = null;
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            total = jedis.decrBy(key, value);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            total = (Long) LuaScript.INCR_WITH_EXPIRE.eval(jedis.getShard(key), key, LuaScript.incrArgs(-value, seconds));
         } catch (Exception e) {
             log.error("decr error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
         }
@@ -242,8 +378,31 @@ public class CacheRedisShardService implements IRedisService {
         if (keys == null || keys.length == 0) {
             return;
         }
-        for (String key : keys) {
-            jedisPool.getResource().del(key);
+        mdel(Arrays.asList(keys));
+    }
+
+    @Override
+    public Long mdel(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return 0L;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            List<Response<Long>> responses = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                Map<Jedis, Pipeline> pipelines = new HashMap<>();
+                for (String key:chunk) {
+                    responses.add(pipelines.computeIfAbsent(jedis.getShard(key), Jedis::pipelined).del(key));
+                }
+                pipelines.values().forEach(Pipeline::sync);
+            }
+            long count = 0;
+            for (Response<Long> response:responses) {
+                count += response.get();
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("mdel error, keys: {}", keys.size(), e);
+            return null;
         }
     }
 
@@ -259,10 +418,7 @@ public class CacheRedisShardService implements IRedisService {
         }
         Long lpush = null;
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            lpush = jedis.lpush(key, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            lpush = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.lpush(key, SerializableUtils.toJson(value)));
         } catch (Exception e) {
             log.error("lpush error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
         }
@@ -285,10 +441,7 @@ public class CacheRedisShardService implements IRedisService {
                 T value = values.get(i);
                 strings[i] = SerializableUtils.toJson(value);
             }
-            Long lpush = jedis.lpush(key, strings);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long lpush = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.lpush(key, strings));
             return lpush;
         } catch (Exception e) {
             log.error("lpush error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -308,10 +461,7 @@ public class CacheRedisShardService implements IRedisService {
         }
         Long lpush;
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            lpush = jedis.rpush(key, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            lpush = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.rpush(key, SerializableUtils.toJson(value)));
             return lpush;
         } catch (Exception e) {
             log.error("rpush error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(value), seconds, e);
@@ -335,10 +485,7 @@ public class CacheRedisShardService implements IRedisService {
                 T value = values.get(i);
                 strings.add(SerializableUtils.toJson(value));
             }
-            Long lpush = jedis.rpush(key, strings.toArray(new String[0]));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long lpush = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.rpush(key, strings.toArray(new String[0])));
             return lpush;
         } catch (Exception e) {
             log.error("rpush error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -468,6 +615,19 @@ public class CacheRedisShardService implements IRedisService {
         }
     }
 
+    @Override
+    public TtlValue<List<String>> lrangeWithTtl(String key, int maxSize) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return LuaScript.lrangeWithTtl(args -> LuaScript.LRANGE_WITH_TTL.eval(jedis.getShard(key), key, args), maxSize);
+        } catch (Exception e) {
+            log.error("lrangeWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
     @Override
     public void lclear(String key) {
         if (Preconditions.isBlank(key)) {
@@ -583,10 +743,7 @@ public class CacheRedisShardService implements IRedisService {
             return null;
         }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            Long sadd = jedis.sadd(key, values);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long sadd = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.sadd(key, values));
             return sadd;
         } catch (Exception e) {
             log.error("sadd error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -622,6 +779,23 @@ public class CacheRedisShardService implements IRedisService {
         return setValue;
     }
 
+    @Override
+    public TtlValue<Set<String>> smembersWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            Response<Set<String>> value = pipeline.smembers(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("smembersWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
     @Override
     public <T> Long hset(String key, String field, T value) {
         return hset(key, field, value, 0);
@@ -638,10 +812,7 @@ public class CacheRedisShardService implements IRedisService {
             return null;
         }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            Long hset = jedis.hset(key, field, SerializableUtils.toJson(value));
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long hset = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.hset(key, field, SerializableUtils.toJson(value)));
             return hset;
         } catch (Exception e) {
             log.error("hset error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
@@ -661,10 +832,7 @@ public class CacheRedisShardService implements IRedisService {
                 map.put(values[i], values[i + 1]);
                 i += 2;
             }
-            String hmset = jedis.hmset(key, map);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            String hmset = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.hmset(key, map));
             return hmset;
         } catch (Exception e) {
             log.error("hset error, key: {}, value: {}, seconds: {}", key, SerializableUtils.toJson(values), seconds, e);
@@ -686,6 +854,36 @@ public class CacheRedisShardService implements IRedisService {
         return value;
     }
 
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        if (Preconditions.isBlank(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.hmget(key, fields);
+        } catch (Exception e) {
+            log.error("hmget error, key: {}, fields: {}", key, SerializableUtils.toJson(fields), e);
+            return null;
+        }
+    }
+
+    @Override
+    public TtlValue<List<String>> hmgetWithTtl(String key, String... fields) {
+        if (Preconditions.isBlank(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            Response<List<String>> value = pipeline.hmget(key, fields);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("hmgetWithTtl error, key: {}, fields: {}", key, SerializableUtils.toJson(fields), e);
+            return null;
+        }
+    }
+
     @Override
     public Long hincr(String key, String field, Integer value) {
         if (Preconditions.isBlank(key)) {
@@ -728,6 +926,52 @@ public class CacheRedisShardService implements IRedisService {
         return value;
     }
 
+    @Override
+    public TtlValue<Map<String, String>> hgetAllWithTtl(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            Response<Map<String, String>> value = pipeline.hgetAll(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            return new TtlValue<>(value.get(), ttl.get());
+        } catch (Exception e) {
+            log.error("hgetAllWithTtl error, key: {}", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<TtlValue<Map<String, String>>> hgetAllWithTtl(List<String> keys) {
+        if (Preconditions.isBlank(keys)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            List<Response<Map<String, String>>> values = new ArrayList<>(keys.size());
+            List<Response<Long>> ttls = new ArrayList<>(keys.size());
+            for (List<String> chunk:Lists.partition(keys, batchSize)) {
+                //按分片分组，每个分片一个pipeline
+                Map<Jedis, Pipeline> pipelines = new HashMap<>();
+                for (String key:chunk) {
+                    Pipeline pipeline = pipelines.computeIfAbsent(jedis.getShard(key), Jedis::pipelined);
+                    values.add(pipeline.hgetAll(key));
+                    ttls.add(pipeline.pttl(key));
+                }
+                pipelines.values().forEach(Pipeline::sync);
+            }
+            List<TtlValue<Map<String, String>>> result = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                result.add(new TtlValue<>(values.get(i).get(), ttls.get(i).get()));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("hgetAllWithTtl error, keys: {}", keys.size(), e);
+            return null;
+        }
+    }
+
     @Override
     public Long pfadd(String key, String value) {
         if (Preconditions.isBlank(key) || value == null) {
@@ -747,10 +991,7 @@ public class CacheRedisShardService implements IRedisService {
             return null;
         }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            Long pfadd = jedis.pfadd(key, value);
-            if (seconds > 0) {
-                jedis.expire(key, seconds);
-            }
+            Long pfadd = withExpire(jedis.getShard(key), key, seconds, pipeline -> pipeline.pfadd(key, value));
             return pfadd;
         } catch (Exception e) {
             log.error("pfadd error, key: {}, value: {}, seconds: {}", key, value, seconds, e);
@@ -886,24 +1127,38 @@ public class CacheRedisShardService implements IRedisService {
     }
 
     @Override
-    public <T> boolean bloomadd(String key, T value) {
-        if (Preconditions.isBlank(key) || value == null) {
-            return false;
+    public Long strlen(String key) {
+        if (Preconditions.isBlank(key)) {
+            return null;
         }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            boolean bloomconstains = bloomcontains(key, value);
-            if (bloomconstains) {
-                return false;
-            }
-            long[] offsets = BitmapHashUtils.getBitOffsets(value);
-            for (long offset : offsets) {
-                jedis.setbit(key, offset, true);
-            }
-            return true;
+            return jedis.strlen(key);
+        } catch (Exception e) {
+            log.error("strlen error, key: {}", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] getrange(String key, long start, long end) {
+        if (Preconditions.isBlank(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.getrange(SafeEncoder.encode(key), start, end);
         } catch (Exception e) {
-            log.error("bloomadd error, key: {}, value: {}", key, value, e);
+            log.error("getrange error, key: {}, start: {}, end: {}", key, start, end, e);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> boolean bloomadd(String key, T value) {
+        if (Preconditions.isBlank(key) || value == null) {
             return false;
         }
+        List<Boolean> bloomadd = bloomaddAll(key, Collections.singletonList(value));
+        return bloomadd != null && bloomadd.get(0);
     }
 
     @Override
@@ -911,17 +1166,51 @@ public class CacheRedisShardService implements IRedisService {
         if (Preconditions.isBlank(key) || value == null) {
             return false;
         }
+        List<Boolean> bloomcontains = bloomcontainsAll(key, Collections.singletonList(value));
+        return bloomcontains != null && bloomcontains.get(0);
+    }
+
+    @Override
+    public <T> List<Boolean> bloomaddAll(String key, Collection<T> values) {
+        if (Preconditions.isBlank(key) || values == null) {
+            return null;
+        }
+        return bloomaddOffsets(key, BitmapHashUtils.getBitOffsets(values));
+    }
+
+    @Override
+    public List<Boolean> bloomaddOffsets(String key, List<long[]> offsets) {
+        if (Preconditions.isBlank(key) || offsets == null) {
+            return null;
+        }
         try (ShardedJedis jedis = jedisPool.getResource()) {
-            long[] offsets = BitmapHashUtils.getBitOffsets(value);
-            for (long offset : offsets) {
-                if (!jedis.getbit(key, offset)) {
-                    return false;
-                }
-            }
-            return true;
+            Jedis shard = jedis.getShard(key);
+            return LuaScript.bloom(offsets, batchSize, args -> LuaScript.BLOOM_ADD.eval(shard, key, args));
         } catch (Exception e) {
-            log.error("bloomcons error, key: {}, value: {}", key, value, e);
-            return false;
+            log.error("bloomaddOffsets error, key: {}, values: {}", key, offsets.size(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> List<Boolean> bloomcontainsAll(String key, Collection<T> values) {
+        if (Preconditions.isBlank(key) || values == null) {
+            return null;
+        }
+        return bloomcontainsOffsets(key, BitmapHashUtils.getBitOffsets(values));
+    }
+
+    @Override
+    public List<Boolean> bloomcontainsOffsets(String key, List<long[]> offsets) {
+        if (Preconditions.isBlank(key) || offsets == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Jedis shard = jedis.getShard(key);
+            return LuaScript.bloom(offsets, batchSize, args -> LuaScript.BLOOM_CONTAINS.eval(shard, key, args));
+        } catch (Exception e) {
+            log.error("bloomcontainsOffsets error, key: {}, values: {}", key, offsets.size(), e);
+            return null;
         }
     }
 
@@ -954,6 +1243,80 @@ public class CacheRedisShardService implements IRedisService {
         }
     }
 
+    @Override
+    public Long publish(String channel, String message) {
+        if (Preconditions.isBlank(channel) || message == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            //ShardedJedis不支持发布订阅，按channel固定路由到某一个分片上
+            return jedis.getShard(channel).publish(channel, message);
+        } catch (Exception e) {
+            log.error("publish error, channel: {}, message: {}", channel, message, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void subscribe(JedisPubSub jedisPubSub, String... channels) {
+        if (jedisPubSub == null || channels == null || channels.length == 0) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            jedis.getShard(channels[0]).subscribe(jedisPubSub, channels);
+        }
+    }
+
+    /**
+     * 写命令和EXPIRE放在一个事务(MULTI/EXEC)中一次发送，只需要一次网络往返，不会留下没有过期时间的key
+     * seconds为0时不需要事务，直接执行写命令
+     */
+    private static <R> R withExpire(Jedis jedis, String key, int seconds, Function<MultiKeyPipelineBase, Response<R>> command) {
+        if (seconds <= 0) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<R> response = command.apply(pipeline);
+            pipeline.sync();
+            return response.get();
+        }
+        Transaction transaction = jedis.multi();
+        Response<R> response = command.apply(transaction);
+        transaction.expire(key, seconds);
+        transaction.exec();
+        return response.get();
+    }
+
+    @Override
+    public void scan(String pattern, int count, Predicate<List<String>> consumer) {
+        if (Preconditions.isBlank(pattern) || consumer == null) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            for (Jedis shard:jedis.getAllShards()) {
+                if (!scan(shard, pattern, count, consumer)) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("scan error, pattern: {}", pattern, e);
+        }
+    }
+
+    /**
+     * 遍历一个节点上匹配pattern的key，consumer返回false时返回false
+     */
+    private static boolean scan(Jedis jedis, String pattern, int count, Predicate<List<String>> consumer) {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            if (!result.getResult().isEmpty() && !consumer.test(result.getResult())) {
+                return false;
+            }
+            cursor = result.getStringCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
 
@@ -0,0 +1,145 @@
+package cn.netdiscovery.cache.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个区域的缓存统计，按操作(get、hget、hgetAll等)分别记录各层的命中和未命中以及读取Redis的耗时
+ * 计数使用LongAdder，耗时使用LatencyHistogram，记录时没有锁；关闭耗时统计时不调用System.nanoTime()
+ */
+public class CacheStats {
+
+    private final String region;
+    private final boolean latencyEnable;
+
+    private final Map<String, Counters> operations = new ConcurrentHashMap<>();
+    private final LongAdder backfills = new LongAdder();
+    private final LongAdder discardedBackfills = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LatencyHistogram deserialize = new LatencyHistogram();
+
+    /**
+     * @param latencyEnable 是否统计耗时
+     */
+    public CacheStats(String region, boolean latencyEnable) {
+
+        this.region = region;
+        this.latencyEnable = latencyEnable;
+    }
+
+    /**
+     * 一级缓存命中，包括命中了不存在的key
+     */
+    public void l1Hit(String operation) {
+        counters(operation).l1Hits.increment();
+    }
+
+    public void l1Miss(String operation) {
+        counters(operation).l1Misses.increment();
+    }
+
+    public void diskHit(String operation) {
+        counters(operation).diskHits.increment();
+    }
+
+    public void redisHit(String operation) {
+        counters(operation).redisHits.increment();
+    }
+
+    public void redisMiss(String operation) {
+        counters(operation).redisMisses.increment();
+    }
+
+    /**
+     * 回设一级缓存，discarded表示读取期间key被写入或者失效，放弃了这次回设
+     */
+    public void backfill(boolean discarded) {
+
+        if (discarded) {
+            discardedBackfills.increment();
+        } else {
+            backfills.increment();
+        }
+    }
+
+    /**
+     * 一级缓存中被删除的key的数量，包括本节点的写入和其他节点的失效通知，清空一级缓存记为1次
+     */
+    public void invalidate(int keys) {
+        invalidations.add(keys);
+    }
+
+    /**
+     * 开始计时，关闭耗时统计时返回0
+     */
+    public long startTimer() {
+        return latencyEnable ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 记录从startTimer()开始的反序列化耗时
+     */
+    public void recordDeserialize(long start) {
+
+        if (start != 0) {
+            deserialize.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 记录从startTimer()开始的读取Redis的耗时
+     */
+    public void recordRedis(String operation, long start) {
+
+        if (start != 0) {
+            counters(operation).redisLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    public CacheStatsSnapshot snapshot() {
+
+        Map<String, CacheStatsSnapshot.Operation> snapshots = new TreeMap<>();
+        operations.forEach((name, counters) -> snapshots.put(name, new CacheStatsSnapshot.Operation(
+                counters.l1Hits.sum(),
+                counters.l1Misses.sum(),
+                counters.diskHits.sum(),
+                counters.redisHits.sum(),
+                counters.redisMisses.sum(),
+                counters.redisLatency.snapshot())));
+        return new CacheStatsSnapshot(region, snapshots, backfills.sum(), discardedBackfills.sum(), invalidations.sum(), deserialize.snapshot());
+    }
+
+    public void reset() {
+
+        for (Counters counters:operations.values()) {
+            counters.l1Hits.reset();
+            counters.l1Misses.reset();
+            counters.diskHits.reset();
+            counters.redisHits.reset();
+            counters.redisMisses.reset();
+            counters.redisLatency.reset();
+        }
+        backfills.reset();
+        discardedBackfills.reset();
+        invalidations.reset();
+        deserialize.reset();
+    }
+
+    private Counters counters(String operation) {
+
+        Counters counters = operations.get(operation);
+        return counters != null ? counters : operations.computeIfAbsent(operation, name -> new Counters());
+    }
+
+    private static class Counters {
+
+        private final LongAdder l1Hits = new LongAdder();
+        private final LongAdder l1Misses = new LongAdder();
+        private final LongAdder diskHits = new LongAdder();
+        private final LongAdder redisHits = new LongAdder();
+        private final LongAdder redisMisses = new LongAdder();
+        private final LatencyHistogram redisLatency = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,169 @@
+package cn.netdiscovery.cache.stats;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 某一时刻的缓存统计，不会再变化
+ */
+public class CacheStatsSnapshot {
+
+    private final String region;
+    private final Map<String, Operation> operations;
+    private final long backfills;
+    private final long discardedBackfills;
+    private final long invalidations;
+    private final LatencyHistogram.Snapshot deserialize;
+
+    CacheStatsSnapshot(String region, Map<String, Operation> operations, long backfills, long discardedBackfills,
+                       long invalidations, LatencyHistogram.Snapshot deserialize) {
+        this.region = region;
+        this.operations = Collections.unmodifiableMap(operations);
+        this.backfills = backfills;
+        this.discardedBackfills = discardedBackfills;
+        this.invalidations = invalidations;
+        this.deserialize = deserialize;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * 按操作名称(get、hget、hmget、hgetAll、sismember、smembers、lrange)分别统计
+     */
+    public Map<String, Operation> getOperations() {
+        return operations;
+    }
+
+    public long getL1Hits() {
+        return operations.values().stream().mapToLong(Operation::getL1Hits).sum();
+    }
+
+    public long getL1Misses() {
+        return operations.values().stream().mapToLong(Operation::getL1Misses).sum();
+    }
+
+    public long getDiskHits() {
+        return operations.values().stream().mapToLong(Operation::getDiskHits).sum();
+    }
+
+    public long getRedisHits() {
+        return operations.values().stream().mapToLong(Operation::getRedisHits).sum();
+    }
+
+    public long getRedisMisses() {
+        return operations.values().stream().mapToLong(Operation::getRedisMisses).sum();
+    }
+
+    /**
+     * 所有操作的一级缓存命中率
+     */
+    public double getL1HitRate() {
+        return rate(getL1Hits(), getL1Misses());
+    }
+
+    public long getBackfills() {
+        return backfills;
+    }
+
+    /**
+     * 因为读取期间key被写入或者失效而放弃的回设次数
+     */
+    public long getDiscardedBackfills() {
+        return discardedBackfills;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * 一级缓存命中之后把json转换成对象的耗时，以及从Redis读取之后的反序列化耗时
+     */
+    public LatencyHistogram.Snapshot getDeserialize() {
+        return deserialize;
+    }
+
+    @Override
+    public String toString() {
+        return "region=" + region
+                + ", l1Hits=" + getL1Hits()
+                + ", l1Misses=" + getL1Misses()
+                + ", l1HitRate=" + getL1HitRate()
+                + ", diskHits=" + getDiskHits()
+                + ", redisHits=" + getRedisHits()
+                + ", redisMisses=" + getRedisMisses()
+                + ", backfills=" + backfills
+                + ", discardedBackfills=" + discardedBackfills
+                + ", invalidations=" + invalidations
+                + ", deserialize={" + deserialize + "}"
+                + ", operations=" + operations;
+    }
+
+    private static double rate(long hits, long misses) {
+
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    public static class Operation {
+
+        private final long l1Hits;
+        private final long l1Misses;
+        private final long diskHits;
+        private final long redisHits;
+        private final long redisMisses;
+        private final LatencyHistogram.Snapshot redisLatency;
+
+        Operation(long l1Hits, long l1Misses, long diskHits, long redisHits, long redisMisses, LatencyHistogram.Snapshot redisLatency) {
+            this.l1Hits = l1Hits;
+            this.l1Misses = l1Misses;
+            this.diskHits = diskHits;
+            this.redisHits = redisHits;
+            this.redisMisses = redisMisses;
+            this.redisLatency = redisLatency;
+        }
+
+        public long getL1Hits() {
+            return l1Hits;
+        }
+
+        public long getL1Misses() {
+            return l1Misses;
+        }
+
+        public double getL1HitRate() {
+            return rate(l1Hits, l1Misses);
+        }
+
+        public long getDiskHits() {
+            return diskHits;
+        }
+
+        public long getRedisHits() {
+            return redisHits;
+        }
+
+        public long getRedisMisses() {
+            return redisMisses;
+        }
+
+        /**
+         * 一级缓存未命中之后读取Redis的耗时
+         */
+        public LatencyHistogram.Snapshot getRedisLatency() {
+            return redisLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "{l1Hits=" + l1Hits
+                    + ", l1Misses=" + l1Misses
+                    + ", diskHits=" + diskHits
+                    + ", redisHits=" + redisHits
+                    + ", redisMisses=" + redisMisses
+                    + ", redisLatency={" + redisLatency + "}}";
+        }
+    }
+}
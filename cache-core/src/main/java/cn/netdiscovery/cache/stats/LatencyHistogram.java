@@ -0,0 +1,129 @@
+package cn.netdiscovery.cache.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时的直方图，按2的幂分桶(单位为纳秒)，第i个桶记录[2^(i-1), 2^i)之间的耗时
+ * 每个桶是一个LongAdder，并发记录时没有锁竞争，分位数只能精确到所在的桶
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40; // 最大的桶约为9分钟，更长的耗时都记在最后一个桶
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public Snapshot snapshot() {
+
+        long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = buckets[i].sum();
+        }
+        return new Snapshot(values, count.sum(), totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * 重置期间并发的记录可能一部分被清除，不影响之后的统计
+     */
+    public void reset() {
+
+        for (LongAdder bucket:buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    public static class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        /**
+         * 分位数所在的桶的上界，percentile的取值范围为(0, 1]，例如0.99
+         */
+        public long getPercentileNanos(double percentile) {
+
+            long total = 0;
+            for (long bucket:buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(maxNanos, 1L << i);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * 每个桶的计数，第i个桶记录[2^(i-1), 2^i)纳秒之间的耗时
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + ", meanNanos=" + getMeanNanos()
+                    + ", p50Nanos=" + getPercentileNanos(0.5)
+                    + ", p99Nanos=" + getPercentileNanos(0.99)
+                    + ", maxNanos=" + maxNanos;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package cn.netdiscovery.cache.utils;
 
 import cn.netdiscovery.cache.common.SerializableUtils;
-import redis.clients.util.MurmurHash;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
+ * 计算BloomFilter的bit的offset
+ * 值按照SerializableUtils.toJson()的结果(UTF-8)进行Hash；String、Long、Integer、Short、Byte和byte[]直接写入线程本地的缓冲区，
+ * 得到和toJson()相同的字节，不经过Gson，也不创建String和byte[]，其他类型仍然使用toJson()
  * Created by tony on 2019-01-17.
  */
 public class BitmapHashUtils {
@@ -13,13 +18,38 @@ public class BitmapHashUtils {
     //Redis的Bitmap最大比特位为2的32次方，占用空间512M
     private static long MAX_BIT_COUNT = (long) Math.pow(2, 32);
 
+    private static final int HASH_FUNCTION_COUNT = 8;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024; // 超过的值不使用线程本地的缓冲区，避免线程一直持有大数组
+    private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<HashBuffer> BUFFERS = ThreadLocal.withInitial(HashBuffer::new);
+
     /**
      * 使用Redis的MurmurHash进行多次Hash获取bit的offset值
      * 2的32次方的Bitmap，8次Hash，错误率在万分之5以下，大约可以对4亿左右的32位字符串去重，对2亿左右的64位字符串去重
      * @param value Hash的值
      */
     public static <T> long[] getBitOffsets(T value) {
-        return murmurHash(value, 8, MAX_BIT_COUNT);
+        return murmurHash(value, HASH_FUNCTION_COUNT, MAX_BIT_COUNT);
+    }
+
+    /**
+     * 和getBitOffsets(value)相同，offset写入调用者的数组，数组的长度至少为8
+     */
+    public static <T> void getBitOffsets(T value, long[] offsets) {
+        murmurHash(value, HASH_FUNCTION_COUNT, MAX_BIT_COUNT, offsets);
+    }
+
+    /**
+     * 批量获取bit的offset值，结果和values一一对应，值为null时对应null
+     */
+    public static <T> List<long[]> getBitOffsets(Collection<T> values) {
+
+        List<long[]> offsets = new ArrayList<>(values.size());
+        for (T value:values) {
+            offsets.add(value != null ? getBitOffsets(value) : null);
+        }
+        return offsets;
     }
 
     /**
@@ -31,16 +61,299 @@ public class BitmapHashUtils {
     public static <T> long[] murmurHash(T value, int hashFunctionCount, long maxBitCount) {
 
         long[] offsets = new long[hashFunctionCount];
-        byte[] bytes;
+        murmurHash(value, hashFunctionCount, maxBitCount, offsets);
+        return offsets;
+    }
 
-        bytes = SerializableUtils.toJson(value).getBytes(StandardCharsets.UTF_8);
+    /**
+     * 和murmurHash(value, hashFunctionCount, maxBitCount)相同，offset写入调用者的数组
+     * 结果和Redis的MurmurHash(MurmurHash2)一致，已经写入Redis的Bitmap可以继续使用
+     */
+    public static <T> void murmurHash(T value, int hashFunctionCount, long maxBitCount, long[] offsets) {
 
-        int hash1 = MurmurHash.hash(bytes, 0);
-        int hash2 = MurmurHash.hash(bytes, hash1);
+        HashBuffer buffer = BUFFERS.get();
+        byte[] bytes = buffer.encode(value);
+        int length = bytes == buffer.bytes ? buffer.length : bytes.length;
+
+        int hash1 = murmur2(bytes, length, 0);
+        int hash2 = murmur2(bytes, length, hash1);
         for (int i = 0; i < hashFunctionCount; ++i) {
             offsets[i] = Math.abs((hash1 + i * hash2) % maxBitCount);
         }
-        return offsets;
     }
 
+    /**
+     * 计算值在拆分成多个子Bitmap的BloomFilter中的位置，offset写入调用者的数组，返回子Bitmap的序号
+     * 使用128位的murmur3，两个64位的Hash值组合出offsets.length个offset；Redis的32位MurmurHash在短字符串上分布不够均匀，只用于原来的BloomFilter
+     * @param value Hash的值
+     * @param bitCount 每个子Bitmap的比特位
+     * @param shards 子Bitmap的数量
+     * @param offsets 子Bitmap中的offset，数组的长度为Hash次数
+     */
+    public static <T> int murmur3(T value, long bitCount, int shards, long[] offsets) {
+
+        HashBuffer buffer = BUFFERS.get();
+        byte[] bytes = buffer.encode(value);
+        buffer.murmur3(bytes, bytes == buffer.bytes ? buffer.length : bytes.length);
+
+        long hash1 = buffer.hash1;
+        long hash2 = buffer.hash2;
+        long combined = hash1;
+        for (int i = 0; i < offsets.length; ++i) {
+            combined += hash2;
+            offsets[i] = (combined & Long.MAX_VALUE) % bitCount;
+        }
+        return shards > 1 ? (int) Math.floorMod(hash2 ^ (hash1 >>> 32), (long) shards) : 0;
+    }
+
+    /**
+     * MurmurHash2，和redis.clients.util.MurmurHash.hash(byte[], int)的结果相同，不需要ByteBuffer
+     */
+    static int murmur2(byte[] data, int length, int seed) {
+
+        int m = 0x5bd1e995;
+        int r = 24;
+        int h = seed ^ length;
+
+        int i = 0;
+        for (; length - i >= 4; i += 4) {
+            int k = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | data[i + 3] << 24;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+
+        if (i < length) {
+            int k = 0;
+            for (int j = length - 1; j >= i; j--) {
+                k = k << 8 | (data[j] & 0xff);
+            }
+            h ^= k;
+            h *= m;
+        }
+
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    /**
+     * 每个线程一个，保存编码之后的字节和murmur3的结果
+     */
+    private static class HashBuffer {
+
+        private byte[] bytes = new byte[256];
+        private int length;
+        private long hash1;
+        private long hash2;
+
+        /**
+         * 得到value的toJson()的UTF-8字节，可以直接编码时写入bytes并返回bytes，否则返回toJson()的结果
+         */
+        private byte[] encode(Object value) {
+
+            length = 0;
+            if (value instanceof String) {
+                if (encodeString((String) value)) {
+                    return bytes;
+                }
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                ensureCapacity(20);
+                writeLong(((Number) value).longValue());
+                return bytes;
+            } else if (value instanceof byte[]) {
+                if (encodeBytes((byte[]) value)) {
+                    return bytes;
+                }
+            }
+            return SerializableUtils.toJson(value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * toJson()对String直接返回原值，只需要UTF-8编码；遇到不成对的代理字符时返回false，由String.getBytes()处理
+         */
+        private boolean encodeString(String value) {
+
+            int chars = value.length();
+            if ((long) chars * 3 > MAX_BUFFER_SIZE) {
+                return false;
+            }
+            ensureCapacity(chars * 3);
+
+            byte[] b = bytes;
+            int n = 0;
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    b[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[n++] = (byte) (0xc0 | c >> 6);
+                    b[n++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    if (!Character.isHighSurrogate(c) || i + 1 >= chars || !Character.isLowSurrogate(value.charAt(i + 1))) {
+                        return false;
+                    }
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    b[n++] = (byte) (0xf0 | codePoint >> 18);
+                    b[n++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    b[n++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    b[n++] = (byte) (0x80 | codePoint & 0x3f);
+                } else {
+                    b[n++] = (byte) (0xe0 | c >> 12);
+                    b[n++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    b[n++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+            length = n;
+            return true;
+        }
+
+        /**
+         * toJson()把byte[]转换成数组，例如[1,-2,3]
+         */
+        private boolean encodeBytes(byte[] value) {
+
+            if ((long) value.length * 5 + 2 > MAX_BUFFER_SIZE) {
+                return false;
+            }
+            ensureCapacity(value.length * 5 + 2);
+
+            bytes[length++] = '[';
+            for (int i = 0; i < value.length; i++) {
+                if (i > 0) {
+                    bytes[length++] = ',';
+                }
+                writeLong(value[i]);
+            }
+            bytes[length++] = ']';
+            return true;
+        }
+
+        /**
+         * 写入十进制数字，和Long.toString()相同
+         */
+        private void writeLong(long value) {
+
+            if (value == Long.MIN_VALUE) {
+                //-9223372036854775808，取反会溢出
+                for (int i = 0; i < LONG_MIN_VALUE.length; i++) {
+                    bytes[length++] = LONG_MIN_VALUE[i];
+                }
+                return;
+            }
+            if (value < 0) {
+                bytes[length++] = '-';
+                value = -value;
+            }
+
+            int start = length;
+            do {
+                bytes[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+
+            //倒序写入之后反转
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte tmp = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = tmp;
+            }
+        }
+
+        private void ensureCapacity(int size) {
+
+            if (length + size > bytes.length) {
+                byte[] grown = new byte[Math.max(length + size, bytes.length * 2)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+
+        /**
+         * 128位的MurmurHash3(x64，seed为0)，结果和Guava的Hashing.murmur3_128()相同，写入hash1和hash2
+         */
+        private void murmur3(byte[] data, int length) {
+
+            long c1 = 0x87c37b91114253d5L;
+            long c2 = 0x4cf5ad432745937fL;
+            long h1 = 0;
+            long h2 = 0;
+
+            int i = 0;
+            for (; length - i >= 16; i += 16) {
+                long k1 = getLong(data, i);
+                long k2 = getLong(data, i + 8);
+
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            int remaining = length - i;
+            if (remaining > 0) {
+                long k1 = 0;
+                long k2 = 0;
+                for (int j = remaining - 1; j >= 8; j--) {
+                    k2 = k2 << 8 | (data[i + j] & 0xffL);
+                }
+                for (int j = Math.min(remaining, 8) - 1; j >= 0; j--) {
+                    k1 = k1 << 8 | (data[i + j] & 0xffL);
+                }
+
+                if (remaining > 8) {
+                    k2 *= c2;
+                    k2 = Long.rotateLeft(k2, 33);
+                    k2 *= c1;
+                    h2 ^= k2;
+                }
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+            }
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            hash1 = h1;
+            hash2 = h2;
+        }
+
+        private static long getLong(byte[] data, int i) {
+
+            return (data[i] & 0xffL) | (data[i + 1] & 0xffL) << 8 | (data[i + 2] & 0xffL) << 16 | (data[i + 3] & 0xffL) << 24
+                    | (data[i + 4] & 0xffL) << 32 | (data[i + 5] & 0xffL) << 40 | (data[i + 6] & 0xffL) << 48 | (data[i + 7] & 0xffL) << 56;
+        }
+
+        private static long fmix64(long k) {
+
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
 }
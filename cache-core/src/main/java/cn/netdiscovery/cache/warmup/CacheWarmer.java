@@ -0,0 +1,236 @@
+package cn.netdiscovery.cache.warmup;
+
+import cn.netdiscovery.cache.local.LocalCache;
+import cn.netdiscovery.cache.redis.IRedisService;
+import cn.netdiscovery.cache.redis.TtlValue;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 启动之后在后台预热一级缓存：用SCAN遍历匹配pattern的key，按batchSize分批交给工作线程，
+ * 每批通过pipeline读取值(GET或者HGETALL)和剩余的过期时间，写入一级缓存时不经过准入过滤
+ * 超过时间或者字节数(按字符数估算)的限制时停止预热，预热完成之前节点可以不接入流量
+ * 字符串和hash需要分别配置pattern，hash的pattern匹配到其他类型的key时这一批会读取失败
+ */
+@Slf4j
+public class CacheWarmer {
+
+    private static final long REPORT_MILLIS = 1000;
+
+    private final IRedisService redis;
+    private final LocalCache localCache;
+    private final String name;
+    private final List<String> patterns;
+    private final List<String> hashPatterns;
+    private final int threads;
+    private final int batchSize;
+    private final int scanCount;
+    private final long maxMillis;
+    private final long maxBytes;
+    private final int hashMaxFields;
+
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile long startTime;
+    private volatile long lastReport;
+    private volatile boolean stopped;
+
+    /**
+     * @param patterns     字符串类型的key的pattern，已经带有区域的前缀
+     * @param hashPatterns hash类型的key的pattern，已经带有区域的前缀
+     */
+    public CacheWarmer(IRedisService redis, LocalCache localCache, String name, List<String> patterns, List<String> hashPatterns,
+                       int threads, int batchSize, int scanCount, long maxMillis, long maxBytes, int hashMaxFields) {
+
+        this.redis = redis;
+        this.localCache = localCache;
+        this.name = name;
+        this.patterns = patterns;
+        this.hashPatterns = hashPatterns;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.scanCount = scanCount;
+        this.maxMillis = maxMillis;
+        this.maxBytes = maxBytes;
+        this.hashMaxFields = hashMaxFields;
+    }
+
+    public void start() {
+
+        Thread thread = new Thread(this::run, "cache-warmup-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 预热是否已经结束(完成、超出限制或者出错)
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * 等待预热结束，超时返回false
+     */
+    public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public long getScanned() {
+        return scanned.sum();
+    }
+
+    public long getLoaded() {
+        return loaded.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    private void run() {
+
+        startTime = System.currentTimeMillis();
+        lastReport = startTime;
+        //队列满时由扫描线程自己读取，避免扫描得比读取快太多
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), r -> {
+                    Thread thread = new Thread(r, "cache-warmup-" + name + "-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            for (String pattern:patterns) {
+                scan(executor, pattern, false);
+            }
+            for (String pattern:hashPatterns) {
+                scan(executor, pattern, true);
+            }
+            executor.shutdown();
+            executor.awaitTermination(Math.max(1, maxMillis - elapsed()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("warmup error, region: {}", name, e);
+        } finally {
+            stopped = true;
+            executor.shutdownNow();
+            log.info("warmup finished, region: {}, scanned: {}, loaded: {}, bytes: {}, millis: {}",
+                    name, scanned.sum(), loaded.sum(), bytes.sum(), elapsed());
+            done.countDown();
+        }
+    }
+
+    private void scan(ExecutorService executor, String pattern, boolean hash) {
+
+        if (isStopped()) {
+            return;
+        }
+
+        redis.scan(pattern, scanCount, keys -> {
+            scanned.add(keys.size());
+            for (int i = 0; i < keys.size(); i += batchSize) {
+                List<String> batch = new ArrayList<>(keys.subList(i, Math.min(keys.size(), i + batchSize)));
+                executor.execute(() -> load(batch, hash));
+            }
+            report();
+            return !isStopped();
+        });
+    }
+
+    private void load(List<String> keys, boolean hash) {
+
+        if (isStopped()) {
+            return;
+        }
+
+        //读取Redis之前记下版本号，预热期间被写入或者失效的key不会被旧值覆盖
+        long[] generations = new long[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            generations[i] = localCache.generation(keys.get(i));
+        }
+
+        if (hash) {
+            List<TtlValue<Map<String, String>>> values = redis.hgetAllWithTtl(keys);
+            if (values == null) {
+                return;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                TtlValue<Map<String, String>> value = values.get(i);
+                long expireMillis = LocalCache.expireMillis(value.getTtlMillis());
+                Map<String, String> map = value.getValue();
+                if (expireMillis < 0 || map == null || map.isEmpty() || map.size() > hashMaxFields) {
+                    continue;
+                }
+                localCache.putHash(keys.get(i), map, expireMillis, generations[i]);
+                long size = keys.get(i).length();
+                for (Map.Entry<String, String> entry:map.entrySet()) {
+                    size += entry.getKey().length() + entry.getValue().length();
+                }
+                loaded(size);
+            }
+        } else {
+            List<TtlValue<String>> values = redis.mgetWithTtl(keys);
+            if (values == null) {
+                return;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                TtlValue<String> value = values.get(i);
+                long expireMillis = LocalCache.expireMillis(value.getTtlMillis());
+                String json = value.getValue();
+                if (expireMillis < 0 || json == null) {
+                    continue;
+                }
+                localCache.putJson(keys.get(i), json, expireMillis, generations[i]);
+                loaded(keys.get(i).length() + json.length());
+            }
+        }
+    }
+
+    private void loaded(long size) {
+
+        loaded.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * 检查时间和字节数的限制，超出时停止预热
+     */
+    private boolean isStopped() {
+
+        if (stopped) {
+            return true;
+        }
+        if (elapsed() >= maxMillis || bytes.sum() >= maxBytes) {
+            stopped = true;
+            log.warn("warmup budget exceeded, region: {}, loaded: {}, bytes: {}, millis: {}", name, loaded.sum(), bytes.sum(), elapsed());
+        }
+        return stopped;
+    }
+
+    private void report() {
+
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= REPORT_MILLIS) {
+            lastReport = now;
+            log.info("warmup progress, region: {}, scanned: {}, loaded: {}, bytes: {}", name, scanned.sum(), loaded.sum(), bytes.sum());
+        }
+    }
+
+    private long elapsed() {
+        return System.currentTimeMillis() - startTime;
+    }
+}
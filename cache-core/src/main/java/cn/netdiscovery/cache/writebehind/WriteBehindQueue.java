@@ -0,0 +1,197 @@
+package cn.netdiscovery.cache.writebehind;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import cn.netdiscovery.cache.config.Constant;
+import cn.netdiscovery.cache.redis.IRedisService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 异步写回Redis的队列，适合允许丢失少量数据、写入很频繁的key(例如浏览次数、最后访问时间)
+ * 同一个key在一次写回之前的多次写入只保留最后一次，按队列中key的数量或者时间间隔批量写回，
+ * 每批使用一次mset(pipeline)写入，过期时间和值一起写入，不再需要单独的expire
+ * 进程异常退出时队列中还没有写回的数据会丢失；同一个key混用异步写入和同步写入时，不保证正在写回的旧值不会覆盖同步写入的值，
+ * 删除之前调用remove会等待正在写回的批次完成，写回不会在删除之后重新创建这个key
+ */
+@Slf4j
+public class WriteBehindQueue implements Closeable {
+
+    private final IRedisService redis;
+    private final int batchSize;
+    private final Consumer<String[]> flushed;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Set<String> writing = new HashSet<>(); // 正在写回的key，通过this加锁访问
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * @param flushed 一批key写回Redis之后的回调，用于通知其他节点
+     */
+    public WriteBehindQueue(IRedisService redis, String name, int batchSize, long flushMillis, Consumer<String[]> flushed) {
+
+        this.redis = redis;
+        this.batchSize = batchSize;
+        this.flushed = flushed;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-write-behind-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写入队列，覆盖这个key还没有写回的值
+     */
+    public <T> String add(String key, T value, int seconds) {
+
+        if (key == null || value == null || seconds < 0) {
+            return null;
+        }
+
+        pending.put(key, new Pending(SerializableUtils.toJson(value), seconds));
+        if (pending.size() >= batchSize && !flusher.isShutdown() && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+        return Constant.OK;
+    }
+
+    /**
+     * 还没有写回Redis的值，不存在时返回null
+     */
+    public String get(String key) {
+
+        Pending value = pending.get(key);
+        return value != null ? value.json : null;
+    }
+
+    /**
+     * 这些key被同步写入或者删除，丢弃队列中还没有写回的值，有key正在写回时等待这一批写回完成
+     * 不能在flushed回调中调用
+     */
+    public synchronized void remove(String... keys) {
+
+        for (String key:keys) {
+            pending.remove(key);
+        }
+        try {
+            while (isWriting(keys)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * 把队列中的数据按batchSize分批写回Redis
+     * 写回成功之后才从队列中移除，期间有新的写入时保留新的值等待下一次写回，写回失败时下一次重试
+     */
+    public void flush() {
+
+        Map<String, Pending> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, Pending> entry:pending.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() >= batchSize) {
+                write(batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void write(Map<String, Pending> batch) {
+
+        //和remove互斥：已经被remove的值不再写回，开始写回之后remove会等待
+        synchronized (this) {
+            batch.entrySet().removeIf(entry -> pending.get(entry.getKey()) != entry.getValue());
+            if (batch.isEmpty()) {
+                return;
+            }
+            writing.addAll(batch.keySet());
+        }
+
+        Map<String, String> values = new LinkedHashMap<>();
+        Map<String, Integer> seconds = new HashMap<>();
+        batch.forEach((key, value) -> {
+            values.put(key, value.json);
+            if (value.seconds > 0) {
+                seconds.put(key, value.seconds);
+            }
+        });
+        String result;
+        try {
+            result = redis.mset(values, seconds);
+            if (result != null) {
+                batch.forEach(pending::remove);
+            }
+        } finally {
+            synchronized (this) {
+                writing.removeAll(batch.keySet());
+                notifyAll();
+            }
+        }
+
+        if (result == null) {
+            log.error("write behind error, keys: {}", values.size());
+            return;
+        }
+        flushed.accept(values.keySet().toArray(new String[0]));
+    }
+
+    private boolean isWriting(String... keys) {
+
+        for (String key:keys) {
+            if (writing.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static class Pending {
+
+        private final String json;
+        private final int seconds;
+
+        private Pending(String json, int seconds) {
+            this.json = json;
+            this.seconds = seconds;
+        }
+    }
+}
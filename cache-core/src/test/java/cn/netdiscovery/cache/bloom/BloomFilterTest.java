@@ -0,0 +1,166 @@
+package cn.netdiscovery.cache.bloom;
+
+import cn.netdiscovery.cache.redis.IRedisService;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void optimalSizing() {
+
+        long bits = BloomFilter.optimalBits(1000000, 0.01);
+        assertEquals(9585059, bits);
+        assertEquals(7, BloomFilter.optimalHashCount(1000000, bits));
+        assertEquals(64, BloomFilter.optimalBits(1, 0.5));
+        assertEquals(1, BloomFilter.optimalHashCount(1000, 64));
+    }
+
+    @Test
+    public void splitsIntoShards() {
+
+        BloomFilter filter = new BloomFilter(fakeRedis(new HashMap<>()), "bf", 1000000, 0.01, 1 << 20);
+        assertEquals(10, filter.getShards());
+        assertTrue(filter.getShardBits() <= 1 << 20);
+        assertTrue(filter.getBits() >= BloomFilter.optimalBits(1000000, 0.01));
+        assertEquals("bf:0", filter.getKeys().get(0));
+        assertEquals("bf:9", filter.getKeys().get(9));
+
+        BloomFilter single = new BloomFilter(fakeRedis(new HashMap<>()), "bf", 1000, 0.01, 1 << 20);
+        assertEquals(Arrays.asList("bf"), single.getKeys());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidFpp() {
+
+        new BloomFilter(fakeRedis(new HashMap<>()), "bf", 1000, 1, 1 << 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedShard() {
+
+        new BloomFilter(fakeRedis(new HashMap<>()), "bf", 1000, 0.01, (1L << 32) + 1);
+    }
+
+    @Test
+    public void falsePositiveRateWithinTarget() {
+
+        Map<String, BitSet> bitmaps = new HashMap<>();
+        BloomFilter filter = new BloomFilter(fakeRedis(bitmaps), "bf", 10000, 0.01, 1 << 14);
+        assertTrue(filter.getShards() > 1);
+
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            values.add("value" + i);
+        }
+        List<Boolean> added = filter.addAll(values);
+        assertEquals(10000, added.size());
+        assertTrue(filter.add("another"));
+        assertFalse(filter.add("another"));
+        assertEquals(filter.getShards(), bitmaps.size());
+
+        for (Boolean contains:filter.containsAll(values)) {
+            assertTrue(contains);
+        }
+        assertFalse(filter.contains(null));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.contains("absent" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 150);
+    }
+
+    @Test
+    public void scalableFilterGrowsAndKeepsFpp() {
+
+        Map<String, BitSet> bitmaps = new HashMap<>();
+        ScalableBloomFilter filter = new ScalableBloomFilter(fakeRedis(bitmaps), "sbf", 1000, 0.01, 1 << 20);
+
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add("value" + i);
+        }
+        filter.addAll(values.subList(0, 500));
+        filter.addAll(values.subList(500, 5000));
+        assertTrue(filter.getCount() <= 5000 && filter.getCount() > 4900);
+        //容量依次为1000、2000、4000
+        assertEquals(3, filter.getStages());
+        assertTrue(bitmaps.containsKey("sbf:s0") && bitmaps.containsKey("sbf:s2"));
+
+        for (Boolean contains:filter.containsAll(values)) {
+            assertTrue(contains);
+        }
+        long count = filter.getCount();
+        assertFalse(filter.add("value1"));
+        assertEquals(count, filter.getCount());
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.contains("absent" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 150);
+
+        filter.delete();
+        assertTrue(bitmaps.isEmpty());
+    }
+
+    /**
+     * 只实现BloomFilter用到的命令，Bitmap保存在内存中
+     */
+    private static IRedisService fakeRedis(Map<String, BitSet> bitmaps) {
+
+        Map<String, Long> counters = new HashMap<>();
+        return (IRedisService) Proxy.newProxyInstance(BloomFilterTest.class.getClassLoader(), new Class[]{IRedisService.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "bloomaddOffsets":
+                case "bloomcontainsOffsets": {
+                    boolean add = method.getName().equals("bloomaddOffsets");
+                    BitSet bitmap = add ? bitmaps.computeIfAbsent((String) args[0], k -> new BitSet()) : bitmaps.getOrDefault(args[0], new BitSet());
+                    List<Boolean> result = new ArrayList<>();
+                    for (long[] offsets:(List<long[]>) args[1]) {
+                        boolean changed = false;
+                        boolean found = true;
+                        for (long offset:offsets) {
+                            boolean set = bitmap.get((int) offset);
+                            found &= set;
+                            if (add && !set) {
+                                bitmap.set((int) offset);
+                                changed = true;
+                            }
+                        }
+                        result.add(add ? changed : found);
+                    }
+                    return result;
+                }
+                case "get":
+                    return counters.containsKey(args[0]) ? String.valueOf(counters.get(args[0])) : null;
+                case "incr":
+                    return counters.merge((String) args[0], (long) (Integer) args[1], Long::sum);
+                case "mdel":
+                    for (String key:(List<String>) args[0]) {
+                        bitmaps.remove(key);
+                        counters.remove(key);
+                    }
+                    return (long) ((List<String>) args[0]).size();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
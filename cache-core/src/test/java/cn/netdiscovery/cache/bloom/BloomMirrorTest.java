@@ -0,0 +1,193 @@
+package cn.netdiscovery.cache.bloom;
+
+import cn.netdiscovery.cache.redis.IRedisService;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomMirrorTest {
+
+    private static final int PAGE_BITS = 1 << 19;
+
+    @Test
+    public void maskAndIndexFollowRedisBitOrder() {
+
+        //Redis中offset 0是第一个字节的最高位，按大端读成long之后是long的最高位
+        assertEquals(Long.MIN_VALUE, BloomMirror.mask(0));
+        assertEquals(1L << 56, BloomMirror.mask(7));
+        assertEquals(1L << 55, BloomMirror.mask(8));
+        assertEquals(1L, BloomMirror.mask(63));
+        assertEquals(Long.MIN_VALUE, BloomMirror.mask(64));
+
+        assertEquals(0, BloomMirror.index(63));
+        assertEquals(1, BloomMirror.index(64));
+        assertEquals(PAGE_BITS / 64 - 1, BloomMirror.index(PAGE_BITS - 1));
+        assertEquals(0, BloomMirror.index(PAGE_BITS));
+        assertEquals(1, BloomMirror.index(PAGE_BITS + 64));
+    }
+
+    @Test
+    public void loadReadsRedisBits() {
+
+        AtomicReference<byte[]> bitmap = new AtomicReference<>(new byte[0]);
+        long[] offsets = {0, 7, 8, 63, 64, PAGE_BITS - 1, PAGE_BITS, PAGE_BITS + 65};
+        for (long offset:offsets) {
+            setbit(bitmap, offset);
+        }
+
+        BloomMirror mirror = new BloomMirror(fakeRedis(bitmap, new AtomicInteger()), "bf", 1 << 20, 4);
+        assertFalse(mirror.isAvailable());
+        mirror.refresh();
+        assertTrue(mirror.isAvailable());
+
+        for (long offset:offsets) {
+            assertTrue(String.valueOf(offset), mirror.contains(new long[]{offset}));
+        }
+        assertTrue(mirror.contains(offsets));
+        for (long offset:new long[]{1, 6, 9, 62, 65, PAGE_BITS + 1, PAGE_BITS + 64, 3L * PAGE_BITS}) {
+            assertFalse(String.valueOf(offset), mirror.contains(new long[]{offset}));
+        }
+        assertEquals(2L * PAGE_BITS / 8, mirror.getBytes());
+    }
+
+    @Test
+    public void localSetMatchesLoadedBits() {
+
+        AtomicReference<byte[]> bitmap = new AtomicReference<>(new byte[0]);
+        long[] offsets = {3, 64, PAGE_BITS + 7};
+        BloomMirror local = new BloomMirror(fakeRedis(bitmap, new AtomicInteger()), "bf", 1 << 20, 4);
+        local.set(offsets);
+        assertTrue(local.contains(offsets));
+        assertFalse(local.contains(new long[]{4}));
+
+        for (long offset:offsets) {
+            setbit(bitmap, offset);
+        }
+        BloomMirror loaded = new BloomMirror(fakeRedis(bitmap, new AtomicInteger()), "bf", 1 << 20, 4);
+        loaded.refresh();
+        assertTrue(loaded.contains(offsets));
+        assertEquals(local.getBytes(), loaded.getBytes());
+    }
+
+    @Test
+    public void refreshOnlyReadsChangedPages() {
+
+        AtomicReference<byte[]> bitmap = new AtomicReference<>(new byte[0]);
+        AtomicInteger reads = new AtomicInteger();
+        for (int page = 0; page < 4; page++) {
+            setbit(bitmap, (long) page * PAGE_BITS);
+        }
+        BloomMirror mirror = new BloomMirror(fakeRedis(bitmap, reads), "bf", 1 << 20, 2);
+        mirror.refresh();
+        assertEquals(4, reads.get());
+
+        //没有变化的页只用BITCOUNT检查
+        reads.set(0);
+        mirror.refresh();
+        mirror.refresh();
+        assertEquals(0, reads.get());
+
+        //每次最多检查2页，两次刷新之后所有的页都检查过
+        setbit(bitmap, 3L * PAGE_BITS + 100);
+        mirror.refresh();
+        assertFalse(mirror.contains(new long[]{3L * PAGE_BITS + 100}));
+        mirror.refresh();
+        assertTrue(mirror.contains(new long[]{3L * PAGE_BITS + 100}));
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void refreshKeepsLocalBitsAndFollowsDelete() {
+
+        AtomicReference<byte[]> bitmap = new AtomicReference<>(new byte[0]);
+        setbit(bitmap, 10);
+        BloomMirror mirror = new BloomMirror(fakeRedis(bitmap, new AtomicInteger()), "bf", 1 << 20, 4);
+        mirror.refresh();
+
+        //本地写入之后Redis中也写入了，其他节点又写入了一个bit
+        setbit(bitmap, 20);
+        mirror.set(new long[]{20});
+        setbit(bitmap, 30);
+        mirror.refresh();
+        assertTrue(mirror.contains(new long[]{10, 20, 30}));
+
+        bitmap.set(new byte[0]);
+        mirror.refresh();
+        assertTrue(mirror.isAvailable());
+        assertFalse(mirror.contains(new long[]{10}));
+
+        //删除之后重新写入，Redis中1的个数比本地少时用Redis的数据替换
+        mirror.set(new long[]{40, 50});
+        setbit(bitmap, 60);
+        mirror.refresh();
+        assertTrue(mirror.contains(new long[]{60}));
+        assertFalse(mirror.contains(new long[]{40}));
+    }
+
+    @Test
+    public void oversizedBitmapIsNotMirrored() {
+
+        AtomicReference<byte[]> bitmap = new AtomicReference<>(new byte[0]);
+        setbit(bitmap, 2L * PAGE_BITS);
+        BloomMirror mirror = new BloomMirror(fakeRedis(bitmap, new AtomicInteger()), "bf", PAGE_BITS / 8, 4);
+        mirror.refresh();
+        assertFalse(mirror.isAvailable());
+        assertEquals(0, mirror.getBytes());
+
+        bitmap.set(new byte[0]);
+        setbit(bitmap, 100);
+        mirror.refresh();
+        assertTrue(mirror.isAvailable());
+        assertTrue(mirror.contains(new long[]{100}));
+    }
+
+    /**
+     * 和Redis的SETBIT一样，offset 0是第一个字节的最高位
+     */
+    private static void setbit(AtomicReference<byte[]> bitmap, long offset) {
+
+        byte[] bytes = bitmap.get();
+        int index = (int) (offset >>> 3);
+        if (index >= bytes.length) {
+            bytes = Arrays.copyOf(bytes, index + 1);
+        }
+        bytes[index] |= 0x80 >>> (offset & 7);
+        bitmap.set(bytes);
+    }
+
+    /**
+     * 只实现BloomMirror用到的命令，reads记录GETRANGE的次数
+     */
+    private static IRedisService fakeRedis(AtomicReference<byte[]> bitmap, AtomicInteger reads) {
+
+        return (IRedisService) Proxy.newProxyInstance(BloomMirrorTest.class.getClassLoader(), new Class[]{IRedisService.class}, (proxy, method, args) -> {
+            byte[] bytes = bitmap.get();
+            switch (method.getName()) {
+                case "strlen":
+                    return (long) bytes.length;
+                case "getrange": {
+                    reads.incrementAndGet();
+                    int start = (int) Math.min((long) args[1], bytes.length);
+                    int end = (int) Math.min((long) args[2] + 1, bytes.length);
+                    return Arrays.copyOfRange(bytes, start, end);
+                }
+                case "bitcount": {
+                    long count = 0;
+                    for (int i = (int) (long) args[1]; i <= (long) args[2] && i < bytes.length; i++) {
+                        count += Integer.bitCount(bytes[i] & 0xff);
+                    }
+                    return count;
+                }
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,175 @@
+package cn.netdiscovery.cache.disk;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putAndGet() throws IOException {
+
+        DiskCache cache = new DiskCache(folder.getRoot().getPath(), 4096, 4);
+        cache.put("a", "1", 0);
+        cache.put("a", "2", 0);
+        DiskCache.Entry entry = cache.get("a");
+        assertEquals("2", entry.getValue());
+        assertEquals(0, entry.getExpireAt());
+        assertNull(cache.get("b"));
+        cache.close();
+    }
+
+    @Test
+    public void expiredEntryIsNotRead() throws IOException {
+
+        DiskCache cache = new DiskCache(folder.getRoot().getPath(), 4096, 4);
+        cache.put("a", "1", System.currentTimeMillis() - 1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void restartRebuildsIndex() throws IOException {
+
+        String path = folder.getRoot().getPath();
+        DiskCache cache = new DiskCache(path, 4096, 4);
+        cache.put("a", "1", 0);
+        cache.put("b", "2", System.currentTimeMillis() + 60000);
+        cache.put("c", "3", System.currentTimeMillis() + 100);
+        cache.close();
+
+        DiskCache reopened = new DiskCache(path, 4096, 4);
+        assertEquals("1", reopened.get("a").getValue());
+        assertEquals("2", reopened.get("b").getValue());
+        assertTrue(reopened.get("b").getExpireAt() > System.currentTimeMillis());
+        reopened.close();
+    }
+
+    @Test
+    public void tombstoneSurvivesRestart() throws IOException {
+
+        String path = folder.getRoot().getPath();
+        DiskCache cache = new DiskCache(path, 4096, 4);
+        cache.put("a", "1", 0);
+        cache.put("b", "2", 0);
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        cache.close();
+
+        DiskCache reopened = new DiskCache(path, 4096, 4);
+        assertNull(reopened.get("a"));
+        assertEquals("2", reopened.get("b").getValue());
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionKeepsLiveEntriesAndBoundsSegments() throws IOException {
+
+        File dir = folder.getRoot();
+        DiskCache cache = new DiskCache(dir.getPath(), 1024, 3);
+        char[] chars = new char[100];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+
+        cache.put("live", "keep", 0);
+        for (int i = 0; i < 200; i++) {
+            cache.put("key" + (i % 10), value + i, 0);
+            assertTrue(dir.listFiles((d, name) -> name.endsWith(".seg")).length <= 4);
+        }
+
+        assertEquals("keep", cache.get("live").getValue());
+        for (int i = 190; i < 200; i++) {
+            assertEquals(value + i, cache.get("key" + (i % 10)).getValue());
+        }
+        cache.close();
+
+        DiskCache reopened = new DiskCache(dir.getPath(), 1024, 3);
+        assertEquals("keep", reopened.get("live").getValue());
+        assertEquals(value + 199, reopened.get("key9").getValue());
+        assertEquals(11, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void survivorsFillingSegmentDoNotRecurse() throws IOException {
+
+        DiskCache cache = new DiskCache(folder.getRoot().getPath(), 512, 2);
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, value, 0);
+            assertNotNull(cache.get("key" + i));
+        }
+        cache.close();
+    }
+
+    @Test
+    public void valueLargerThanSegmentIsNotCached() throws IOException {
+
+        DiskCache cache = new DiskCache(folder.getRoot().getPath(), 256, 2);
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'v');
+        cache.put("a", "1", 0);
+        cache.put("a", new String(chars), 0);
+        assertNull(cache.get("a"));
+        cache.close();
+    }
+
+    @Test
+    public void newDirIsOwnerOnly() throws IOException {
+
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File dir = new File(folder.getRoot(), "cache");
+        DiskCache cache = new DiskCache(dir.getPath(), 4096, 4);
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(dir.toPath()));
+        cache.close();
+
+        //已经存在的目录收回其他用户的权限
+        Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+        new DiskCache(dir.getPath(), 4096, 4).close();
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(dir.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void fileIsNotUsedAsDir() throws IOException {
+
+        new DiskCache(folder.newFile("cache").getPath(), 4096, 4);
+    }
+
+    @Test
+    public void dirIsLockedWhileOpen() throws IOException {
+
+        String path = folder.getRoot().getPath();
+        DiskCache cache = new DiskCache(path, 4096, 4);
+        try {
+            new DiskCache(path, 4096, 4);
+            fail();
+        } catch (IOException e) {
+            //目录已经被使用
+        }
+        cache.close();
+
+        new DiskCache(path, 4096, 4).close();
+    }
+}
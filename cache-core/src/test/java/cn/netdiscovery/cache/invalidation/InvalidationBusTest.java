@@ -0,0 +1,153 @@
+package cn.netdiscovery.cache.invalidation;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import cn.netdiscovery.cache.redis.IRedisService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPubSub;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class InvalidationBusTest {
+
+    private final List<InvalidationMessage> published = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> invalidated = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger invalidateAll = new AtomicInteger();
+
+    private final BlockingQueue<JedisPubSub> subscriptions = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Boolean> disconnects = new LinkedBlockingQueue<>();
+    private final CountDownLatch invalidateAllLatch = new CountDownLatch(1);
+
+    private InvalidationBus bus;
+
+    @Before
+    public void setUp() {
+
+        //subscribe阻塞到disconnects中有数据为止，模拟连接断开
+        IRedisService redis = (IRedisService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{IRedisService.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "publish":
+                    published.add(SerializableUtils.fromJson((String) args[1], InvalidationMessage.class));
+                    return 1L;
+                case "subscribe": {
+                    JedisPubSub pubSub = (JedisPubSub) args[0];
+                    pubSub.onSubscribe("test", 1);
+                    subscriptions.add(pubSub);
+                    disconnects.take();
+                    return null;
+                }
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        bus = new InvalidationBus(redis, "test", 3, TimeUnit.HOURS.toMillis(1), new InvalidationListener() {
+
+            @Override
+            public void invalidate(String... keys) {
+                invalidated.addAll(Arrays.asList(keys));
+            }
+
+            @Override
+            public void invalidateAll() {
+                invalidateAll.incrementAndGet();
+                invalidateAllLatch.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        bus.close();
+    }
+
+    @Test
+    public void mergesKeysIntoOneMessage() {
+
+        bus.publish("a", "b");
+        bus.flush();
+        bus.publish("a", null);
+        bus.publish("a");
+        bus.flush();
+
+        assertEquals(2, published.size());
+        assertEquals(bus.getOrigin(), published.get(0).getOrigin());
+        assertEquals(Arrays.asList("a", "b"), published.get(0).getKeys());
+        //同一批中重复的key只发送一次
+        assertEquals(Arrays.asList("a"), published.get(1).getKeys());
+    }
+
+    @Test
+    public void flushesWhenBatchIsFull() throws InterruptedException {
+
+        bus.publish("a", "b", "c", "d", "e");
+        List<String> keys = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (keys.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            keys.clear();
+            synchronized (published) {
+                for (InvalidationMessage message:published) {
+                    //每条消息最多batchSize个key
+                    assertTrue(message.getKeys().size() <= 3);
+                    keys.addAll(message.getKeys());
+                }
+            }
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), keys);
+        assertEquals(2, published.size());
+    }
+
+    @Test
+    public void ignoresOwnMessages() throws InterruptedException {
+
+        JedisPubSub pubSub = subscriptions.poll(5, TimeUnit.SECONDS);
+        assertNotNull(pubSub);
+
+        pubSub.onMessage("test", SerializableUtils.toJson(new InvalidationMessage(bus.getOrigin(), Arrays.asList("own"))));
+        pubSub.onMessage("test", SerializableUtils.toJson(new InvalidationMessage("other", Arrays.asList("x", "y"))));
+        pubSub.onMessage("test", "not json");
+        pubSub.onMessage("test", SerializableUtils.toJson(new InvalidationMessage("other", Collections.emptyList())));
+
+        assertEquals(Arrays.asList("x", "y"), invalidated);
+    }
+
+    @Test
+    public void resubscribeInvalidatesAll() throws InterruptedException {
+
+        assertNotNull(subscriptions.poll(5, TimeUnit.SECONDS));
+        //第一次订阅不需要清空
+        assertEquals(0, invalidateAll.get());
+
+        disconnects.add(true);
+        assertNotNull(subscriptions.poll(5, TimeUnit.SECONDS));
+        assertTrue(invalidateAllLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, invalidateAll.get());
+    }
+
+    @Test
+    public void closeFlushesAndStopsPublishing() {
+
+        bus.publish("a");
+        bus.close();
+        assertEquals(1, published.size());
+
+        bus.publish("b");
+        bus.flush();
+        assertEquals(1, published.size());
+    }
+}
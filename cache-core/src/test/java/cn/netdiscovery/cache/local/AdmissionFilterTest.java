@@ -0,0 +1,66 @@
+package cn.netdiscovery.cache.local;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionFilterTest {
+
+    @Test
+    public void admitsAfterThreshold() {
+
+        AdmissionFilter filter = new AdmissionFilter(1024, 2, 0);
+        filter.record("a");
+        assertFalse(filter.admit("a"));
+        filter.record("a");
+        assertTrue(filter.admit("a"));
+        assertFalse(filter.admit("b"));
+        assertTrue(filter.getHotKeys().isEmpty());
+    }
+
+    @Test
+    public void keepsTopN() {
+
+        AdmissionFilter filter = new AdmissionFilter(1024, 1, 3);
+        for (int key = 0; key < 10; key++) {
+            for (int i = 0; i <= key; i++) {
+                filter.record("key" + key);
+            }
+        }
+
+        Map<String, Integer> hotKeys = filter.getHotKeys();
+        assertEquals(Arrays.asList("key9", "key8", "key7"), new ArrayList<>(hotKeys.keySet()));
+        assertEquals(Integer.valueOf(10), hotKeys.get("key9"));
+    }
+
+    /**
+     * 计数器衰减之后，新的热点key可以取代之前的热点key
+     */
+    @Test
+    public void hotKeysAge() {
+
+        AdmissionFilter filter = new AdmissionFilter(64, 1, 2);
+        for (int i = 0; i < 15; i++) {
+            filter.record("old1");
+            filter.record("old2");
+        }
+        //其他key的访问使计数器多次衰减，new1和new2一直被访问
+        for (int round = 0; round < 200; round++) {
+            filter.record("new1");
+            filter.record("new2");
+            for (int i = 0; i < 100; i++) {
+                filter.record("key" + (round * 100 + i));
+            }
+        }
+
+        Map<String, Integer> hotKeys = filter.getHotKeys();
+        assertTrue(hotKeys.containsKey("new1"));
+        assertTrue(hotKeys.containsKey("new2"));
+    }
+}
@@ -0,0 +1,54 @@
+package cn.netdiscovery.cache.local;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsUpToFifteen() {
+
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment("a");
+            assertEquals(Math.min(i, 15), sketch.frequency("a"));
+        }
+    }
+
+    @Test
+    public void resetHalvesCounters() {
+
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(10, sketch.frequency("hot"));
+
+        //容量16的sketch累计160次访问之后衰减
+        int i = 0;
+        while (sketch.getResetCount() == 0) {
+            sketch.increment("key" + (i++ % 1000));
+        }
+        assertTrue(i < 160);
+        assertTrue(sketch.frequency("hot") <= 5);
+    }
+
+    @Test
+    public void rarelySeenKeysStayLow() {
+
+        FrequencySketch sketch = new FrequencySketch(4096);
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment("key" + i);
+        }
+        int high = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (sketch.frequency("key" + i) > 2) {
+                high++;
+            }
+        }
+        assertTrue(high < 10);
+    }
+}
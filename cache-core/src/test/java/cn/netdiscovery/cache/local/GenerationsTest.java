@@ -0,0 +1,42 @@
+package cn.netdiscovery.cache.local;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class GenerationsTest {
+
+    @Test
+    public void incrementChangesGeneration() {
+
+        Generations generations = new Generations(16);
+        long a = generations.get("a");
+        assertEquals(a, generations.get("a"));
+
+        generations.increment("a");
+        assertNotEquals(a, generations.get("a"));
+    }
+
+    @Test
+    public void incrementAllChangesEveryKey() {
+
+        Generations generations = new Generations(1024);
+        long a = generations.get("a");
+        long b = generations.get("b");
+
+        generations.incrementAll();
+        assertNotEquals(a, generations.get("a"));
+        assertNotEquals(b, generations.get("b"));
+    }
+
+    @Test
+    public void sizeIsRoundedToPowerOfTwo() {
+
+        //只有一个计数器时所有的key共用版本号，冲突只会多放弃回设
+        Generations generations = new Generations(1);
+        long b = generations.get("b");
+        generations.increment("a");
+        assertNotEquals(b, generations.get("b"));
+    }
+}
@@ -0,0 +1,56 @@
+package cn.netdiscovery.cache.local;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashValueTest {
+
+    @Test
+    public void putAndGet() {
+
+        Map<String, String> map = new HashMap<>();
+        map.put("a", "1");
+        HashValue hash = new HashValue(map, true);
+        map.put("b", "2");
+        assertNull(hash.get("b"));
+
+        hash.put("b", "2");
+        hash.put("c", null);
+        hash.put(null, "3");
+        assertEquals("2", hash.get("b"));
+        assertEquals(2, hash.size());
+        assertTrue(hash.isComplete());
+    }
+
+    @Test
+    public void removeMakesHashIncomplete() {
+
+        Map<String, String> map = new HashMap<>();
+        map.put("a", "1");
+        map.put("b", "2");
+        HashValue hash = new HashValue(map, true);
+        hash.remove("a");
+
+        assertNull(hash.get("a"));
+        assertFalse(hash.isComplete());
+        assertEquals(1, hash.size());
+    }
+
+    @Test
+    public void toMapIsACopy() {
+
+        HashValue hash = new HashValue(new HashMap<>(), false);
+        hash.put("a", "1");
+        Map<String, String> copy = hash.toMap();
+        copy.put("b", "2");
+        assertNull(hash.get("b"));
+        assertFalse(hash.isComplete());
+    }
+}
@@ -0,0 +1,83 @@
+package cn.netdiscovery.cache.local;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListValueTest {
+
+    @Test
+    public void pushLikeRedis() {
+
+        ListValue list = new ListValue(Collections.singletonList("b"));
+        //LPUSH a1 a2的结果为a2 a1 b
+        assertEquals(3, list.lpush("a1", "a2"));
+        assertEquals(5, list.rpush("c1", "c2"));
+        assertEquals(Arrays.asList("a2", "a1", "b", "c1", "c2"), list.toList());
+    }
+
+    @Test
+    public void rangeAndIndexWithNegativeIndexes() {
+
+        ListValue list = new ListValue(Arrays.asList("a", "b", "c", "d"));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), list.range(0, -1));
+        assertEquals(Arrays.asList("c", "d"), list.range(-2, 10));
+        assertEquals(Arrays.asList("a"), list.range(-10, 0));
+        assertTrue(list.range(3, 1).isEmpty());
+        assertTrue(list.range(5, 8).isEmpty());
+
+        assertEquals("a", list.index(0));
+        assertEquals("d", list.index(-1));
+        assertNull(list.index(4));
+        assertNull(list.index(-5));
+    }
+
+    @Test
+    public void pop() {
+
+        ListValue list = new ListValue(Arrays.asList("a", "b"));
+        assertEquals("a", list.lpop());
+        assertEquals("b", list.rpop());
+        assertNull(list.lpop());
+        assertNull(list.rpop());
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void lremFromHeadTailAndAll() {
+
+        ListValue list = new ListValue(Arrays.asList("x", "a", "x", "b", "x"));
+        assertEquals(1, list.lrem(1, "x"));
+        assertEquals(Arrays.asList("a", "x", "b", "x"), list.toList());
+        assertEquals(1, list.lrem(-1, "x"));
+        assertEquals(Arrays.asList("a", "x", "b"), list.toList());
+        assertEquals(1, list.lrem(0, "x"));
+        assertEquals(0, list.lrem(0, "x"));
+        assertEquals(Arrays.asList("a", "b"), list.toList());
+    }
+
+    @Test
+    public void ltrim() {
+
+        ListValue list = new ListValue(Arrays.asList("a", "b", "c", "d"));
+        list.ltrim(1, -2);
+        assertEquals(Arrays.asList("b", "c"), list.toList());
+        list.ltrim(5, 10);
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void snapshotIsNotChangedByWrites() {
+
+        ListValue list = new ListValue(Arrays.asList("a"));
+        List<String> snapshot = list.toList();
+        list.rpush("b");
+        assertEquals(Arrays.asList("a"), snapshot);
+    }
+}
@@ -0,0 +1,175 @@
+package cn.netdiscovery.cache.local;
+
+import cn.netdiscovery.cache.stats.CacheStats;
+import com.safframework.rxcache.RxCache;
+import com.safframework.rxcache.domain.Record;
+import com.safframework.rxcache.domain.Source;
+import com.safframework.rxcache.memory.Memory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalCacheTest {
+
+    private MapMemory memory;
+    private CacheStats stats;
+    private LocalCache localCache;
+
+    @Before
+    public void setUp() {
+
+        memory = new MapMemory();
+        stats = new CacheStats("test", false);
+        RxCache rxCache = new RxCache.Builder().memory(memory).build();
+        localCache = new LocalCache(rxCache, false, CopyPolicy.COPY, 0, new NegativeCache(1000, 60000), false, null, 1024, stats);
+    }
+
+    @Test
+    public void backfillWithCurrentGeneration() {
+
+        long generation = localCache.generation("a");
+        localCache.putJson("a", "\"1\"", 0, generation);
+        assertEquals("\"1\"", localCache.getValue("a").getJson());
+        assertEquals(1, stats.snapshot().getBackfills());
+    }
+
+    /**
+     * 从Redis读取期间key被写入，读取到的旧值不能覆盖新值
+     */
+    @Test
+    public void backfillAfterWriteIsDiscarded() {
+
+        long generation = localCache.generation("a");
+        localCache.put("a", "new", 0);
+        localCache.putJson("a", "\"old\"", 0, generation);
+
+        assertEquals("new", localCache.getValue("a").getJson());
+        assertEquals(1, stats.snapshot().getDiscardedBackfills());
+    }
+
+    @Test
+    public void backfillAfterInvalidationIsDiscarded() {
+
+        long generation = localCache.generation("a");
+        localCache.remove("a");
+        localCache.putJson("a", "\"old\"", 0, generation);
+        assertNull(localCache.getValue("a"));
+
+        generation = localCache.generation("b");
+        localCache.clear();
+        localCache.putMissing("b", generation);
+        assertFalse(localCache.isMissing("b"));
+        assertEquals(2, stats.snapshot().getDiscardedBackfills());
+    }
+
+    /**
+     * 回设的同时key失效，回设之后的检查撤销这次回设
+     */
+    @Test
+    public void backfillRacingInvalidationIsUndone() {
+
+        long generation = localCache.generation("a");
+        memory.onPut = () -> {
+            memory.onPut = null;
+            localCache.remove("a");
+        };
+        memory.skipEvict = true;
+        localCache.putJson("a", "\"old\"", 0, generation);
+
+        assertNull(localCache.getValue("a"));
+        assertEquals(1, stats.snapshot().getDiscardedBackfills());
+    }
+
+    @Test
+    public void missingKeyIsNotReportedAsAbsent() {
+
+        localCache.putMissing("a", localCache.generation("a"));
+        assertTrue(localCache.isMissing("a"));
+        //负缓存不作为不存在的依据
+        assertNull(localCache.exists("a"));
+
+        localCache.put("a", "1", 0);
+        assertFalse(localCache.isMissing("a"));
+        assertEquals(Boolean.TRUE, localCache.exists("a"));
+    }
+
+    @Test
+    public void mergedHashFieldsAreReweighed() {
+
+        WeightedMemory weighted = new WeightedMemory(memory, 1000, (key, value) -> Weigher.DEFAULT.weigh(null, value), true);
+        RxCache rxCache = new RxCache.Builder().memory(weighted).build();
+        LocalCache cache = new LocalCache(rxCache, false, CopyPolicy.COPY, 0, null, false, weighted, 1024, stats);
+
+        cache.putHashFields("h", Collections.singletonMap("f1", "v1"), 0, cache.generation("h"));
+        assertEquals(4, weighted.getWeightedSize());
+        cache.putHashFields("h", Collections.singletonMap("f2", "v2"), 0, cache.generation("h"));
+        assertEquals(8, weighted.getWeightedSize());
+        cache.updateHash("h", "f3", "v3");
+        assertEquals(12, weighted.getWeightedSize());
+        assertEquals(3, cache.getHash("h").size());
+    }
+
+    private static class MapMemory implements Memory {
+
+        private final Map<String, Object> map = new ConcurrentHashMap<>();
+        private volatile Runnable onPut;
+        private volatile boolean skipEvict;
+
+        @Override
+        public <T> Record<T> getIfPresent(String key) {
+
+            T value = (T) map.get(key);
+            return value != null ? new Record<>(Source.MEMORY, key, value) : null;
+        }
+
+        @Override
+        public <T> void put(String key, T value) {
+
+            map.put(key, value);
+            Runnable runnable = onPut;
+            if (runnable != null) {
+                runnable.run();
+            }
+        }
+
+        @Override
+        public <T> void put(String key, T value, long expireTime) {
+            put(key, value);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return map.keySet();
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public void evict(String key) {
+
+            //模拟失效先于回设完成：第一次清除时数据还没有真正写入
+            if (skipEvict) {
+                skipEvict = false;
+                return;
+            }
+            map.remove(key);
+        }
+
+        @Override
+        public void evictAll() {
+            map.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package cn.netdiscovery.cache.local;
+
+import com.safframework.rxcache.domain.Record;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapMemoryTest {
+
+    @Test
+    public void putAndGet() {
+
+        OffHeapMemory memory = new OffHeapMemory(64 * 1024, 4096, 2);
+        memory.put("a", new LocalValue("\"1\""));
+        Map<String, String> map = new HashMap<>();
+        map.put("f", "v");
+        memory.put("h", new HashValue(map, true));
+        memory.put("l", new ListValue(Arrays.asList("x", "y")));
+        memory.put("s", new SetValue(new LinkedHashSet<>(Collections.singletonList("m"))));
+
+        Record<LocalValue> a = memory.getIfPresent("a");
+        assertEquals("\"1\"", a.getData().getJson());
+        Record<HashValue> h = memory.getIfPresent("h");
+        assertEquals("v", h.getData().get("f"));
+        assertTrue(h.getData().isComplete());
+        Record<ListValue> l = memory.getIfPresent("l");
+        assertEquals(Arrays.asList("x", "y"), l.getData().toList());
+        Record<SetValue> s = memory.getIfPresent("s");
+        assertTrue(s.getData().contains("m"));
+
+        memory.evict("a");
+        assertNull(memory.getIfPresent("a"));
+        assertFalse(memory.containsKey("a"));
+    }
+
+    @Test
+    public void expire() throws InterruptedException {
+
+        OffHeapMemory memory = new OffHeapMemory(64 * 1024, 4096, 1);
+        memory.put("a", new LocalValue("1"), 20);
+        assertNotNull(memory.getIfPresent("a"));
+        Thread.sleep(40);
+        assertNull(memory.getIfPresent("a"));
+        assertEquals(0, memory.getUsedBytes());
+    }
+
+    @Test
+    public void largerThanBlockIsNotCached() {
+
+        OffHeapMemory memory = new OffHeapMemory(4096, 1000, 1);
+        memory.put("a", new LocalValue(repeat('x', 2000)));
+        assertNull(memory.getIfPresent("a"));
+    }
+
+    /**
+     * 每次写入之前读取所有的key，回收的block被重新写入的数据占满时不能写出block的范围
+     */
+    @Test
+    public void referencedSurvivorsDoNotOverflowBlock() {
+
+        OffHeapMemory memory = new OffHeapMemory(2000, 1000, 1);
+        String value = repeat('v', 240);
+        for (int i = 0; i < 200; i++) {
+            for (String key:memory.keySet()) {
+                memory.getIfPresent(key);
+            }
+            memory.put("key" + i, new LocalValue(value));
+
+            Record<LocalValue> record = memory.getIfPresent("key" + i);
+            assertNotNull(record);
+            assertEquals(value, record.getData().getJson());
+        }
+        assertTrue(memory.getUsedBytes() <= 2000);
+    }
+
+    @Test
+    public void unreferencedEntriesAreEvicted() {
+
+        OffHeapMemory memory = new OffHeapMemory(2000, 1000, 1);
+        String value = repeat('v', 200);
+        for (int i = 0; i < 30; i++) {
+            memory.put("key" + i, new LocalValue(value));
+        }
+        assertNull(memory.getIfPresent("key0"));
+        assertNotNull(memory.getIfPresent("key29"));
+    }
+
+    @Test
+    public void smallCapacityShrinksSegmentsAndBlocks() {
+
+        //默认配置下16个segment、4M的block至少需要128M
+        OffHeapMemory memory = new OffHeapMemory(64L * 1024 * 1024, 4 * 1024 * 1024, 16);
+        assertTrue(memory.getCapacity() <= 64L * 1024 * 1024);
+
+        OffHeapMemory tiny = new OffHeapMemory(4096, 4 * 1024 * 1024, 16);
+        assertTrue(tiny.getCapacity() <= 4096);
+        tiny.put("a", new LocalValue("1"));
+        assertEquals("1", tiny.<LocalValue>getIfPresent("a").getData().getJson());
+    }
+
+    @Test
+    public void capacityIsKeptWhenLargeEnough() {
+
+        OffHeapMemory memory = new OffHeapMemory(64 * 1024, 4096, 2);
+        assertEquals(64 * 1024, memory.getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityBelowTwoBlocks() {
+
+        new OffHeapMemory(32, 4096, 1);
+    }
+
+    private static String repeat(char c, int count) {
+
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
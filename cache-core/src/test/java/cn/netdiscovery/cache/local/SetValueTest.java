@@ -0,0 +1,49 @@
+package cn.netdiscovery.cache.local;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SetValueTest {
+
+    @Test
+    public void addReturnsNewMembers() {
+
+        SetValue set = new SetValue(new HashSet<>(Arrays.asList("a", "b")));
+        assertEquals(1, set.add("b", "c"));
+        assertEquals(0, set.add("a", "c"));
+        assertEquals(2, set.add("d", "e", "d"));
+        assertEquals(5, set.size());
+        assertTrue(set.contains("e"));
+        assertFalse(set.contains("f"));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+
+        Set<String> source = new HashSet<>(Arrays.asList("a"));
+        SetValue set = new SetValue(source);
+        source.add("b");
+        assertFalse(set.contains("b"));
+
+        Set<String> copy = set.toSet();
+        copy.add("c");
+        assertFalse(set.contains("c"));
+
+        Set<String> members = set.members();
+        set.add("d");
+        assertFalse(members.contains("d"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void membersIsReadOnly() {
+
+        new SetValue(new HashSet<>(Arrays.asList("a"))).members().add("b");
+    }
+}
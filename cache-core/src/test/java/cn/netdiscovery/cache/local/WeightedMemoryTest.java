@@ -0,0 +1,183 @@
+package cn.netdiscovery.cache.local;
+
+import com.safframework.rxcache.domain.Record;
+import com.safframework.rxcache.domain.Source;
+import com.safframework.rxcache.memory.Memory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedMemoryTest {
+
+    private static final Weigher LENGTH = (key, value) -> Weigher.DEFAULT.weigh(null, value);
+
+    @Test
+    public void staysWithinBudget() {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 100, LENGTH, true);
+        for (int i = 0; i < 50; i++) {
+            memory.put("key" + i, new LocalValue("0123456789"));
+            assertTrue(memory.getWeightedSize() <= 100);
+        }
+        assertEquals(100, memory.getWeightedSize());
+        assertEquals(10, memory.keySet().size());
+        assertNotNull(memory.getIfPresent("key49"));
+        assertNull(memory.getIfPresent("key39"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyRead() {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 30, LENGTH, true);
+        memory.put("a", new LocalValue("0123456789"));
+        memory.put("b", new LocalValue("0123456789"));
+        memory.put("c", new LocalValue("0123456789"));
+        assertNotNull(memory.getIfPresent("a"));
+
+        memory.put("d", new LocalValue("0123456789"));
+        assertTrue(memory.containsKey("a"));
+        assertFalse(memory.containsKey("b"));
+    }
+
+    @Test
+    public void fifoIgnoresReads() {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 30, LENGTH, false);
+        memory.put("a", new LocalValue("0123456789"));
+        memory.put("b", new LocalValue("0123456789"));
+        memory.put("c", new LocalValue("0123456789"));
+        assertNotNull(memory.getIfPresent("a"));
+
+        memory.put("d", new LocalValue("0123456789"));
+        assertFalse(memory.containsKey("a"));
+        assertTrue(memory.containsKey("b"));
+    }
+
+    @Test
+    public void oversizedValueIsNotKept() {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 10, LENGTH, true);
+        memory.put("a", new LocalValue("0123456789abc"));
+        assertFalse(memory.containsKey("a"));
+        assertEquals(0, memory.getWeightedSize());
+    }
+
+    @Test
+    public void reweighAfterInPlaceUpdate() {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 20, LENGTH, true);
+        ListValue list = new ListValue(Arrays.asList("0123456789"));
+        memory.put("list", list);
+        memory.put("a", new LocalValue("01234"));
+        assertEquals(15, memory.getWeightedSize());
+
+        list.rpush("01234");
+        memory.reweigh("list", list);
+        assertEquals(20, memory.getWeightedSize());
+
+        list.rpush("01234");
+        memory.reweigh("list", list);
+        assertTrue(memory.getWeightedSize() <= 20);
+        assertEquals(1, memory.keySet().size());
+    }
+
+    @Test
+    public void reweighIgnoresEvictedKey() {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 20, LENGTH, true);
+        memory.put("a", new LocalValue("01234"));
+        memory.evict("a");
+        memory.reweigh("a", new LocalValue("01234"));
+        assertEquals(0, memory.getWeightedSize());
+    }
+
+    @Test
+    public void releasesWeightOfEntriesDroppedByInnerMemory() {
+
+        MapMemory inner = new MapMemory();
+        WeightedMemory memory = new WeightedMemory(inner, 100, LENGTH, true);
+        memory.put("a", new LocalValue("01234"));
+        inner.evict("a");
+        assertNull(memory.getIfPresent("a"));
+        assertEquals(0, memory.getWeightedSize());
+    }
+
+    @Test
+    public void concurrentReadsKeepWeightConsistent() throws InterruptedException {
+
+        WeightedMemory memory = new WeightedMemory(new MapMemory(), 1000, LENGTH, true);
+        for (int i = 0; i < 100; i++) {
+            memory.put("key" + i, new LocalValue("0123456789"));
+        }
+
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    memory.getIfPresent("key" + (i % 100));
+                }
+            });
+            readers[t].start();
+        }
+        for (int i = 0; i < 2000; i++) {
+            memory.put("new" + i, new LocalValue("0123456789"));
+        }
+        for (Thread reader:readers) {
+            reader.join();
+        }
+
+        assertEquals(1000, memory.getWeightedSize());
+        assertEquals(100, memory.keySet().size());
+    }
+
+    private static class MapMemory implements Memory {
+
+        private final Map<String, Object> map = new ConcurrentHashMap<>();
+
+        @Override
+        public <T> Record<T> getIfPresent(String key) {
+
+            T value = (T) map.get(key);
+            return value != null ? new Record<>(Source.MEMORY, key, value) : null;
+        }
+
+        @Override
+        public <T> void put(String key, T value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public <T> void put(String key, T value, long expireTime) {
+            map.put(key, value);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return map.keySet();
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public void evict(String key) {
+            map.remove(key);
+        }
+
+        @Override
+        public void evictAll() {
+            map.clear();
+        }
+    }
+}
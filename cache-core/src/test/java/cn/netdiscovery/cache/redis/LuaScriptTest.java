@@ -0,0 +1,78 @@
+package cn.netdiscovery.cache.redis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LuaScriptTest {
+
+    @Test
+    public void writeWithExpireSplitsArgs() {
+
+        String[] args = new String[LuaScript.MAX_UNPACK_ARGS * 2 + 1];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = "v" + i;
+        }
+
+        List<List<String>> calls = new ArrayList<>();
+        List<Object> result = LuaScript.writeWithExpire(batch -> {
+            calls.add(batch);
+            return (long) calls.size();
+        }, 60, "rpush", args, 1);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), result);
+        assertEquals(3, calls.size());
+        List<String> pushed = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            List<String> batch = calls.get(i);
+            //只在最后一批设置过期时间
+            assertEquals(i == calls.size() - 1 ? "60" : "0", batch.get(0));
+            assertEquals("rpush", batch.get(1));
+            assertTrue(batch.size() - 2 <= LuaScript.MAX_UNPACK_ARGS);
+            pushed.addAll(batch.subList(2, batch.size()));
+        }
+        assertEquals(Arrays.asList(args), pushed);
+    }
+
+    @Test
+    public void writeWithExpireKeepsPairsTogether() {
+
+        String[] args = new String[(LuaScript.MAX_UNPACK_ARGS + 1) * 2];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = (i % 2 == 0 ? "f" : "v") + i / 2;
+        }
+
+        List<List<String>> calls = new ArrayList<>();
+        LuaScript.writeWithExpire(batch -> calls.add(batch), 0, "hmset", args, 2);
+        for (List<String> batch:calls) {
+            assertEquals(0, (batch.size() - 2) % 2);
+            assertTrue(batch.get(2).startsWith("f"));
+        }
+    }
+
+    @Test
+    public void smallWriteIsOneCall() {
+
+        List<Object> result = LuaScript.writeWithExpire(batch -> batch, 10, "sadd", new String[]{"a", "b"}, 1);
+        assertEquals(1, result.size());
+        assertEquals(Arrays.asList("10", "sadd", "a", "b"), result.get(0));
+    }
+
+    @Test
+    public void partitionBoundsBatchSize() {
+
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < LuaScript.MAX_UNPACK_ARGS + 5; i++) {
+            fields.add("f" + i);
+        }
+        List<List<String>> batches = LuaScript.partition(fields);
+        assertEquals(2, batches.size());
+        assertEquals(LuaScript.MAX_UNPACK_ARGS, batches.get(0).size());
+        assertEquals(5, batches.get(1).size());
+    }
+}
@@ -0,0 +1,111 @@
+package cn.netdiscovery.cache.utils;
+
+import cn.netdiscovery.cache.common.SerializableUtils;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import org.junit.Test;
+import redis.clients.util.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BitmapHashUtilsTest {
+
+    private static final long MAX_BIT_COUNT = 1L << 32;
+
+    private static final List<Object> VALUES = Arrays.asList(
+            "", "a", "hello world", "中文", "emoji 😀", "lone \uD800 surrogate", "tail \uDC00",
+            repeat('x', 1000), repeat('中', 700),
+            0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 1234567890123L,
+            0, -42, Integer.MIN_VALUE, Integer.MAX_VALUE,
+            (short) -7, (byte) 127,
+            new byte[0], new byte[]{1, -2, 3},
+            Collections.singletonMap("k", "v"), 3.14, true);
+
+    /**
+     * offset和原来通过toJson()加Jedis的MurmurHash计算的结果相同，已经写入Redis的Bitmap仍然有效
+     */
+    @Test
+    public void bitOffsetsMatchBaseline() {
+
+        long[] offsets = new long[8];
+        for (Object value:VALUES) {
+            long[] expected = baselineMurmur2(value, 8, MAX_BIT_COUNT);
+            assertArrayEquals(String.valueOf(value), expected, BitmapHashUtils.getBitOffsets(value));
+
+            BitmapHashUtils.getBitOffsets(value, offsets);
+            assertArrayEquals(String.valueOf(value), expected, offsets);
+
+            assertArrayEquals(String.valueOf(value), baselineMurmur2(value, 5, 1000), BitmapHashUtils.murmurHash(value, 5, 1000));
+        }
+    }
+
+    @Test
+    public void murmur3MatchesGuava() {
+
+        for (Object value:VALUES) {
+            for (int shards:new int[]{1, 7}) {
+                long[] offsets = new long[6];
+                int shard = BitmapHashUtils.murmur3(value, 1 << 20, shards, offsets);
+
+                long[] expected = baselineMurmur3(value, 6, 1 << 20, shards);
+                assertEquals(String.valueOf(value), expected[0], shard);
+                assertArrayEquals(String.valueOf(value), Arrays.copyOfRange(expected, 1, expected.length), offsets);
+            }
+        }
+    }
+
+    @Test
+    public void batchKeepsOrderAndNulls() {
+
+        List<long[]> offsets = BitmapHashUtils.getBitOffsets(Arrays.asList("a", null, 1L));
+        assertEquals(3, offsets.size());
+        assertArrayEquals(BitmapHashUtils.getBitOffsets("a"), offsets.get(0));
+        assertNull(offsets.get(1));
+        assertArrayEquals(BitmapHashUtils.getBitOffsets(1L), offsets.get(2));
+    }
+
+    /**
+     * 修改之前的实现
+     */
+    private static long[] baselineMurmur2(Object value, int hashFunctionCount, long maxBitCount) {
+
+        long[] offsets = new long[hashFunctionCount];
+        byte[] bytes = SerializableUtils.toJson(value).getBytes(StandardCharsets.UTF_8);
+        int hash1 = MurmurHash.hash(bytes, 0);
+        int hash2 = MurmurHash.hash(bytes, hash1);
+        for (int i = 0; i < hashFunctionCount; ++i) {
+            offsets[i] = Math.abs((hash1 + i * hash2) % maxBitCount);
+        }
+        return offsets;
+    }
+
+    private static long[] baselineMurmur3(Object value, int hashFunctionCount, long bitCount, int shards) {
+
+        long[] offsets = new long[hashFunctionCount + 1];
+        byte[] bytes = Hashing.murmur3_128().hashBytes(SerializableUtils.toJson(value).getBytes(StandardCharsets.UTF_8)).asBytes();
+
+        long hash1 = Longs.fromBytes(bytes[7], bytes[6], bytes[5], bytes[4], bytes[3], bytes[2], bytes[1], bytes[0]);
+        long hash2 = Longs.fromBytes(bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+        offsets[0] = shards > 1 ? Math.floorMod(hash2 ^ (hash1 >>> 32), shards) : 0;
+        long combined = hash1;
+        for (int i = 0; i < hashFunctionCount; ++i) {
+            combined += hash2;
+            offsets[i + 1] = (combined & Long.MAX_VALUE) % bitCount;
+        }
+        return offsets;
+    }
+
+    private static String repeat(char c, int count) {
+
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
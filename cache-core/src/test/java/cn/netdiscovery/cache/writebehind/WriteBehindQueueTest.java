@@ -0,0 +1,217 @@
+package cn.netdiscovery.cache.writebehind;
+
+import cn.netdiscovery.cache.redis.IRedisService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindQueueTest {
+
+    private final List<Map<String, String>> batches = new ArrayList<>();
+    private final List<Map<String, Integer>> seconds = new ArrayList<>();
+    private final List<String> flushedKeys = new ArrayList<>();
+    private volatile boolean fail;
+    private volatile Runnable onMset;
+
+    private WriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+
+        IRedisService redis = (IRedisService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{IRedisService.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("mset") || args.length != 2) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            Runnable runnable = onMset;
+            if (runnable != null) {
+                onMset = null;
+                runnable.run();
+            }
+            if (fail) {
+                return null;
+            }
+            synchronized (batches) {
+                batches.add(new HashMap<>((Map<String, String>) args[0]));
+                seconds.add(new HashMap<>((Map<String, Integer>) args[1]));
+            }
+            return "OK";
+        });
+        queue = new WriteBehindQueue(redis, "test", 100, TimeUnit.HOURS.toMillis(1), keys -> {
+            synchronized (flushedKeys) {
+                flushedKeys.addAll(Arrays.asList(keys));
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        queue.close();
+    }
+
+    @Test
+    public void coalescesWritesToSameKey() {
+
+        queue.add("a", 1, 0);
+        queue.add("a", 2, 60);
+        queue.add("b", "x", 0);
+        assertEquals(2, queue.size());
+        assertEquals("2", queue.get("a"));
+
+        queue.flush();
+        assertEquals(1, batches.size());
+        assertEquals("2", batches.get(0).get("a"));
+        assertEquals("x", batches.get(0).get("b"));
+        assertEquals(Integer.valueOf(60), seconds.get(0).get("a"));
+        assertNull(seconds.get(0).get("b"));
+        assertEquals(0, queue.size());
+        assertTrue(flushedKeys.containsAll(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void failedBatchIsRetried() {
+
+        queue.add("a", 1, 0);
+        fail = true;
+        queue.flush();
+        assertTrue(batches.isEmpty());
+        assertEquals(1, queue.size());
+        assertTrue(flushedKeys.isEmpty());
+
+        fail = false;
+        queue.flush();
+        assertEquals(1, batches.size());
+        assertEquals("1", batches.get(0).get("a"));
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * 写回期间同一个key有新的写入时，新的值留在队列中等待下一次写回
+     */
+    @Test
+    public void writeDuringFlushIsKept() {
+
+        queue.add("a", 1, 0);
+        onMset = () -> queue.add("a", 2, 0);
+        queue.flush();
+        assertEquals("1", batches.get(0).get("a"));
+        assertEquals("2", queue.get("a"));
+
+        queue.flush();
+        assertEquals("2", batches.get(1).get("a"));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void removeDropsPendingValue() {
+
+        queue.add("a", 1, 0);
+        queue.add("b", 1, 0);
+        queue.remove("a");
+        assertNull(queue.get("a"));
+
+        queue.flush();
+        assertEquals(1, batches.get(0).size());
+        assertTrue(batches.get(0).containsKey("b"));
+    }
+
+    /**
+     * 删除之前remove等待正在写回的批次完成，写回不会在删除之后重新创建key
+     */
+    @Test
+    public void removeWaitsForInFlightBatch() throws InterruptedException {
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        onMset = () -> {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        queue.add("a", 1, 0);
+        Thread flusher = new Thread(queue::flush);
+        flusher.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch removed = new CountDownLatch(1);
+        Thread remover = new Thread(() -> {
+            queue.remove("a");
+            removed.countDown();
+        });
+        remover.start();
+        assertFalse(removed.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(removed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        flusher.join();
+    }
+
+    @Test
+    public void removeDoesNotWaitForOtherKeys() throws InterruptedException {
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        onMset = () -> {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        queue.add("a", 1, 0);
+        Thread flusher = new Thread(queue::flush);
+        flusher.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        queue.remove("b");
+        release.countDown();
+        flusher.join();
+    }
+
+    @Test
+    public void invalidArgumentsAreIgnored() {
+
+        assertNull(queue.add(null, 1, 0));
+        assertNull(queue.add("a", null, 0));
+        assertNull(queue.add("a", 1, -1));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void flushesWhenBatchIsFull() throws InterruptedException {
+
+        CountDownLatch latch = new CountDownLatch(1);
+        onMset = latch::countDown;
+        for (int i = 0; i < 100; i++) {
+            queue.add("key" + i, i, 0);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void closeFlushesPendingValues() {
+
+        queue.add("a", 1, 0);
+        queue.close();
+        assertEquals(1, batches.size());
+        assertEquals(0, queue.size());
+    }
+}